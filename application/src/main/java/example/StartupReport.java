@@ -0,0 +1,39 @@
+package example;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.logging.Logger;
+
+/**
+ * Reports startup time and loaded classes, used by startup-benchmark.sh
+ * to compare LTW with and without weaving cache and plugin mode.
+ * With startup.benchmark.exit=true application exits right after start.
+ */
+@Component
+public class StartupReport implements ApplicationListener<ApplicationReadyEvent> {
+
+  private Logger log = Logger.getLogger(StartupReport.class.getName());
+
+  @Override
+  public void onApplicationEvent(ApplicationReadyEvent event) {
+    ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+    CompilationMXBean compilation = ManagementFactory.getCompilationMXBean();
+    long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+    log.info("STARTUP-REPORT uptimeMs=" + uptime
+            + " loadedClasses=" + classLoading.getTotalLoadedClassCount()
+            + " jitMs=" + (compilation != null ? compilation.getTotalCompilationTime() : -1));
+
+    ApplicationContext context = event.getApplicationContext();
+    if (Boolean.parseBoolean(context.getEnvironment().getProperty("startup.benchmark.exit", "false"))) {
+      System.exit(SpringApplication.exit(context));
+    }
+  }
+
+}
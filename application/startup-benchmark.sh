@@ -0,0 +1,26 @@
+#!/usr/bin/env bash
+# Compares application startup: no agent (plugin mode), LTW without cache, LTW with cold and warm cache.
+# Usage: ./startup-benchmark.sh [runs]   (after mvn install)
+set -euo pipefail
+
+RUNS=${1:-3}
+DIR=$(cd "$(dirname "$0")" && pwd)
+(cd "$DIR" && mvn -q dependency:build-classpath -Dmdep.outputFile=target/classpath.txt)
+CP="$DIR/target/classes:$(cat "$DIR/target/classpath.txt")"
+WEAVER=${WEAVER:-$HOME/.m2/repository/org/aspectj/aspectjweaver/1.9.4/aspectjweaver-1.9.4.jar}
+CACHE_DIR="$DIR/target/aspectj-cache"
+COMMON="-Dstartup.benchmark.exit=true -Dserver.port=0"
+
+run() {
+  local label=$1; shift
+  for i in $(seq 1 "$RUNS"); do
+    local line
+    line=$(java "$@" $COMMON -cp "$CP" example.CamundaZipkinApplication 2>&1 | grep -o 'STARTUP-REPORT.*' || true)
+    echo "$label run=$i $line"
+  done
+}
+
+run "plugin-no-agent" -Dcamunda.zipkin.tracing.mode=plugin
+run "ltw-no-cache" -javaagent:"$WEAVER"
+rm -rf "$CACHE_DIR"
+run "ltw-cache" -javaagent:"$WEAVER" -Daj.weaving.cache.enabled=true -Daj.weaving.cache.dir="$CACHE_DIR"
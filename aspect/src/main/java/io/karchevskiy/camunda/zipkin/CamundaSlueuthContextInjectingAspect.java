@@ -1,22 +1,31 @@
 package io.karchevskiy.camunda.zipkin;
 
-import brave.Span;
 import brave.Tracing;
-import brave.propagation.TraceContext;
 import io.karchevskiy.camunda.zipkin.impl.ConnectorCallExecutionSpanDefinition;
+import io.karchevskiy.camunda.zipkin.impl.IterationAggregator;
+import io.karchevskiy.camunda.zipkin.impl.JobExecutorTimings;
+import io.karchevskiy.camunda.zipkin.impl.JobSpanDefinition;
+import io.karchevskiy.camunda.zipkin.impl.ProcessDefinitionSampler;
 import io.karchevskiy.camunda.zipkin.impl.ProcessSpanDefinition;
 import io.karchevskiy.camunda.zipkin.impl.PropagateSleuthContextToChildProcesses;
-import org.aspectj.lang.JoinPoint;
+import io.karchevskiy.camunda.zipkin.impl.TraceContextCache;
+import io.karchevskiy.camunda.zipkin.impl.TraceContextVariables;
+import io.karchevskiy.camunda.zipkin.impl.TracePlanDeployer;
+import io.karchevskiy.camunda.zipkin.impl.TracePlanParseListener;
+import io.karchevskiy.camunda.zipkin.impl.TracePlans;
+import io.karchevskiy.camunda.zipkin.impl.TracingScopeManager;
 import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
-import org.aspectj.lang.annotation.Before;
+import org.camunda.bpm.engine.delegate.ExecutionListener;
+import org.camunda.bpm.engine.impl.bpmn.parser.BpmnParseListener;
+import org.camunda.bpm.engine.impl.persistence.deploy.Deployer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import io.karchevskiy.camunda.zipkin.impl.JavaDelegateSpanDefinition;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 
 @SuppressWarnings("AroundAdviceStyleInspection")
@@ -25,9 +34,32 @@ import java.util.Map;
 public class CamundaSlueuthContextInjectingAspect {
 
     private static Tracing tracing;
+    private static TraceContextCache traceContextCache = new TraceContextCache();
+    private static TracingScopeManager scopeManager;
+    private static JobExecutorTimings jobExecutorTimings = new JobExecutorTimings();
+    private static ProcessDefinitionSampler processSampler = ProcessDefinitionSampler.DEFERRING;
+    private static IterationAggregator iterationAggregator = IterationAggregator.DISABLED;
 
+    private static final ExecutionListener PROCESS_END_LISTENER = execution -> {
+        iterationAggregator.processEnded(tracing, execution);
+        ProcessSpanDefinition.endProcessSpan(execution, tracing, traceContextCache);
+    };
+
+    private static final ExecutionListener MULTI_INSTANCE_END_LISTENER =
+            execution -> iterationAggregator.multiInstanceEnded(tracing, execution);
+
+    /**
+     * Process and process duration spans, see {@link TraceContextVariables}.
+     * Processes are found by trace id with variableValueLike(X_SLEUTH_TRACE_CONTEXT, traceId + "-%")
+     */
     public static final String X_SLEUTH_TRACE_CONTEXT = "X-SLEUTH-TRACE-CONTEXT";
+    /**
+     * Written by previous versions, read only to finish duration spans of already running processes
+     */
     public static final String X_SLEUTH_TRACE_DURATION = "X-SLEUTH-TRACE-DURATION";
+    /**
+     * Written by previous versions, trace id is now a prefix of {@link #X_SLEUTH_TRACE_CONTEXT} value
+     */
     public static final String X_SLEUTH_TRACE_ID = "X-B3-TraceId";
 
     /**
@@ -42,60 +74,99 @@ public class CamundaSlueuthContextInjectingAspect {
      * trough static field sounds dangerous.
      *                                  If you know better way - please report - geisterkirche@gmail.com
      * */
-    @Autowired
     public CamundaSlueuthContextInjectingAspect(Tracing tracing) {
+        this(tracing, new TraceContextCache(), new TracingScopeManager(tracing, false));
+    }
+
+    public CamundaSlueuthContextInjectingAspect(Tracing tracing, TraceContextCache traceContextCache,
+                                                TracingScopeManager scopeManager) {
+        this(tracing, traceContextCache, scopeManager, new JobExecutorTimings(), ProcessDefinitionSampler.DEFERRING);
+    }
+
+    public CamundaSlueuthContextInjectingAspect(Tracing tracing, TraceContextCache traceContextCache,
+                                                TracingScopeManager scopeManager,
+                                                JobExecutorTimings jobExecutorTimings,
+                                                ProcessDefinitionSampler processSampler) {
+        this(tracing, traceContextCache, scopeManager, jobExecutorTimings, processSampler,
+                IterationAggregator.DISABLED);
+    }
+
+    @Autowired
+    public CamundaSlueuthContextInjectingAspect(Tracing tracing, TraceContextCache traceContextCache,
+                                                TracingScopeManager scopeManager,
+                                                JobExecutorTimings jobExecutorTimings,
+                                                ProcessDefinitionSampler processSampler,
+                                                IterationAggregator iterationAggregator) {
         CamundaSlueuthContextInjectingAspect.tracing = tracing;
+        CamundaSlueuthContextInjectingAspect.traceContextCache = traceContextCache;
+        CamundaSlueuthContextInjectingAspect.scopeManager = scopeManager;
+        CamundaSlueuthContextInjectingAspect.jobExecutorTimings = jobExecutorTimings;
+        CamundaSlueuthContextInjectingAspect.processSampler = processSampler;
+        CamundaSlueuthContextInjectingAspect.iterationAggregator = iterationAggregator;
     }
 
     @Around("execution(* org.camunda.bpm.engine.impl.bpmn.behavior.CallActivityBehavior.startInstance(..))")
     public Object propagateSleuthContextToChildProcesses(ProceedingJoinPoint pjp) throws Throwable {
-        return PropagateSleuthContextToChildProcesses.propagateSleuthContextToChildProcesses(pjp, tracing);
+        return PropagateSleuthContextToChildProcesses.
+                propagateSleuthContextToChildProcesses(pjp, tracing, traceContextCache, scopeManager);
     }
 
     @Around("execution(* org.camunda.bpm.engine.impl.RuntimeServiceImpl.*(..))")
     public Object startProcessSpan(ProceedingJoinPoint pjp) throws Throwable {
-        return ProcessSpanDefinition.startProcessSpan(pjp, tracing);
+        return ProcessSpanDefinition.startProcessSpan(pjp, tracing, traceContextCache, scopeManager, processSampler);
     }
 
-    @Before("execution(public void org.camunda.bpm.engine.impl.pvm.runtime.PvmExecutionImpl.end(..))")
-    public void endProcessSpan(JoinPoint jp) {
-        ProcessSpanDefinition.endProcessSpan(jp, tracing);
+    /**
+     * Adds {@link TracePlanParseListener} to default parse listeners of every engine: trace plans are built
+     * at deployment, and process end is detected once per process instance with built-in end listener,
+     * instead of advice on end of every (concurrent, scope, event subprocess) execution.
+     * Listener reads static fields on call, so definitions parsed before tracing is configured are traced too.
+     */
+    @AfterReturning(pointcut = "execution(* org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl" +
+            ".getDefaultBPMNParseListeners())", returning = "parseListeners")
+    @SuppressWarnings("unchecked")
+    public void addTracePlanParseListener(Object parseListeners) {
+        if (parseListeners instanceof List) {
+            ((List<BpmnParseListener>) parseListeners).add(new TracePlanParseListener(PROCESS_END_LISTENER,
+                    MULTI_INSTANCE_END_LISTENER));
+        }
+    }
+
+    /**
+     * Adds {@link TracePlanDeployer} after default (bpmn) deployers of every engine: trace plans are registered
+     * by key with versions assigned by the engine, see {@link TracePlans}
+     */
+    @AfterReturning(pointcut = "execution(* org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl" +
+            ".getDefaultDeployers())", returning = "deployers")
+    @SuppressWarnings("unchecked")
+    public void addTracePlanDeployer(Object deployers) {
+        if (deployers instanceof List) {
+            ((List<Deployer>) deployers).add(new TracePlanDeployer());
+        }
     }
 
     @Around("execution(public void org.camunda.bpm.engine.delegate.JavaDelegate.execute(" +
             "org.camunda.bpm.engine.delegate.DelegateExecution))")
     public void javaDelegateSpan(ProceedingJoinPoint pjp) throws Throwable {
-        JavaDelegateSpanDefinition.javaDelegateSpan(pjp, tracing);
+        JavaDelegateSpanDefinition.javaDelegateSpan(pjp, tracing, traceContextCache, scopeManager,
+                iterationAggregator);
     }
 
     @Around("execution(void org.camunda.connect.plugin.impl.ServiceTaskConnectorActivityBehavior.execute(..))")
     public Object propagateTracingFromCamundaSerializedContextInAnyConnector(ProceedingJoinPoint pjp) throws Throwable {
         return ConnectorCallExecutionSpanDefinition.
-                propagateTracingFromCamundaSerializedContextInAnyConnector(pjp, tracing);
+                propagateTracingFromCamundaSerializedContextInAnyConnector(pjp, tracing, traceContextCache, scopeManager,
+                        iterationAggregator);
     }
 
-    public static Span restoreTracingContext(Map<String, String> tracingContextSerialized) {
-        TraceContext.Extractor<Map<String, String>> extractor = tracing
-                .propagation()
-                .extractor(Map<String, String>::get);
-        TraceContext context = extractor.extract(tracingContextSerialized).context();
-        return tracing.tracer().toSpan(context);
+    @Around("execution(public void org.camunda.bpm.engine.impl.persistence.entity.JobEntity.execute(" +
+            "org.camunda.bpm.engine.impl.interceptor.CommandContext))")
+    public void jobSpan(ProceedingJoinPoint pjp) throws Throwable {
+        JobSpanDefinition.jobSpan(pjp, tracing, traceContextCache, scopeManager, jobExecutorTimings);
     }
 
-    public static Map<String, String> serializeAndInjectTracingContext(Map<String, Object> targetVariables,
-                                                                       Span span,
-                                                                       String key){
-        HashMap<String, String> sleuthTraceSerialized = new HashMap<>();
-        TraceContext.Injector<Map<String, String>> injector = tracing.propagation().injector(Map<String, String>::put);
-        injector.inject(span.context(), sleuthTraceSerialized);
-        targetVariables.put(key, sleuthTraceSerialized);
-        return sleuthTraceSerialized;
-    }
-
-    public static Map<String,String> extractSerializedContext(Object sleuthContext){
-        if(!(sleuthContext instanceof Map)){
-            return new HashMap<>();
-        }
-        return (Map<String, String>) sleuthContext;
+    @Around("execution(* org.camunda.bpm.engine.impl.cmd.AcquireJobsCmd.execute(..))")
+    public Object acquireJobs(ProceedingJoinPoint pjp) throws Throwable {
+        return JobSpanDefinition.acquireJobs(pjp, tracing, jobExecutorTimings);
     }
 }
@@ -0,0 +1,148 @@
+package io.karchevskiy.camunda.zipkin.config;
+
+import io.karchevskiy.camunda.zipkin.history.HistorySpanPipeline;
+import io.karchevskiy.camunda.zipkin.impl.AdaptiveLoadSampler;
+import io.karchevskiy.camunda.zipkin.impl.IterationAggregator;
+import io.karchevskiy.camunda.zipkin.impl.JobExecutorTimings;
+import io.karchevskiy.camunda.zipkin.impl.TraceContextCache;
+import io.karchevskiy.camunda.zipkin.impl.TracingScopeManager;
+import io.karchevskiy.camunda.zipkin.reporter.SpoolingReporter;
+import io.karchevskiy.camunda.zipkin.tail.TailSamplingSpanHandler;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exposes tracing internals as micrometer metrics (bound automatically, when actuator is used)
+ */
+public class CamundaTracingMetrics implements MeterBinder {
+
+    private final TraceContextCache traceContextCache;
+    private final TracingScopeManager scopeManager;
+    private final JobExecutorTimings jobExecutorTimings;
+    private final IterationAggregator iterationAggregator;
+    private final AdaptiveLoadSampler adaptiveLoadSampler;
+    private final HistorySpanPipeline historySpanPipeline;
+    private final TailSamplingSpanHandler tailSampling;
+    private final SpoolingReporter spoolingReporter;
+
+    public CamundaTracingMetrics(TraceContextCache traceContextCache, TracingScopeManager scopeManager,
+                                 JobExecutorTimings jobExecutorTimings) {
+        this(traceContextCache, scopeManager, jobExecutorTimings, IterationAggregator.DISABLED,
+                AdaptiveLoadSampler.DISABLED, null, null, null);
+    }
+
+    /**
+     * @param historySpanPipeline null, when history spans are disabled
+     * @param tailSampling        null, when tail sampling is disabled
+     * @param spoolingReporter    null, when spans are not spooled
+     */
+    public CamundaTracingMetrics(TraceContextCache traceContextCache, TracingScopeManager scopeManager,
+                                 JobExecutorTimings jobExecutorTimings, IterationAggregator iterationAggregator,
+                                 AdaptiveLoadSampler adaptiveLoadSampler, HistorySpanPipeline historySpanPipeline,
+                                 TailSamplingSpanHandler tailSampling, SpoolingReporter spoolingReporter) {
+        this.traceContextCache = traceContextCache;
+        this.scopeManager = scopeManager;
+        this.jobExecutorTimings = jobExecutorTimings;
+        this.iterationAggregator = iterationAggregator;
+        this.adaptiveLoadSampler = adaptiveLoadSampler;
+        this.historySpanPipeline = historySpanPipeline;
+        this.tailSampling = tailSampling;
+        this.spoolingReporter = spoolingReporter;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("camunda.tracing.context.cache.hits", traceContextCache, TraceContextCache::hitCount)
+                .register(registry);
+        FunctionCounter.builder("camunda.tracing.context.cache.misses", traceContextCache, TraceContextCache::missCount)
+                .register(registry);
+        FunctionCounter.builder("camunda.tracing.context.cache.evictions", traceContextCache,
+                TraceContextCache::evictionCount)
+                .register(registry);
+        Gauge.builder("camunda.tracing.context.cache.size", traceContextCache, TraceContextCache::size)
+                .register(registry);
+        FunctionTimer.builder("camunda.tracing.job.acquisition", jobExecutorTimings,
+                JobExecutorTimings::acquisitionCount, JobExecutorTimings::acquisitionNanos, TimeUnit.NANOSECONDS)
+                .register(registry);
+        FunctionCounter.builder("camunda.tracing.job.acquired", jobExecutorTimings, JobExecutorTimings::acquiredJobs)
+                .register(registry);
+        FunctionTimer.builder("camunda.tracing.job.queue.wait", jobExecutorTimings,
+                JobExecutorTimings::queueWaitCount, JobExecutorTimings::queueWaitMillis, TimeUnit.MILLISECONDS)
+                .register(registry);
+        FunctionTimer.builder("camunda.tracing.job.due.delay", jobExecutorTimings,
+                JobExecutorTimings::dueDelayCount, JobExecutorTimings::dueDelayMillis, TimeUnit.MILLISECONDS)
+                .register(registry);
+        FunctionCounter.builder("camunda.tracing.iterations.summaries", iterationAggregator,
+                IterationAggregator::summaryCount)
+                .register(registry);
+        Gauge.builder("camunda.tracing.iterations.open", iterationAggregator, IterationAggregator::openCount)
+                .register(registry);
+        if (adaptiveLoadSampler.isEnabled()) {
+            Gauge.builder("camunda.tracing.sampler.adaptive.probability", adaptiveLoadSampler,
+                    AdaptiveLoadSampler::probability)
+                    .register(registry);
+            Gauge.builder("camunda.tracing.sampler.adaptive.saturation", adaptiveLoadSampler,
+                    AdaptiveLoadSampler::saturation)
+                    .register(registry);
+            FunctionCounter.builder("camunda.tracing.job.rejected", adaptiveLoadSampler,
+                    AdaptiveLoadSampler::rejectedJobs)
+                    .register(registry);
+        }
+        if (historySpanPipeline != null) {
+            FunctionCounter.builder("camunda.tracing.history.enqueued", historySpanPipeline,
+                    HistorySpanPipeline::enqueuedCount)
+                    .register(registry);
+            FunctionCounter.builder("camunda.tracing.history.dropped", historySpanPipeline,
+                    HistorySpanPipeline::droppedCount)
+                    .register(registry);
+            FunctionCounter.builder("camunda.tracing.history.reported", historySpanPipeline,
+                    HistorySpanPipeline::reportedCount)
+                    .register(registry);
+            FunctionCounter.builder("camunda.tracing.history.failed", historySpanPipeline,
+                    HistorySpanPipeline::failedCount)
+                    .register(registry);
+            Gauge.builder("camunda.tracing.history.queue.size", historySpanPipeline, HistorySpanPipeline::queueSize)
+                    .register(registry);
+        }
+        if (tailSampling != null) {
+            FunctionCounter.builder("camunda.tracing.tail.kept", tailSampling, TailSamplingSpanHandler::keptCount)
+                    .register(registry);
+            FunctionCounter.builder("camunda.tracing.tail.dropped", tailSampling,
+                    TailSamplingSpanHandler::droppedCount)
+                    .register(registry);
+            FunctionCounter.builder("camunda.tracing.tail.degraded", tailSampling,
+                    TailSamplingSpanHandler::degradedCount)
+                    .register(registry);
+            Gauge.builder("camunda.tracing.tail.buffered.traces", tailSampling,
+                    TailSamplingSpanHandler::bufferedTraces)
+                    .register(registry);
+            Gauge.builder("camunda.tracing.tail.buffered.bytes", tailSampling,
+                    TailSamplingSpanHandler::bufferedBytes)
+                    .register(registry);
+        }
+        if (spoolingReporter != null) {
+            FunctionCounter.builder("camunda.tracing.spool.spooled", spoolingReporter,
+                    SpoolingReporter::spooledCount)
+                    .register(registry);
+            FunctionCounter.builder("camunda.tracing.spool.sent", spoolingReporter, SpoolingReporter::sentCount)
+                    .register(registry);
+            FunctionCounter.builder("camunda.tracing.spool.dropped", spoolingReporter,
+                    SpoolingReporter::droppedCount)
+                    .register(registry);
+            FunctionCounter.builder("camunda.tracing.spool.failures", spoolingReporter,
+                    SpoolingReporter::failureCount)
+                    .register(registry);
+            Gauge.builder("camunda.tracing.spool.bytes", spoolingReporter, SpoolingReporter::spooledBytes)
+                    .register(registry);
+        }
+        if (scopeManager.isLeakDetection()) {
+            FunctionCounter.builder("camunda.tracing.scope.leaks", scopeManager, TracingScopeManager::leakedScopes)
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,457 @@
+package io.karchevskiy.camunda.zipkin.config;
+
+import io.karchevskiy.camunda.zipkin.history.HistorySpanPipeline;
+import io.karchevskiy.camunda.zipkin.impl.AdaptiveLoadSampler;
+import io.karchevskiy.camunda.zipkin.impl.IterationAggregator;
+import io.karchevskiy.camunda.zipkin.impl.TraceContextCache;
+import io.karchevskiy.camunda.zipkin.reporter.SpoolingReporter;
+import io.karchevskiy.camunda.zipkin.tail.TailSamplingSpanHandler;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "camunda.zipkin.tracing")
+public class CamundaTracingProperties {
+
+    /**
+     * aspect - LTW aspect, plugin - process engine plugin
+     */
+    private String mode = "aspect";
+
+    /**
+     * Debug mode: detect scopes leaked inside traced calls, count them per thread and restore thread context
+     */
+    private boolean scopeLeakDetection = false;
+
+    private final Cache cache = new Cache();
+
+    /**
+     * Sampling rules by process definition key, f.e.
+     * camunda.zipkin.tracing.sampling.sample.probability=0.1
+     * camunda.zipkin.tracing.sampling.child.rate-limit=5
+     * Definitions without rule follow spring.sleuth.sampler.*
+     */
+    private final Map<String, Sampling> sampling = new HashMap<>();
+
+    private final AdaptiveSampling adaptiveSampling = new AdaptiveSampling();
+
+    private final History history = new History();
+
+    private final Aggregation aggregation = new Aggregation();
+
+    private final TailSampling tailSampling = new TailSampling();
+
+    private final Spool spool = new Spool();
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    public boolean isScopeLeakDetection() {
+        return scopeLeakDetection;
+    }
+
+    public void setScopeLeakDetection(boolean scopeLeakDetection) {
+        this.scopeLeakDetection = scopeLeakDetection;
+    }
+
+    public Cache getCache() {
+        return cache;
+    }
+
+    public Map<String, Sampling> getSampling() {
+        return sampling;
+    }
+
+    public AdaptiveSampling getAdaptiveSampling() {
+        return adaptiveSampling;
+    }
+
+    public History getHistory() {
+        return history;
+    }
+
+    public Aggregation getAggregation() {
+        return aggregation;
+    }
+
+    public TailSampling getTailSampling() {
+        return tailSampling;
+    }
+
+    public Spool getSpool() {
+        return spool;
+    }
+
+    /**
+     * Decoded trace context by process instance id
+     */
+    public static class Cache {
+        private int maxSize = TraceContextCache.DEFAULT_MAX_SIZE;
+        private Duration expireAfterWrite = TraceContextCache.DEFAULT_EXPIRE_AFTER_WRITE;
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public Duration getExpireAfterWrite() {
+            return expireAfterWrite;
+        }
+
+        public void setExpireAfterWrite(Duration expireAfterWrite) {
+            this.expireAfterWrite = expireAfterWrite;
+        }
+    }
+
+    /**
+     * Sampling of root process instances of one definition; rate limit wins, when both are set
+     */
+    public static class Sampling {
+        /**
+         * 0.0 - 1.0
+         */
+        private Float probability;
+        /**
+         * Max traced process instances per second
+         */
+        private Integer rateLimit;
+
+        public Float getProbability() {
+            return probability;
+        }
+
+        public void setProbability(Float probability) {
+            this.probability = probability;
+        }
+
+        public Integer getRateLimit() {
+            return rateLimit;
+        }
+
+        public void setRateLimit(Integer rateLimit) {
+            this.rateLimit = rateLimit;
+        }
+    }
+
+    /**
+     * Probability of tracing new root process, lowered while engine is saturated (0 - idle, 1 - saturated)
+     */
+    public static class AdaptiveSampling {
+        private boolean enabled = false;
+        private double minProbability = AdaptiveLoadSampler.DEFAULT_MIN_PROBABILITY;
+        private double maxProbability = 1.0;
+        /**
+         * Saturation, above which probability is halved
+         */
+        private double highWatermark = AdaptiveLoadSampler.DEFAULT_HIGH_WATERMARK;
+        /**
+         * Saturation, below which probability grows back
+         */
+        private double lowWatermark = AdaptiveLoadSampler.DEFAULT_LOW_WATERMARK;
+        /**
+         * Mean command latency, which counts as saturation 1
+         */
+        private Duration commandLatency = AdaptiveLoadSampler.DEFAULT_COMMAND_LATENCY;
+        private Duration interval = AdaptiveLoadSampler.DEFAULT_INTERVAL;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getMinProbability() {
+            return minProbability;
+        }
+
+        public void setMinProbability(double minProbability) {
+            this.minProbability = minProbability;
+        }
+
+        public double getMaxProbability() {
+            return maxProbability;
+        }
+
+        public void setMaxProbability(double maxProbability) {
+            this.maxProbability = maxProbability;
+        }
+
+        public double getHighWatermark() {
+            return highWatermark;
+        }
+
+        public void setHighWatermark(double highWatermark) {
+            this.highWatermark = highWatermark;
+        }
+
+        public double getLowWatermark() {
+            return lowWatermark;
+        }
+
+        public void setLowWatermark(double lowWatermark) {
+            this.lowWatermark = lowWatermark;
+        }
+
+        public Duration getCommandLatency() {
+            return commandLatency;
+        }
+
+        public void setCommandLatency(Duration commandLatency) {
+            this.commandLatency = commandLatency;
+        }
+
+        public Duration getInterval() {
+            return interval;
+        }
+
+        public void setInterval(Duration interval) {
+            this.interval = interval;
+        }
+    }
+
+    /**
+     * Spans of activity and task instances built from history events, requires history level activity or higher
+     */
+    public static class History {
+        private boolean enabled = false;
+        private int queueCapacity = HistorySpanPipeline.DEFAULT_QUEUE_CAPACITY;
+        private int batchSize = HistorySpanPipeline.DEFAULT_BATCH_SIZE;
+        private int workers = 1;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public int getWorkers() {
+            return workers;
+        }
+
+        public void setWorkers(int workers) {
+            this.workers = workers;
+        }
+    }
+
+    /**
+     * Summary span per multi-instance body (and looped activity) instead of delegate span per iteration
+     */
+    public static class Aggregation {
+        private boolean enabled = false;
+        /**
+         * Iteration spans reported besides failed ones
+         */
+        private int slowest = IterationAggregator.DEFAULT_SLOWEST;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getSlowest() {
+            return slowest;
+        }
+
+        public void setSlowest(int slowest) {
+            this.slowest = slowest;
+        }
+    }
+
+    /**
+     * Spans of root process trace are held until process end and reported only when some rule matches
+     */
+    public static class TailSampling {
+        private boolean enabled = false;
+        /**
+         * Keep trace of root process running at least that long; not set - duration is not checked
+         */
+        private Duration slowerThan;
+        /**
+         * Keep trace with any failed span
+         */
+        private boolean errors = true;
+        /**
+         * Keep trace, where delegate threw BpmnError (matters, when errors=false)
+         */
+        private boolean bpmnErrors = true;
+        /**
+         * Keep trace, where job failed on its last retry (matters, when errors=false)
+         */
+        private boolean incidents = true;
+        /**
+         * 0.0 - 1.0, share of traces kept regardless of other rules
+         */
+        private float probability = 0.0f;
+        private long maxBufferedBytes = TailSamplingSpanHandler.DEFAULT_MAX_BUFFERED_BYTES;
+        private int maxSpansPerTrace = TailSamplingSpanHandler.DEFAULT_MAX_SPANS_PER_TRACE;
+        private Duration maxAge = TailSamplingSpanHandler.DEFAULT_MAX_AGE;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getSlowerThan() {
+            return slowerThan;
+        }
+
+        public void setSlowerThan(Duration slowerThan) {
+            this.slowerThan = slowerThan;
+        }
+
+        public boolean isErrors() {
+            return errors;
+        }
+
+        public void setErrors(boolean errors) {
+            this.errors = errors;
+        }
+
+        public boolean isBpmnErrors() {
+            return bpmnErrors;
+        }
+
+        public void setBpmnErrors(boolean bpmnErrors) {
+            this.bpmnErrors = bpmnErrors;
+        }
+
+        public boolean isIncidents() {
+            return incidents;
+        }
+
+        public void setIncidents(boolean incidents) {
+            this.incidents = incidents;
+        }
+
+        public float getProbability() {
+            return probability;
+        }
+
+        public void setProbability(float probability) {
+            this.probability = probability;
+        }
+
+        public long getMaxBufferedBytes() {
+            return maxBufferedBytes;
+        }
+
+        public void setMaxBufferedBytes(long maxBufferedBytes) {
+            this.maxBufferedBytes = maxBufferedBytes;
+        }
+
+        public int getMaxSpansPerTrace() {
+            return maxSpansPerTrace;
+        }
+
+        public void setMaxSpansPerTrace(int maxSpansPerTrace) {
+            this.maxSpansPerTrace = maxSpansPerTrace;
+        }
+
+        public Duration getMaxAge() {
+            return maxAge;
+        }
+
+        public void setMaxAge(Duration maxAge) {
+            this.maxAge = maxAge;
+        }
+    }
+
+    /**
+     * Spans are appended to memory-mapped file and sent to zipkin sender by background thread
+     */
+    public static class Spool {
+        private boolean enabled = false;
+        private String path = System.getProperty("java.io.tmpdir") + "/camunda-zipkin-spans.spool";
+        /**
+         * Bytes of ring, oldest spans are dropped, when it is full
+         */
+        private int size = SpoolingReporter.DEFAULT_SIZE;
+        private int batchSpans = SpoolingReporter.DEFAULT_BATCH_SPANS;
+        private Duration syncInterval = SpoolingReporter.DEFAULT_SYNC_INTERVAL;
+        private Duration maxBackoff = SpoolingReporter.DEFAULT_MAX_BACKOFF;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public void setPath(String path) {
+            this.path = path;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public void setSize(int size) {
+            this.size = size;
+        }
+
+        public int getBatchSpans() {
+            return batchSpans;
+        }
+
+        public void setBatchSpans(int batchSpans) {
+            this.batchSpans = batchSpans;
+        }
+
+        public Duration getSyncInterval() {
+            return syncInterval;
+        }
+
+        public void setSyncInterval(Duration syncInterval) {
+            this.syncInterval = syncInterval;
+        }
+
+        public Duration getMaxBackoff() {
+            return maxBackoff;
+        }
+
+        public void setMaxBackoff(Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+        }
+    }
+}
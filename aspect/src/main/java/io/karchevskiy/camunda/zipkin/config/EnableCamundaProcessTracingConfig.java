@@ -1,18 +1,176 @@
 package io.karchevskiy.camunda.zipkin.config;
 
 import brave.Tracing;
+import brave.sampler.RateLimitingSampler;
+import brave.sampler.Sampler;
+import io.karchevskiy.camunda.zipkin.history.HistorySpanPipeline;
+import io.karchevskiy.camunda.zipkin.history.HistoryTracingProcessEnginePlugin;
+import io.karchevskiy.camunda.zipkin.impl.AdaptiveLoadSampler;
+import io.karchevskiy.camunda.zipkin.impl.IterationAggregator;
+import io.karchevskiy.camunda.zipkin.impl.JobExecutorTimings;
+import io.karchevskiy.camunda.zipkin.impl.ProcessDefinitionSampler;
+import io.karchevskiy.camunda.zipkin.impl.TraceContextCache;
+import io.karchevskiy.camunda.zipkin.impl.TracingScopeManager;
+import io.karchevskiy.camunda.zipkin.plugin.EngineLoadProcessEnginePlugin;
+import io.karchevskiy.camunda.zipkin.plugin.TracingProcessEnginePlugin;
+import io.karchevskiy.camunda.zipkin.reporter.SpoolingReporter;
+import io.karchevskiy.camunda.zipkin.tail.TailSamplingSpanHandler;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import io.karchevskiy.camunda.zipkin.CamundaSlueuthContextInjectingAspect;
 
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * camunda.zipkin.tracing.mode=aspect (default) - LTW aspect, requires -javaagent:aspectjweaver
+ * camunda.zipkin.tracing.mode=plugin - {@link TracingProcessEnginePlugin}, no javaagent required
+ * camunda.zipkin.tracing.history.enabled=true - {@link HistoryTracingProcessEnginePlugin} in addition to mode
+ * camunda.zipkin.tracing.adaptive-sampling.enabled=true - {@link EngineLoadProcessEnginePlugin} in addition to mode
+ * camunda.zipkin.tracing.tail-sampling.enabled=true - {@link TailSamplingSpanHandler}, see {@link TailSamplingConfig}
+ * camunda.zipkin.tracing.spool.enabled=true - {@link SpoolingReporter}, see {@link SpanSpoolConfig}
+ */
 @Configuration
 @ConditionalOnWebApplication
+@EnableConfigurationProperties(CamundaTracingProperties.class)
 public class EnableCamundaProcessTracingConfig {
 
+    public static final String TRACING_MODE_PROPERTY = "camunda.zipkin.tracing.mode";
+    public static final String HISTORY_ENABLED_PROPERTY = "camunda.zipkin.tracing.history.enabled";
+    public static final String ADAPTIVE_SAMPLING_ENABLED_PROPERTY = "camunda.zipkin.tracing.adaptive-sampling.enabled";
+    public static final String TAIL_SAMPLING_ENABLED_PROPERTY = "camunda.zipkin.tracing.tail-sampling.enabled";
+
+    private static final String JOB_EXECUTOR_TASK_EXECUTOR = "camundaTaskExecutor";
+
+    @Bean
+    public TraceContextCache traceContextCache(CamundaTracingProperties properties){
+        return new TraceContextCache(properties.getCache().getMaxSize(), properties.getCache().getExpireAfterWrite());
+    }
+
+    @Bean
+    public TracingScopeManager tracingScopeManager(Tracing tracing, CamundaTracingProperties properties){
+        return new TracingScopeManager(tracing, properties.isScopeLeakDetection());
+    }
+
+    @Bean
+    public JobExecutorTimings jobExecutorTimings(){
+        return new JobExecutorTimings();
+    }
+
+    /**
+     * Spring boot starter runs jobs on camundaTaskExecutor, its thread pool is created at context start
+     */
+    @Bean
+    public AdaptiveLoadSampler adaptiveLoadSampler(CamundaTracingProperties properties, BeanFactory beanFactory){
+        CamundaTracingProperties.AdaptiveSampling adaptive = properties.getAdaptiveSampling();
+        AdaptiveLoadSampler sampler = new AdaptiveLoadSampler(adaptive.isEnabled(), adaptive.getMinProbability(),
+                adaptive.getMaxProbability(), adaptive.getHighWatermark(), adaptive.getLowWatermark(),
+                adaptive.getCommandLatency(), adaptive.getInterval());
+        if (adaptive.isEnabled() && beanFactory.containsBean(JOB_EXECUTOR_TASK_EXECUTOR)) {
+            sampler.jobExecutor(() -> {
+                Object taskExecutor = beanFactory.getBean(JOB_EXECUTOR_TASK_EXECUTOR);
+                try {
+                    return taskExecutor instanceof ThreadPoolTaskExecutor
+                            ? ((ThreadPoolTaskExecutor) taskExecutor).getThreadPoolExecutor()
+                            : null;
+                } catch (IllegalStateException notInitialized) {
+                    return null;
+                }
+            });
+        }
+        return sampler;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = ADAPTIVE_SAMPLING_ENABLED_PROPERTY, havingValue = "true")
+    public EngineLoadProcessEnginePlugin engineLoadProcessEnginePlugin(AdaptiveLoadSampler adaptiveLoadSampler){
+        return new EngineLoadProcessEnginePlugin(adaptiveLoadSampler);
+    }
+
     @Bean
-    public CamundaSlueuthContextInjectingAspect processSpanDefinitionAspect(Tracing tracing){
-        return new CamundaSlueuthContextInjectingAspect(tracing);
+    public ProcessDefinitionSampler processDefinitionSampler(CamundaTracingProperties properties,
+                                                             AdaptiveLoadSampler adaptiveLoadSampler){
+        Map<String, Sampler> samplers = new HashMap<>();
+        properties.getSampling().forEach((processDefinitionKey, sampling) -> {
+            if (sampling.getRateLimit() != null) {
+                samplers.put(processDefinitionKey, RateLimitingSampler.create(sampling.getRateLimit()));
+            } else if (sampling.getProbability() != null) {
+                samplers.put(processDefinitionKey, Sampler.create(sampling.getProbability()));
+            }
+        });
+        return new ProcessDefinitionSampler(samplers, adaptiveLoadSampler);
+    }
+
+    @Bean
+    public IterationAggregator iterationAggregator(CamundaTracingProperties properties){
+        return new IterationAggregator(properties.getAggregation().isEnabled(),
+                properties.getAggregation().getSlowest());
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = TRACING_MODE_PROPERTY, havingValue = "aspect", matchIfMissing = true)
+    public CamundaSlueuthContextInjectingAspect processSpanDefinitionAspect(Tracing tracing,
+                                                                            TraceContextCache traceContextCache,
+                                                                            TracingScopeManager scopeManager,
+                                                                            JobExecutorTimings jobExecutorTimings,
+                                                                            ProcessDefinitionSampler processSampler,
+                                                                            IterationAggregator iterationAggregator){
+        return new CamundaSlueuthContextInjectingAspect(tracing, traceContextCache, scopeManager,
+                jobExecutorTimings, processSampler, iterationAggregator);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = TRACING_MODE_PROPERTY, havingValue = "plugin")
+    public TracingProcessEnginePlugin tracingProcessEnginePlugin(Tracing tracing,
+                                                                 TraceContextCache traceContextCache,
+                                                                 TracingScopeManager scopeManager,
+                                                                 JobExecutorTimings jobExecutorTimings,
+                                                                 ProcessDefinitionSampler processSampler,
+                                                                 IterationAggregator iterationAggregator){
+        return new TracingProcessEnginePlugin(tracing, traceContextCache, scopeManager,
+                jobExecutorTimings, processSampler, iterationAggregator);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = HISTORY_ENABLED_PROPERTY, havingValue = "true")
+    public HistorySpanPipeline historySpanPipeline(Tracing tracing,
+                                                   TraceContextCache traceContextCache,
+                                                   CamundaTracingProperties properties){
+        CamundaTracingProperties.History history = properties.getHistory();
+        return new HistorySpanPipeline(tracing, traceContextCache,
+                history.getQueueCapacity(), history.getBatchSize(), history.getWorkers());
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = HISTORY_ENABLED_PROPERTY, havingValue = "true")
+    public HistoryTracingProcessEnginePlugin historyTracingProcessEnginePlugin(HistorySpanPipeline pipeline){
+        return new HistoryTracingProcessEnginePlugin(pipeline);
+    }
+
+    @Configuration
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+    static class TracingMetricsConfig {
+
+        @Bean
+        public CamundaTracingMetrics camundaTracingMetrics(TraceContextCache traceContextCache,
+                                                           TracingScopeManager scopeManager,
+                                                           JobExecutorTimings jobExecutorTimings,
+                                                           IterationAggregator iterationAggregator,
+                                                           AdaptiveLoadSampler adaptiveLoadSampler,
+                                                           ObjectProvider<HistorySpanPipeline> historySpanPipeline,
+                                                           ObjectProvider<TailSamplingSpanHandler> tailSampling,
+                                                           ObjectProvider<SpoolingReporter> spoolingReporter){
+            return new CamundaTracingMetrics(traceContextCache, scopeManager, jobExecutorTimings,
+                    iterationAggregator, adaptiveLoadSampler, historySpanPipeline.getIfAvailable(),
+                    tailSampling.getIfAvailable(), spoolingReporter.getIfAvailable());
+        }
     }
 
 }
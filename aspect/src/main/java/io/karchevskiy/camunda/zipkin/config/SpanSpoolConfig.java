@@ -0,0 +1,34 @@
+package io.karchevskiy.camunda.zipkin.config;
+
+import io.karchevskiy.camunda.zipkin.reporter.SpoolingReporter;
+import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import zipkin2.reporter.Sender;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * camunda.zipkin.tracing.spool.enabled=true - {@link SpoolingReporter} replaces zipkin reporter of sleuth,
+ * so it is configured before sleuth zipkin configuration and has the same bean name
+ */
+@Configuration
+@ConditionalOnWebApplication
+@ConditionalOnProperty(name = SpanSpoolConfig.SPOOL_ENABLED_PROPERTY, havingValue = "true")
+@AutoConfigureBefore(name = "org.springframework.cloud.sleuth.zipkin2.ZipkinAutoConfiguration")
+@EnableConfigurationProperties(CamundaTracingProperties.class)
+public class SpanSpoolConfig {
+
+    public static final String SPOOL_ENABLED_PROPERTY = "camunda.zipkin.tracing.spool.enabled";
+
+    @Bean(name = "zipkinReporter", destroyMethod = "close")
+    public SpoolingReporter spoolingReporter(Sender sender, CamundaTracingProperties properties) throws IOException {
+        CamundaTracingProperties.Spool spool = properties.getSpool();
+        return new SpoolingReporter(sender, Paths.get(spool.getPath()), spool.getSize(), spool.getBatchSpans(),
+                spool.getSyncInterval(), spool.getMaxBackoff());
+    }
+}
@@ -0,0 +1,76 @@
+package io.karchevskiy.camunda.zipkin.config;
+
+import brave.ErrorParser;
+import brave.Tracing;
+import brave.propagation.CurrentTraceContext;
+import brave.propagation.Propagation;
+import brave.sampler.Sampler;
+import io.karchevskiy.camunda.zipkin.tail.TailSamplingRules;
+import io.karchevskiy.camunda.zipkin.tail.TailSamplingSpanHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import zipkin2.Span;
+import zipkin2.reporter.Reporter;
+
+import static io.karchevskiy.camunda.zipkin.config.EnableCamundaProcessTracingConfig.TAIL_SAMPLING_ENABLED_PROPERTY;
+
+/**
+ * camunda.zipkin.tracing.tail-sampling.enabled=true - {@link TailSamplingSpanHandler} is added to tracing builder
+ * before zipkin reporting. Sleuth 2.0 does not register finished span handler beans, so tracing of sleuth is
+ * replaced: configured before sleuth trace configuration, which skips its own tracing bean then.
+ * Tracing is built from beans and properties of sleuth, span adjusters of sleuth are not applied.
+ */
+@Configuration
+@ConditionalOnWebApplication
+@ConditionalOnProperty(name = TAIL_SAMPLING_ENABLED_PROPERTY, havingValue = "true")
+@AutoConfigureBefore(name = "org.springframework.cloud.sleuth.autoconfig.TraceAutoConfiguration")
+@EnableConfigurationProperties(CamundaTracingProperties.class)
+public class TailSamplingConfig {
+
+    private static final String SERVICE_NAME = "${spring.zipkin.service.name:${spring.application.name:default}}";
+
+    /**
+     * Kept spans are sent to zipkin reporter directly
+     */
+    @Bean
+    public TailSamplingSpanHandler tailSamplingSpanHandler(Reporter<Span> reporter,
+                                                           CamundaTracingProperties properties,
+                                                           @Value(SERVICE_NAME) String serviceName){
+        CamundaTracingProperties.TailSampling tailSampling = properties.getTailSampling();
+        TailSamplingRules rules = new TailSamplingRules(tailSampling.getSlowerThan(), tailSampling.isErrors(),
+                tailSampling.isBpmnErrors(), tailSampling.isIncidents(), tailSampling.getProbability());
+        return new TailSamplingSpanHandler(rules, reporter, serviceName, tailSampling.getMaxBufferedBytes(),
+                tailSampling.getMaxSpansPerTrace(), tailSampling.getMaxAge());
+    }
+
+    /**
+     * Same tracing, as sleuth builds, with tail sampling handler: brave runs it before zipkin reporting
+     */
+    @Bean(destroyMethod = "close")
+    public Tracing tracing(@Value(SERVICE_NAME) String serviceName,
+                           Propagation.Factory propagationFactory,
+                           CurrentTraceContext currentTraceContext,
+                           Reporter<Span> reporter,
+                           Sampler sampler,
+                           ErrorParser errorParser,
+                           @Value("${spring.sleuth.trace-id128:false}") boolean traceId128,
+                           @Value("${spring.sleuth.supports-join:true}") boolean supportsJoin,
+                           TailSamplingSpanHandler tailSamplingSpanHandler){
+        return Tracing.newBuilder()
+                .sampler(sampler)
+                .errorParser(errorParser)
+                .localServiceName(serviceName)
+                .propagationFactory(propagationFactory)
+                .currentTraceContext(currentTraceContext)
+                .addFinishedSpanHandler(tailSamplingSpanHandler)
+                .spanReporter(reporter)
+                .traceId128Bit(traceId128)
+                .supportsJoin(supportsJoin)
+                .build();
+    }
+}
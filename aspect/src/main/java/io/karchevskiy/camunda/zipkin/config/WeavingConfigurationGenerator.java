@@ -0,0 +1,43 @@
+package io.karchevskiy.camunda.zipkin.config;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Generates application META-INF/aop.xml, limiting weaving to packages with JavaDelegate implementations.
+ * AspectJ merges it with aop.xml of aspect module (camunda engine join points).
+ *
+ * Usage: WeavingConfigurationGenerator output-file package1,package2
+ */
+public class WeavingConfigurationGenerator {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: WeavingConfigurationGenerator <output file> <delegate packages>");
+        }
+        Path output = Paths.get(args[0]);
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        Files.write(output, generate(args[1].split(",")).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String generate(String... delegatePackages) {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<aspectj>\n");
+        xml.append("  <weaver>\n");
+        for (String delegatePackage : delegatePackages) {
+            String trimmed = delegatePackage.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            xml.append("    <include within=\"").append(trimmed).append("..*\"/>\n");
+        }
+        xml.append("  </weaver>\n");
+        xml.append("</aspectj>\n");
+        return xml.toString();
+    }
+}
@@ -0,0 +1,294 @@
+package io.karchevskiy.camunda.zipkin.history;
+
+import brave.Span;
+import brave.Tracing;
+import brave.propagation.TraceContext;
+import io.karchevskiy.camunda.zipkin.impl.ProcessTraceContext;
+import io.karchevskiy.camunda.zipkin.impl.TraceContextCache;
+import io.karchevskiy.camunda.zipkin.impl.TraceContextVariables;
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.ProcessEngineException;
+import org.camunda.bpm.engine.history.HistoricVariableInstance;
+import org.camunda.bpm.engine.impl.context.Context;
+import org.camunda.bpm.engine.impl.history.event.HistoricActivityInstanceEventEntity;
+import org.camunda.bpm.engine.impl.history.event.HistoricProcessInstanceEventEntity;
+import org.camunda.bpm.engine.impl.history.event.HistoricScopeInstanceEvent;
+import org.camunda.bpm.engine.impl.history.event.HistoricTaskInstanceEventEntity;
+import org.camunda.bpm.engine.impl.history.event.HistoryEvent;
+import org.camunda.bpm.engine.impl.interceptor.CommandContext;
+import org.camunda.bpm.engine.impl.persistence.entity.ExecutionEntity;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static io.karchevskiy.camunda.zipkin.CamundaSlueuthContextInjectingAspect.X_SLEUTH_TRACE_CONTEXT;
+
+/**
+ * Converts history events to spans on background workers. Engine thread only offers event
+ * to bounded queue (event is dropped and counted, when queue is full), workers drain it in batches.
+ *
+ * Spans are children of process span, context is taken from {@link TraceContextCache} at enqueue, on cache miss
+ * from trace variable of process instance in current command (cache is filled only after start transaction),
+ * and only when instance is not in command, resolved by worker from trace variable (runtime, then history).
+ * Worker does not remember missing contexts: variable may be committed later.
+ * Spans get start and finish timestamps of history event, so they show real activity timing.
+ */
+public class HistorySpanPipeline implements AutoCloseable {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    static final ProcessTraceContext NOT_CACHED =
+            new ProcessTraceContext(TraceContext.newBuilder().traceId(1L).spanId(1L).build(), null);
+
+    private final Logger log = Logger.getLogger(HistorySpanPipeline.class.getName());
+
+    private final Tracing tracing;
+    private final TraceContextCache traceContextCache;
+    private final TraceContextCache resolvedContexts = new TraceContextCache();
+    private final BlockingQueue<QueuedEvent> queue;
+    private final int batchSize;
+    private final List<Thread> workers = new ArrayList<>();
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder reported = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private volatile ProcessEngine processEngine;
+    private volatile boolean running;
+
+    public HistorySpanPipeline(Tracing tracing, TraceContextCache traceContextCache) {
+        this(tracing, traceContextCache, DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE, 1);
+    }
+
+    public HistorySpanPipeline(Tracing tracing, TraceContextCache traceContextCache,
+                               int queueCapacity, int batchSize, int workerCount) {
+        this.tracing = tracing;
+        this.traceContextCache = traceContextCache;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::work, "history-span-pipeline-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * @param processEngine used to resolve trace context of processes missing in cache
+     */
+    public synchronized void start(ProcessEngine processEngine) {
+        this.processEngine = processEngine;
+        if (running) {
+            return;
+        }
+        running = true;
+        workers.forEach(Thread::start);
+    }
+
+    /**
+     * Engine thread: no span work, only cache lookup (or variable of process instance in command) and offer
+     */
+    void enqueue(HistoryEvent event) {
+        ProcessTraceContext context = traceContextCache.getIfPresent(event.getProcessInstanceId(), NOT_CACHED);
+        if (context == NOT_CACHED && !(event instanceof HistoricProcessInstanceEventEntity)) {
+            context = fromCommand(event.getProcessInstanceId());
+        }
+        if (queue.offer(new QueuedEvent(event, context))) {
+            enqueued.increment();
+        } else {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Process instance is in entity cache of command, which produced its history event: variable is read
+     * before start transaction commits, and missing variable means process is not traced
+     *
+     * @return {@link #NOT_CACHED}, when there is no command or instance is not found in it
+     */
+    private ProcessTraceContext fromCommand(String processInstanceId) {
+        CommandContext commandContext = Context.getCommandContext();
+        if (commandContext == null || processInstanceId == null) {
+            return NOT_CACHED;
+        }
+        ExecutionEntity processInstance = commandContext.getExecutionManager().findExecutionById(processInstanceId);
+        if (processInstance == null) {
+            return NOT_CACHED;
+        }
+        return TraceContextVariables.decode(tracing, processInstance.getVariableLocal(X_SLEUTH_TRACE_CONTEXT));
+    }
+
+    private void work() {
+        List<QueuedEvent> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                QueuedEvent first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                for (QueuedEvent queuedEvent : batch) {
+                    report(queuedEvent);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void report(QueuedEvent queuedEvent) {
+        HistoryEvent event = queuedEvent.event;
+        try {
+            if (event instanceof HistoricProcessInstanceEventEntity) {
+                //process duration is covered by RPD/CPD span, only forget process context
+                resolvedContexts.invalidate(event.getProcessInstanceId());
+                return;
+            }
+            ProcessTraceContext context = queuedEvent.context != NOT_CACHED
+                    ? queuedEvent.context
+                    : resolve(event.getProcessInstanceId());
+            if (context == null) {
+                return;
+            }
+            Span span = tracing.tracer().newChild(context.processContext());
+            if (span.isNoop()) {
+                return;
+            }
+            if (event instanceof HistoricActivityInstanceEventEntity) {
+                HistoricActivityInstanceEventEntity activity = (HistoricActivityInstanceEventEntity) event;
+                span.name("ACT:" + (activity.getActivityName() != null
+                        ? activity.getActivityName()
+                        : activity.getActivityId()));
+                span.tag("camunda.activity.id", activity.getActivityId());
+                span.tag("camunda.activity.type", activity.getActivityType());
+                span.tag("camunda.activity.instance.id", activity.getActivityInstanceId());
+                if (activity.getParentActivityInstanceId() != null) {
+                    span.tag("camunda.activity.parent.instance.id", activity.getParentActivityInstanceId());
+                }
+            } else if (event instanceof HistoricTaskInstanceEventEntity) {
+                HistoricTaskInstanceEventEntity task = (HistoricTaskInstanceEventEntity) event;
+                span.name("TASK:" + (task.getName() != null ? task.getName() : task.getTaskDefinitionKey()));
+                span.tag("camunda.task.id", task.getTaskId());
+                if (task.getTaskDefinitionKey() != null) {
+                    span.tag("camunda.task.definition.key", task.getTaskDefinitionKey());
+                }
+                if (task.getDeleteReason() != null) {
+                    span.tag("camunda.task.delete.reason", task.getDeleteReason());
+                }
+            } else {
+                return;
+            }
+            HistoricScopeInstanceEvent scope = (HistoricScopeInstanceEvent) event;
+            long finish = scope.getEndTime() != null ? scope.getEndTime().getTime() : System.currentTimeMillis();
+            long start = scope.getStartTime() != null ? scope.getStartTime().getTime() : finish;
+            span.start(start * 1000).finish(finish * 1000);
+            reported.increment();
+        } catch (RuntimeException e) {
+            failed.increment();
+            log.log(Level.FINE, "History event " + event.getId() + " not reported", e);
+        }
+    }
+
+    /**
+     * Only loaded contexts are cached: null may be a transaction, which is not committed yet
+     */
+    private ProcessTraceContext resolve(String processInstanceId) {
+        ProcessTraceContext context = resolvedContexts.getIfPresent(processInstanceId, NOT_CACHED);
+        if (context != NOT_CACHED) {
+            return context;
+        }
+        context = load(processInstanceId);
+        if (context != null) {
+            resolvedContexts.put(processInstanceId, context);
+        }
+        return context;
+    }
+
+    /**
+     * Cache miss (f.e. process started on another node): trace variable of running process, then history
+     */
+    private ProcessTraceContext load(String processInstanceId) {
+        ProcessEngine engine = processEngine;
+        if (engine == null || processInstanceId == null) {
+            return null;
+        }
+        Object value = null;
+        try {
+            value = engine.getRuntimeService().getVariableLocal(processInstanceId, X_SLEUTH_TRACE_CONTEXT);
+        } catch (ProcessEngineException e) {
+            //process already ended
+        }
+        if (value == null) {
+            HistoricVariableInstance variable = engine.getHistoryService().createHistoricVariableInstanceQuery()
+                    .processInstanceId(processInstanceId)
+                    .variableName(X_SLEUTH_TRACE_CONTEXT)
+                    .disableCustomObjectDeserialization()
+                    .singleResult();
+            value = variable != null ? variable.getValue() : null;
+        }
+        return TraceContextVariables.decode(tracing, value);
+    }
+
+    /**
+     * Stops accepting work after queued events are reported or timeout elapses
+     */
+    @Override
+    public void close() {
+        close(Duration.ofSeconds(5));
+    }
+
+    public void close(Duration timeout) {
+        running = false;
+        long deadline = System.nanoTime() + timeout.toNanos();
+        for (Thread worker : workers) {
+            try {
+                worker.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public long enqueuedCount() {
+        return enqueued.sum();
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    public long reportedCount() {
+        return reported.sum();
+    }
+
+    public long failedCount() {
+        return failed.sum();
+    }
+
+    public int queueSize() {
+        return queue.size();
+    }
+
+    private static final class QueuedEvent {
+        final HistoryEvent event;
+        final ProcessTraceContext context;
+
+        QueuedEvent(HistoryEvent event, ProcessTraceContext context) {
+            this.event = event;
+            this.context = context;
+        }
+    }
+}
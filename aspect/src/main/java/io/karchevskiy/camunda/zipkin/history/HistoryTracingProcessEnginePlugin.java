@@ -0,0 +1,36 @@
+package io.karchevskiy.camunda.zipkin.history;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.impl.cfg.AbstractProcessEnginePlugin;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.history.handler.CompositeDbHistoryEventHandler;
+import org.camunda.bpm.engine.impl.history.handler.CompositeHistoryEventHandler;
+import org.camunda.bpm.engine.impl.history.handler.HistoryEventHandler;
+
+/**
+ * Adds {@link TracingHistoryEventHandler} next to configured (or default db) history event handler.
+ * Works with both tracing modes: every flow node gets a span without additional weaving join points.
+ * Requires history level activity or higher.
+ */
+public class HistoryTracingProcessEnginePlugin extends AbstractProcessEnginePlugin {
+
+    private final HistorySpanPipeline pipeline;
+
+    public HistoryTracingProcessEnginePlugin(HistorySpanPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    @Override
+    public void preInit(ProcessEngineConfigurationImpl configuration) {
+        TracingHistoryEventHandler tracingHandler = new TracingHistoryEventHandler(pipeline);
+        HistoryEventHandler historyEventHandler = configuration.getHistoryEventHandler();
+        configuration.setHistoryEventHandler(historyEventHandler == null
+                ? new CompositeDbHistoryEventHandler(tracingHandler)
+                : new CompositeHistoryEventHandler(historyEventHandler, tracingHandler));
+    }
+
+    @Override
+    public void postProcessEngineBuild(ProcessEngine processEngine) {
+        pipeline.start(processEngine);
+    }
+}
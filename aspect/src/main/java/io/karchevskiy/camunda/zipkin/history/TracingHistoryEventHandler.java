@@ -0,0 +1,37 @@
+package io.karchevskiy.camunda.zipkin.history;
+
+import org.camunda.bpm.engine.impl.history.event.HistoryEvent;
+import org.camunda.bpm.engine.impl.history.event.HistoryEventTypes;
+import org.camunda.bpm.engine.impl.history.handler.HistoryEventHandler;
+
+import java.util.List;
+
+/**
+ * Passes finished activity instances, tasks and ended process instances to {@link HistorySpanPipeline}.
+ * Runs in engine transaction next to db history handler; events of rolled back transactions are reported too.
+ */
+public class TracingHistoryEventHandler implements HistoryEventHandler {
+
+    private final HistorySpanPipeline pipeline;
+
+    public TracingHistoryEventHandler(HistorySpanPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    @Override
+    public void handleEvent(HistoryEvent historyEvent) {
+        if (historyEvent.isEventOfType(HistoryEventTypes.ACTIVITY_INSTANCE_END)
+                || historyEvent.isEventOfType(HistoryEventTypes.TASK_INSTANCE_COMPLETE)
+                || historyEvent.isEventOfType(HistoryEventTypes.TASK_INSTANCE_DELETE)
+                || historyEvent.isEventOfType(HistoryEventTypes.PROCESS_INSTANCE_END)) {
+            pipeline.enqueue(historyEvent);
+        }
+    }
+
+    @Override
+    public void handleEvents(List<HistoryEvent> historyEvents) {
+        for (HistoryEvent historyEvent : historyEvents) {
+            handleEvent(historyEvent);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package io.karchevskiy.camunda.zipkin.impl;
+
+import brave.Span;
+
+/**
+ * Tracing decisions of one activity, resolved at deployment and stored as activity property.
+ * Advices read it with one property lookup and return at once, when activity is not traced.
+ */
+public final class ActivityPlan {
+
+    public static final String PROPERTY = "zipkin.activityPlan";
+    public static final String ACTIVITY_ID_TAG = "camunda.activity.id";
+    public static final String CONNECTOR_SPAN_NAME = "sending unknown async event";
+
+    /**
+     * How delegate spans of repeated activity are reported, when aggregation is enabled
+     */
+    public enum Aggregation {
+        /**
+         * Span per execution
+         */
+        NONE,
+        /**
+         * Summary span per multi-instance body instance
+         */
+        MULTI_INSTANCE,
+        /**
+         * Summary span per process instance, for activities repeated by gateway loop
+         * (camunda:property zipkin.tracing.aggregate=true)
+         */
+        LOOP
+    }
+
+    private final String activityId;
+    private final boolean traced;
+    private final String spanName;
+    private final String calledProcessKey;
+    private final Aggregation aggregation;
+
+    ActivityPlan(String activityId, boolean traced, String spanName, String calledProcessKey,
+                 Aggregation aggregation) {
+        this.activityId = activityId.intern();
+        this.traced = traced;
+        this.spanName = spanName != null ? spanName.intern() : null;
+        this.calledProcessKey = calledProcessKey;
+        this.aggregation = spanName != null ? aggregation : Aggregation.NONE;
+    }
+
+    public String activityId() {
+        return activityId;
+    }
+
+    public boolean traced() {
+        return traced;
+    }
+
+    /**
+     * @return JD/connector span name of delegate declared in bpmn, null for other activities
+     */
+    public String spanName() {
+        return spanName;
+    }
+
+    /**
+     * @return key of process called by call activity with constant latest binding, otherwise null
+     */
+    public String calledProcessKey() {
+        return calledProcessKey;
+    }
+
+    public Aggregation aggregation() {
+        return aggregation;
+    }
+
+    public void tag(Span span) {
+        if (!span.isNoop()) {
+            span.tag(ACTIVITY_ID_TAG, activityId);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package io.karchevskiy.camunda.zipkin.impl;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Probability of tracing new root process, lowered while engine is saturated and raised back, when load drops.
+ * Saturation (0 - idle, 1 - saturated) is the highest of: job executor queue fill, busy job executor threads,
+ * mean command latency against latency limit and 1, when job executor rejected jobs since last update.
+ *
+ * Hysteresis: above high watermark probability is multiplied by decrease factor, below low watermark it grows
+ * by increase step, between them it is kept. Updated at most once per interval by first sampling thread after it,
+ * so there is no background thread and no lock on sampling path.
+ */
+public class AdaptiveLoadSampler {
+
+    public static final AdaptiveLoadSampler DISABLED = new AdaptiveLoadSampler(false, 1.0, 1.0, 0.8, 0.5,
+            Duration.ofSeconds(1), Duration.ofSeconds(1));
+
+    public static final double DEFAULT_MIN_PROBABILITY = 0.01;
+    public static final double DEFAULT_HIGH_WATERMARK = 0.8;
+    public static final double DEFAULT_LOW_WATERMARK = 0.5;
+    public static final Duration DEFAULT_COMMAND_LATENCY = Duration.ofMillis(500);
+    public static final Duration DEFAULT_INTERVAL = Duration.ofSeconds(1);
+
+    static final double DECREASE = 0.5;
+    static final double INCREASE = 0.05;
+
+    private final boolean enabled;
+    private final double minProbability;
+    private final double maxProbability;
+    private final double highWatermark;
+    private final double lowWatermark;
+    private final long commandLatencyNanos;
+    private final long intervalNanos;
+
+    private final LongAdder commands = new LongAdder();
+    private final LongAdder commandNanos = new LongAdder();
+    private final LongAdder rejectedJobs = new LongAdder();
+    private final AtomicLong updatedAt = new AtomicLong(System.nanoTime());
+    private volatile Supplier<ThreadPoolExecutor> jobExecutor = () -> null;
+    private volatile double probability;
+    private volatile double saturation;
+    private long lastCommands;
+    private long lastCommandNanos;
+    private long lastRejectedJobs;
+
+    public AdaptiveLoadSampler(boolean enabled, double minProbability, double maxProbability, double highWatermark,
+                               double lowWatermark, Duration commandLatency, Duration interval) {
+        if (minProbability < 0.0 || maxProbability > 1.0 || minProbability > maxProbability) {
+            throw new IllegalArgumentException("0.0 <= minProbability <= maxProbability <= 1.0 expected");
+        }
+        if (lowWatermark > highWatermark) throw new IllegalArgumentException("lowWatermark > highWatermark");
+        this.enabled = enabled;
+        this.minProbability = minProbability;
+        this.maxProbability = maxProbability;
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        this.commandLatencyNanos = commandLatency.toNanos();
+        this.intervalNanos = interval.toNanos();
+        this.probability = maxProbability;
+    }
+
+    /**
+     * @return false, when new root process should not be traced because of engine load
+     */
+    public boolean isSampled() {
+        if (!enabled) {
+            return true;
+        }
+        long now = System.nanoTime();
+        long last = updatedAt.get();
+        if (now - last >= intervalNanos && updatedAt.compareAndSet(last, now)) {
+            update();
+        }
+        double current = probability;
+        return current >= 1.0 || ThreadLocalRandom.current().nextDouble() < current;
+    }
+
+    public void commandExecuted(long nanos) {
+        if (enabled) {
+            commands.increment();
+            commandNanos.add(nanos);
+        }
+    }
+
+    public void jobsRejected(int jobs) {
+        rejectedJobs.add(jobs);
+    }
+
+    /**
+     * Thread pool of job executor, resolved lazily: some executors create it at start
+     */
+    public void jobExecutor(Supplier<ThreadPoolExecutor> jobExecutor) {
+        this.jobExecutor = jobExecutor;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public double probability() {
+        return probability;
+    }
+
+    public double saturation() {
+        return saturation;
+    }
+
+    public long rejectedJobs() {
+        return rejectedJobs.sum();
+    }
+
+    /**
+     * Called by single thread, which won update of interval
+     */
+    private synchronized void update() {
+        double current = measure();
+        saturation = current;
+        if (current >= highWatermark) {
+            probability = Math.max(minProbability, probability * DECREASE);
+        } else if (current <= lowWatermark) {
+            probability = Math.min(maxProbability, probability + INCREASE);
+        }
+    }
+
+    private double measure() {
+        double current = 0.0;
+        ThreadPoolExecutor executor = jobExecutor.get();
+        if (executor != null) {
+            int queued = executor.getQueue().size();
+            int capacity = queued + executor.getQueue().remainingCapacity();
+            if (capacity > 0 && capacity != Integer.MAX_VALUE) {
+                current = Math.max(current, (double) queued / capacity);
+            }
+            if (executor.getMaximumPoolSize() > 0) {
+                current = Math.max(current, (double) executor.getActiveCount() / executor.getMaximumPoolSize());
+            }
+        }
+        long count = commands.sum();
+        long nanos = commandNanos.sum();
+        if (count > lastCommands && commandLatencyNanos > 0) {
+            double meanNanos = (double) (nanos - lastCommandNanos) / (count - lastCommands);
+            current = Math.max(current, meanNanos / commandLatencyNanos);
+        }
+        lastCommands = count;
+        lastCommandNanos = nanos;
+        long rejected = rejectedJobs.sum();
+        if (rejected > lastRejectedJobs) {
+            current = Math.max(current, 1.0);
+        }
+        lastRejectedJobs = rejected;
+        return current;
+    }
+}
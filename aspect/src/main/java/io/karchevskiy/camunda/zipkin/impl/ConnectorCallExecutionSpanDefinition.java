@@ -1,42 +1,66 @@
 package io.karchevskiy.camunda.zipkin.impl;
 
 import brave.Span;
+import brave.Tracer;
 import brave.Tracing;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.camunda.bpm.engine.impl.persistence.entity.ExecutionEntity;
-import org.camunda.bpm.engine.variable.impl.VariableMapImpl;
-
-import java.util.Map;
-
-import static io.karchevskiy.camunda.zipkin.CamundaSlueuthContextInjectingAspect.*;
 
 public class ConnectorCallExecutionSpanDefinition {
 
 
     public static Object propagateTracingFromCamundaSerializedContextInAnyConnector(ProceedingJoinPoint pjp,
-                                                                                    Tracing tracing) throws Throwable {
+                                                                                    Tracing tracing,
+                                                                                    TraceContextCache traceContextCache,
+                                                                                    TracingScopeManager scopeManager,
+                                                                                    IterationAggregator iterationAggregator)
+            throws Throwable {
         if (tracing == null) {
             return pjp.proceed();
         }
         ExecutionEntity execution = (ExecutionEntity) pjp.getArgs()[0];
-        final VariableMapImpl sourceVariables = execution.getProcessInstance().getVariables();
-        Map<String, String> sleuthTraceSerialized =
-                extractSerializedContext(sourceVariables.get(X_SLEUTH_TRACE_CONTEXT));
+        ActivityPlan activityPlan = TracePlans.activity(execution);
+        if (!TracePlans.traced(activityPlan)) {
+            return pjp.proceed();
+        }
+        ProcessTraceContext processTraceContext = traceContextCache.get(execution.getProcessInstanceId(),
+                () -> TraceContextVariables.read(tracing, execution));
 
-        if (sleuthTraceSerialized.isEmpty()) {
+        if (processTraceContext == null) {
             return pjp.proceed();
         }
 
-        final String currentTraceId = tracing.tracer().currentSpan().context().traceIdString();
-        if (currentTraceId == null || !currentTraceId.toLowerCase().
-                equals(sleuthTraceSerialized.get(X_SLEUTH_TRACE_ID).toLowerCase())) {
-            final Span parentTraceContext = restoreTracingContext(sleuthTraceSerialized);
-            tracing.tracer().withSpanInScope(parentTraceContext);
-            final Span unknownEventSpan = tracing.tracer().nextSpan().name("sending unknown async event").start();
-            final Object result = pjp.proceed();
-            unknownEventSpan.finish();
-            return result;
+        final Tracer tracer = tracing.tracer();
+        final Span currentSpan = tracer.currentSpan();
+        if (currentSpan != null && currentSpan.context().traceIdString().
+                equals(processTraceContext.processContext().traceIdString())) {
+            return pjp.proceed();
+        }
+        final IterationStats iterations = iterationAggregator.iterationStats(tracing, execution, activityPlan,
+                ActivityPlan.CONNECTOR_SPAN_NAME, processTraceContext.processContext());
+        final Span unknownEventSpan = tracer.newChild(iterations != null
+                ? iterations.summaryContext()
+                : processTraceContext.processContext()).name(ActivityPlan.CONNECTOR_SPAN_NAME);
+        if (activityPlan != null) {
+            activityPlan.tag(unknownEventSpan);
+        }
+        final long startMicros = tracing.clock(unknownEventSpan.context()).currentTimeMicroseconds();
+        unknownEventSpan.start(startMicros);
+        Throwable error = null;
+        try (TracingScopeManager.Scope ws = scopeManager.withSpanInScope(tracer, unknownEventSpan)) {
+            return pjp.proceed();
+        } catch (Throwable e) {
+            error = e;
+            throw e;
+        } finally {
+            if (iterations != null) {
+                iterations.finish(tracing, unknownEventSpan, startMicros, error);
+            } else {
+                if (error != null) {
+                    unknownEventSpan.error(error);
+                }
+                unknownEventSpan.finish();
+            }
         }
-        return pjp.proceed();
     }
 }
@@ -0,0 +1,127 @@
+package io.karchevskiy.camunda.zipkin.impl;
+
+import brave.Tracing;
+import brave.propagation.TraceContext;
+import org.camunda.bpm.engine.delegate.DelegateExecution;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregation of delegate spans of multi-instance and looped activities into summary spans
+ * (see {@link IterationStats}). Statistics are kept by multi-instance body instance id (reported by its end listener)
+ * or by process instance and activity for loops (reported at process end).
+ * Iterations executed on other nodes are aggregated there: statistics not updated for a while
+ * are reported, when new aggregation starts.
+ */
+public class IterationAggregator {
+
+    public static final IterationAggregator DISABLED = new IterationAggregator(false, 0);
+
+    public static final int DEFAULT_SLOWEST = 5;
+
+    private static final int STALE_CHECK_SIZE = 1_000;
+    private static final long STALE_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private final boolean enabled;
+    private final int slowest;
+    private final Map<String, IterationStats> open = new ConcurrentHashMap<>();
+    private final LongAdder summaries = new LongAdder();
+
+    /**
+     * @param slowest number of slowest iteration spans reported per summary
+     */
+    public IterationAggregator(boolean enabled, int slowest) {
+        this.enabled = enabled;
+        this.slowest = slowest;
+    }
+
+    /**
+     * @return statistics to finish iteration span with, null when span of this activity is not aggregated
+     */
+    public IterationStats iterationStats(Tracing tracing, DelegateExecution execution, ActivityPlan activityPlan,
+                                         String spanName, TraceContext processContext) {
+        if (!enabled || activityPlan == null || activityPlan.aggregation() == ActivityPlan.Aggregation.NONE) {
+            return null;
+        }
+        String key;
+        String summaryName;
+        if (activityPlan.aggregation() == ActivityPlan.Aggregation.MULTI_INSTANCE) {
+            key = execution.getParentActivityInstanceId();
+            summaryName = "MI:" + spanName;
+        } else {
+            key = loopKey(execution.getProcessInstanceId(), activityPlan.activityId());
+            summaryName = "LOOP:" + spanName;
+        }
+        if (key == null) {
+            return null;
+        }
+        IterationStats stats = open.get(key);
+        if (stats == null) {
+            if (open.size() >= STALE_CHECK_SIZE) {
+                reportStale(tracing);
+            }
+            stats = open.computeIfAbsent(key,
+                    k -> new IterationStats(summaryName, activityPlan, processContext, slowest));
+        }
+        return stats;
+    }
+
+    /**
+     * Multi-instance body end listener
+     */
+    public void multiInstanceEnded(Tracing tracing, DelegateExecution multiInstanceBody) {
+        report(tracing, multiInstanceBody.getActivityInstanceId());
+    }
+
+    /**
+     * Process end: reports summaries of looped activities
+     */
+    public void processEnded(Tracing tracing, DelegateExecution execution) {
+        if (!enabled || open.isEmpty()) {
+            return;
+        }
+        TracePlan plan = TracePlans.forExecution(execution);
+        if (plan == null) {
+            return;
+        }
+        for (String activityId : plan.loopActivityIds()) {
+            report(tracing, loopKey(execution.getProcessInstanceId(), activityId));
+        }
+    }
+
+    public long openCount() {
+        return open.size();
+    }
+
+    public long summaryCount() {
+        return summaries.sum();
+    }
+
+    private void report(Tracing tracing, String key) {
+        if (tracing == null || key == null) {
+            return;
+        }
+        IterationStats stats = open.remove(key);
+        if (stats != null) {
+            stats.report(tracing);
+            summaries.increment();
+        }
+    }
+
+    private void reportStale(Tracing tracing) {
+        long now = System.nanoTime();
+        open.forEach((key, stats) -> {
+            if (now - stats.updatedAt() > STALE_NANOS && open.remove(key, stats)) {
+                stats.report(tracing);
+                summaries.increment();
+            }
+        });
+    }
+
+    private static String loopKey(String processInstanceId, String activityId) {
+        return processInstanceId + '#' + activityId;
+    }
+}
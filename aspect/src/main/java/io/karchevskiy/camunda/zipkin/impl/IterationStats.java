@@ -0,0 +1,168 @@
+package io.karchevskiy.camunda.zipkin.impl;
+
+import brave.Span;
+import brave.Tracing;
+import brave.propagation.TraceContext;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free statistics of iterations of one multi-instance body (or looped activity): parallel iterations
+ * complete on different job executor threads. Durations go to log-linear histogram (8 buckets per power of two,
+ * percentiles within 12.5%). Iteration span is reported only, when it failed or was among N slowest
+ * at completion, others are abandoned; reported iterations are children of summary span.
+ */
+public final class IterationStats {
+
+    static final String COUNT_TAG = "camunda.iterations.count";
+    static final String ERRORS_TAG = "camunda.iterations.errors";
+    static final String TOTAL_TAG = "camunda.iterations.total.us";
+    static final String MIN_TAG = "camunda.iterations.min.us";
+    static final String MAX_TAG = "camunda.iterations.max.us";
+    static final String P50_TAG = "camunda.iterations.p50.us";
+    static final String P99_TAG = "camunda.iterations.p99.us";
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final String summaryName;
+    private final ActivityPlan activityPlan;
+    private final TraceContext summaryContext;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final LongAccumulator minMicros = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0L);
+    private final LongAccumulator firstStartMicros = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator lastEndMicros = new LongAccumulator(Math::max, 0L);
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray slowest;
+    private volatile long updatedAt = System.nanoTime();
+
+    IterationStats(String summaryName, ActivityPlan activityPlan, TraceContext processContext, int slowest) {
+        this.summaryName = summaryName;
+        this.activityPlan = activityPlan;
+        this.summaryContext = ProcessDurationSpans.childContext(processContext);
+        this.slowest = new AtomicLongArray(slowest);
+    }
+
+    /**
+     * @return parent of iteration spans
+     */
+    public TraceContext summaryContext() {
+        return summaryContext;
+    }
+
+    /**
+     * Records iteration, then finishes its span (failed or slow) or abandons it
+     *
+     * @param startMicros timestamp iteration span was started with
+     */
+    public void finish(Tracing tracing, Span span, long startMicros, Throwable error) {
+        long endMicros = tracing.clock(span.context()).currentTimeMicroseconds();
+        long duration = Math.max(0L, endMicros - startMicros);
+        count.increment();
+        totalMicros.add(duration);
+        minMicros.accumulate(duration);
+        maxMicros.accumulate(duration);
+        firstStartMicros.accumulate(startMicros);
+        lastEndMicros.accumulate(endMicros);
+        histogram.incrementAndGet(bucket(duration));
+        updatedAt = System.nanoTime();
+        if (error != null) {
+            errors.increment();
+            span.error(error).finish(endMicros);
+        } else if (enterSlowest(duration)) {
+            span.finish(endMicros);
+        } else {
+            span.abandon();
+        }
+    }
+
+    /**
+     * Replaces fastest of N slowest durations, when duration is greater
+     */
+    private boolean enterSlowest(long duration) {
+        while (true) {
+            int fastest = -1;
+            long fastestDuration = Long.MAX_VALUE;
+            for (int i = 0; i < slowest.length(); i++) {
+                long value = slowest.get(i);
+                if (value < fastestDuration) {
+                    fastest = i;
+                    fastestDuration = value;
+                }
+            }
+            //slots hold duration + 1, 0 is free slot
+            if (fastest == -1 || duration + 1 <= fastestDuration) {
+                return false;
+            }
+            if (slowest.compareAndSet(fastest, fastestDuration, duration + 1)) {
+                return true;
+            }
+        }
+    }
+
+    long updatedAt() {
+        return updatedAt;
+    }
+
+    void report(Tracing tracing) {
+        long iterations = count.sum();
+        if (iterations == 0) {
+            return;
+        }
+        Span span = tracing.tracer().toSpan(summaryContext);
+        if (span.isNoop()) {
+            return;
+        }
+        long failed = errors.sum();
+        span.name(summaryName).start(firstStartMicros.get());
+        activityPlan.tag(span);
+        span.tag(COUNT_TAG, String.valueOf(iterations));
+        span.tag(ERRORS_TAG, String.valueOf(failed));
+        span.tag(TOTAL_TAG, String.valueOf(totalMicros.sum()));
+        span.tag(MIN_TAG, String.valueOf(minMicros.get()));
+        span.tag(MAX_TAG, String.valueOf(maxMicros.get()));
+        span.tag(P50_TAG, String.valueOf(percentile(iterations, 0.5)));
+        span.tag(P99_TAG, String.valueOf(percentile(iterations, 0.99)));
+        if (failed > 0) {
+            span.tag("error", failed + " of " + iterations + " iterations failed");
+        }
+        span.finish(lastEndMicros.get());
+    }
+
+    private long percentile(long iterations, double quantile) {
+        long rank = Math.max(1L, (long) Math.ceil(iterations * quantile));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += histogram.get(i);
+            if (seen >= rank) {
+                return Math.max(minMicros.get(), Math.min(maxMicros.get(), bucketMidpoint(i)));
+            }
+        }
+        return maxMicros.get();
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long bucketMidpoint(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lower + width / 2;
+    }
+}
@@ -1,23 +1,34 @@
 package io.karchevskiy.camunda.zipkin.impl;
 
 import brave.Span;
+import brave.Tracer;
 import brave.Tracing;
-import io.karchevskiy.camunda.zipkin.CamundaSlueuthContextInjectingAspect;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.camunda.bpm.engine.delegate.DelegateExecution;
 import org.camunda.bpm.engine.delegate.JavaDelegate;
 
-import java.util.Map;
-
 public class JavaDelegateSpanDefinition {
 
+    /**
+     * Delegate may run outside of its own activity (f.e. as execution listener), so name comes from runtime class
+     */
+    private static final ClassValue<String> SPAN_NAMES = new ClassValue<String>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            return ("JD:" + type.getSimpleName()).intern();
+        }
+    };
+
     /**
      * Intercept call of {@link JavaDelegate} execution and wrapping it in corresponding span;
      * Java delegates are atomic;
      * JavaDelegate may produce messages (different ways);œœ
      * Base sleuth context for such messages -  JavaDelegate execution span;
      */
-    public static void javaDelegateSpan(ProceedingJoinPoint pjp, Tracing tracing) throws Throwable {
+    public static void javaDelegateSpan(ProceedingJoinPoint pjp, Tracing tracing,
+                                        TraceContextCache traceContextCache,
+                                        TracingScopeManager scopeManager,
+                                        IterationAggregator iterationAggregator) throws Throwable {
         //assert context configured properly
         if (tracing == null) {
             pjp.proceed();
@@ -26,22 +37,48 @@ public class JavaDelegateSpanDefinition {
 
         //LTW-around aspects can obtain values only in this way
         DelegateExecution execution = (DelegateExecution) pjp.getArgs()[0];
-        Map<String, String> tracingContextSerialized =
-                CamundaSlueuthContextInjectingAspect.extractSerializedContext(execution.getVariable(CamundaSlueuthContextInjectingAspect.X_SLEUTH_TRACE_CONTEXT));
-        if (tracingContextSerialized.isEmpty()) {
+        ActivityPlan activityPlan = TracePlans.activity(execution);
+        if (!TracePlans.traced(activityPlan)) {
+            pjp.proceed();
+            return;
+        }
+        ProcessTraceContext processTraceContext = traceContextCache.get(execution.getProcessInstanceId(),
+                () -> TraceContextVariables.read(tracing, execution));
+        if (processTraceContext == null) {
             pjp.proceed();
             return;
         }
 
-        Span parentSpan = CamundaSlueuthContextInjectingAspect.restoreTracingContext(tracingContextSerialized);
-        tracing.tracer().withSpanInScope(parentSpan);
-        String targetClassName = pjp.getTarget().getClass().getSimpleName();
+        Tracer tracer = tracing.tracer();
 
         //wrap Java delegate execution with new span (JD = JavaDelegate)
-        Span span = tracing.tracer().nextSpan().name("JD:" + targetClassName);
-        tracing.tracer().withSpanInScope(span);
-        span.start();
-        pjp.proceed();
-        span.finish();
+        String spanName = SPAN_NAMES.get(pjp.getTarget().getClass());
+        //multi-instance and loop iterations: child of summary span, reported only when slow or failed
+        IterationStats iterations = iterationAggregator.iterationStats(tracing, execution, activityPlan, spanName,
+                processTraceContext.processContext());
+        Span span = tracer.newChild(iterations != null
+                ? iterations.summaryContext()
+                : processTraceContext.processContext()).name(spanName);
+        if (activityPlan != null) {
+            activityPlan.tag(span);
+        }
+        long startMicros = tracing.clock(span.context()).currentTimeMicroseconds();
+        span.start(startMicros);
+        Throwable error = null;
+        try (TracingScopeManager.Scope ws = scopeManager.withSpanInScope(tracer, span)) {
+            pjp.proceed();
+        } catch (Throwable e) {
+            error = e;
+            throw e;
+        } finally {
+            if (iterations != null) {
+                iterations.finish(tracing, span, startMicros, error);
+            } else {
+                if (error != null) {
+                    span.error(error);
+                }
+                span.finish();
+            }
+        }
     }
 }
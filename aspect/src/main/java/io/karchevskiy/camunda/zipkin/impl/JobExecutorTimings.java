@@ -0,0 +1,69 @@
+package io.karchevskiy.camunda.zipkin.impl;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Job executor timings, which do not belong to any process trace:
+ * acquisition cycles and delays of jobs before execution.
+ * Queue wait - from acquisition (lock) to execution start, mostly wait in executor thread pool queue.
+ * Due delay - from job due date to execution start (timers, retries with delay).
+ */
+public class JobExecutorTimings {
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder acquisitionNanos = new LongAdder();
+    private final LongAdder acquiredJobs = new LongAdder();
+    private final LongAdder queueWaits = new LongAdder();
+    private final LongAdder queueWaitMillis = new LongAdder();
+    private final LongAdder dueDelays = new LongAdder();
+    private final LongAdder dueDelayMillis = new LongAdder();
+
+    public void acquisition(long nanos, int jobs) {
+        acquisitions.increment();
+        acquisitionNanos.add(nanos);
+        acquiredJobs.add(jobs);
+    }
+
+    /**
+     * @param queueWaitMillis negative, when job was not acquired by job executor
+     * @param dueDelayMillis  negative, when job has no due date
+     */
+    public void execution(long queueWaitMillis, long dueDelayMillis) {
+        if (queueWaitMillis >= 0) {
+            queueWaits.increment();
+            this.queueWaitMillis.add(queueWaitMillis);
+        }
+        if (dueDelayMillis >= 0) {
+            dueDelays.increment();
+            this.dueDelayMillis.add(dueDelayMillis);
+        }
+    }
+
+    public long acquisitionCount() {
+        return acquisitions.sum();
+    }
+
+    public long acquisitionNanos() {
+        return acquisitionNanos.sum();
+    }
+
+    public long acquiredJobs() {
+        return acquiredJobs.sum();
+    }
+
+    public long queueWaitCount() {
+        return queueWaits.sum();
+    }
+
+    public long queueWaitMillis() {
+        return queueWaitMillis.sum();
+    }
+
+    public long dueDelayCount() {
+        return dueDelays.sum();
+    }
+
+    public long dueDelayMillis() {
+        return dueDelayMillis.sum();
+    }
+}
@@ -0,0 +1,130 @@
+package io.karchevskiy.camunda.zipkin.impl;
+
+import brave.Span;
+import brave.Tracing;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.context.Context;
+import org.camunda.bpm.engine.impl.jobexecutor.AcquiredJobs;
+import org.camunda.bpm.engine.impl.persistence.entity.ExecutionEntity;
+import org.camunda.bpm.engine.impl.persistence.entity.JobEntity;
+import org.camunda.bpm.engine.impl.util.ClockUtil;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Async continuations, timers and other jobs: JOB span around job execution, parented to process span,
+ * so gaps between delegate spans are visible. Acquisition and delays go to {@link JobExecutorTimings}.
+ */
+public class JobSpanDefinition {
+
+    public static final String JOB_TYPE_TAG = "camunda.job.type";
+    public static final String JOB_ID_TAG = "camunda.job.id";
+    public static final String JOB_ACTIVITY_TAG = "camunda.job.activity";
+    public static final String JOB_RETRIES_TAG = "camunda.job.retries";
+    public static final String JOB_QUEUE_WAIT_TAG = "camunda.job.queue.wait.ms";
+    public static final String JOB_DUE_DELAY_TAG = "camunda.job.due.delay.ms";
+
+    /**
+     * By job handler type, few per engine
+     */
+    private static final Map<String, String> SPAN_NAMES = new ConcurrentHashMap<>();
+
+    /**
+     * Intercept {@link JobEntity#execute}: called inside ExecuteJobsCmd by job executor thread
+     * (or by ManagementService.executeJob)
+     */
+    public static void jobSpan(ProceedingJoinPoint pjp, Tracing tracing, TraceContextCache traceContextCache,
+                               TracingScopeManager scopeManager, JobExecutorTimings timings) throws Throwable {
+        if (tracing == null || !(pjp.getTarget() instanceof JobEntity)) {
+            pjp.proceed();
+            return;
+        }
+        JobEntity job = (JobEntity) pjp.getTarget();
+        Span span = startJobSpan(tracing, traceContextCache, timings, job, job.getExecution());
+        if (span == null) {
+            pjp.proceed();
+            return;
+        }
+        try (TracingScopeManager.Scope ws = scopeManager.withSpanInScope(tracing.tracer(), span)) {
+            pjp.proceed();
+        } catch (Throwable e) {
+            span.error(e);
+            throw e;
+        } finally {
+            span.finish();
+        }
+    }
+
+    /**
+     * Intercept AcquireJobsCmd: acquisition does not belong to any process, so only timings are recorded
+     */
+    public static Object acquireJobs(ProceedingJoinPoint pjp, Tracing tracing, JobExecutorTimings timings)
+            throws Throwable {
+        if (tracing == null) {
+            return pjp.proceed();
+        }
+        long start = System.nanoTime();
+        Object acquiredJobs = pjp.proceed();
+        timings.acquisition(System.nanoTime() - start,
+                acquiredJobs instanceof AcquiredJobs ? ((AcquiredJobs) acquiredJobs).size() : 0);
+        return acquiredJobs;
+    }
+
+    /**
+     * Records job delays and starts JOB span, must be called inside command
+     *
+     * @return started span or null, when job has no execution or process has no trace context
+     */
+    public static Span startJobSpan(Tracing tracing, TraceContextCache traceContextCache,
+                                    JobExecutorTimings timings, JobEntity job, ExecutionEntity execution) {
+        long now = ClockUtil.getCurrentTime().getTime();
+        long queueWait = queueWaitMillis(job, now);
+        long dueDelay = job.getDuedate() != null ? Math.max(0, now - job.getDuedate().getTime()) : -1;
+        timings.execution(queueWait, dueDelay);
+
+        if (execution == null) {
+            return null;
+        }
+        TracePlan plan = TracePlans.forExecution(execution);
+        if (plan != null && !TracePlans.traced(plan.activity(job.getActivityId()))) {
+            return null;
+        }
+        ProcessTraceContext processTraceContext = traceContextCache.get(execution.getProcessInstanceId(),
+                () -> TraceContextVariables.read(tracing, execution));
+        if (processTraceContext == null) {
+            return null;
+        }
+
+        Span span = tracing.tracer().newChild(processTraceContext.processContext())
+                .name(SPAN_NAMES.computeIfAbsent(job.getJobHandlerType(), type -> ("JOB:" + type).intern()));
+        if (!span.isNoop()) {
+            span.tag(JOB_TYPE_TAG, job.getJobHandlerType());
+            span.tag(JOB_ID_TAG, job.getId());
+            span.tag(JOB_RETRIES_TAG, String.valueOf(job.getRetries()));
+            if (job.getActivityId() != null) {
+                span.tag(JOB_ACTIVITY_TAG, job.getActivityId());
+            }
+            if (queueWait >= 0) {
+                span.tag(JOB_QUEUE_WAIT_TAG, String.valueOf(queueWait));
+            }
+            if (dueDelay >= 0) {
+                span.tag(JOB_DUE_DELAY_TAG, String.valueOf(dueDelay));
+            }
+        }
+        return span.start();
+    }
+
+    /**
+     * Job executor locks job at acquisition: lock expiration = acquisition time + lock time
+     */
+    private static long queueWaitMillis(JobEntity job, long now) {
+        ProcessEngineConfigurationImpl configuration = Context.getProcessEngineConfiguration();
+        if (job.getLockExpirationTime() == null || configuration == null || configuration.getJobExecutor() == null) {
+            return -1;
+        }
+        long acquiredAt = job.getLockExpirationTime().getTime() - configuration.getJobExecutor().getLockTimeInMillis();
+        return Math.max(0, now - acquiredAt);
+    }
+}
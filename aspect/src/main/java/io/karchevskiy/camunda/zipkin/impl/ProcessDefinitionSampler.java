@@ -0,0 +1,77 @@
+package io.karchevskiy.camunda.zipkin.impl;
+
+import brave.Span;
+import brave.Tracer;
+import brave.Tracing;
+import brave.propagation.TraceContext;
+import brave.sampler.Sampler;
+import brave.sampler.SamplerFunction;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sampling decision by process definition key, made once at root process start.
+ * Child processes, delegates, connectors and jobs inherit it: unsampled process gets no trace variable,
+ * so every other advice finds no context and takes no span creation path.
+ *
+ * Definitions without rule defer to parent trace or to tracing sampler (spring.sleuth.sampler.*).
+ * Rule can only narrow sampled parent trace: process of not sampled trace is never traced.
+ * Root processes without parent context in start variables pass {@link AdaptiveLoadSampler} first.
+ */
+public class ProcessDefinitionSampler implements SamplerFunction<String> {
+
+    public static final ProcessDefinitionSampler DEFERRING = new ProcessDefinitionSampler(Collections.emptyMap());
+
+    private final Map<String, Sampler> samplers;
+    private final AdaptiveLoadSampler loadSampler;
+
+    public ProcessDefinitionSampler(Map<String, Sampler> samplers) {
+        this(samplers, AdaptiveLoadSampler.DISABLED);
+    }
+
+    public ProcessDefinitionSampler(Map<String, Sampler> samplers, AdaptiveLoadSampler loadSampler) {
+        this.samplers = Collections.unmodifiableMap(new HashMap<>(samplers));
+        this.loadSampler = loadSampler;
+    }
+
+    /**
+     * @return decision of definition rule, null - no rule for definition
+     */
+    @Override
+    public Boolean trySample(String processDefinitionKey) {
+        if (processDefinitionKey == null) {
+            return null;
+        }
+        Sampler sampler = samplers.get(processDefinitionKey);
+        return sampler != null ? sampler.isSampled(0L) : null;
+    }
+
+    /**
+     * @param parent context passed with start variables, null - current span (if any) is parent
+     * @return unstarted process span or null, when process is not sampled
+     */
+    public Span nextProcessSpan(Tracing tracing, String processDefinitionKey, TraceContext parent) {
+        Tracer tracer = tracing.tracer();
+        if (parent != null && Boolean.FALSE.equals(parent.sampled())) {
+            return null;
+        }
+        if (parent == null && !loadSampler.isSampled()) {
+            return null;
+        }
+        Boolean decision = trySample(processDefinitionKey);
+        if (Boolean.FALSE.equals(decision)) {
+            return null;
+        }
+        Span span;
+        if (parent != null) {
+            span = tracer.newChild(parent);
+        } else if (Boolean.TRUE.equals(decision) && tracing.currentTraceContext().get() == null) {
+            span = tracer.withSampler(Sampler.ALWAYS_SAMPLE).nextSpan();
+        } else {
+            span = tracer.nextSpan();
+        }
+        return span.isNoop() ? null : span;
+    }
+}
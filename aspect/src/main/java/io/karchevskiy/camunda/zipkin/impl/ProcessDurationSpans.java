@@ -0,0 +1,60 @@
+package io.karchevskiy.camunda.zipkin.impl;
+
+import brave.Span;
+import brave.Tracing;
+import brave.propagation.TraceContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Stateless RPD/CPD spans. Process may run for days and end on another node, so duration span is not
+ * started in tracer: only its id and start timestamp are generated and stored in trace variable.
+ * At process end the span is created from them, started with stored timestamp and finished at once,
+ * so tracer keeps no state for running processes and restarts do not lose durations.
+ */
+public final class ProcessDurationSpans {
+
+    private ProcessDurationSpans() {
+    }
+
+    /**
+     * @return process context with id and start of duration span, child of processContext
+     */
+    public static ProcessTraceContext start(Tracing tracing, TraceContext processContext) {
+        return new ProcessTraceContext(processContext, childContext(processContext),
+                tracing.clock(processContext).currentTimeMicroseconds());
+    }
+
+    /**
+     * Context of child span, unlike {@link brave.Tracer#newChild(TraceContext)} not registered in tracer
+     */
+    static TraceContext childContext(TraceContext parent) {
+        long spanId;
+        do {
+            spanId = ThreadLocalRandom.current().nextLong();
+        } while (spanId == 0L);
+        return parent.toBuilder()
+                .parentId(parent.spanId())
+                .spanId(spanId)
+                .build();
+    }
+
+    /**
+     * Reports duration span, stored by {@link #start(Tracing, TraceContext)}
+     *
+     * @param error cause, when process start failed; null otherwise
+     */
+    public static void finish(Tracing tracing, ProcessTraceContext context, String name, String annotation,
+                              Throwable error) {
+        Span span = tracing.tracer().toSpan(context.durationContext());
+        if (span.isNoop()) {
+            return;
+        }
+        span.name(name).start(context.durationStartMicros());
+        span.annotate(context.durationStartMicros(), annotation);
+        if (error != null) {
+            span.error(error);
+        }
+        span.finish(tracing.clock(context.durationContext()).currentTimeMicroseconds());
+    }
+}
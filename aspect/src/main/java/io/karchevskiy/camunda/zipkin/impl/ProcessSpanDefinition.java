@@ -1,13 +1,21 @@
 package io.karchevskiy.camunda.zipkin.impl;
 
 import brave.Span;
+import brave.Tracer;
 import brave.Tracing;
-import org.aspectj.lang.JoinPoint;
+import brave.propagation.TraceContext;
 import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.camunda.bpm.engine.ProcessEngineException;
+import org.camunda.bpm.engine.delegate.DelegateExecution;
 import org.camunda.bpm.engine.impl.RuntimeServiceImpl;
-import org.camunda.bpm.engine.impl.pvm.runtime.PvmExecutionImpl;
+import org.camunda.bpm.engine.impl.ServiceImpl;
+import org.camunda.bpm.engine.impl.persistence.deploy.cache.DeploymentCache;
+import org.camunda.bpm.engine.impl.persistence.entity.ExecutionEntity;
+import org.camunda.bpm.engine.impl.persistence.entity.ProcessDefinitionEntity;
+import org.camunda.bpm.engine.repository.ProcessDefinition;
+import org.camunda.bpm.engine.runtime.ProcessInstance;
 
-import java.lang.reflect.Method;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
@@ -16,137 +24,218 @@ import static io.karchevskiy.camunda.zipkin.CamundaSlueuthContextInjectingAspect
 
 public class ProcessSpanDefinition {
 
+    public static final String ROOT_SPAN_PREFIX = "RPS: ";
+    public static final String ROOT_DURATION_SPAN_PREFIX = "RPD: ";
+
+    public static final String ROOT_DURATION_ANNOTATION = "Root Process Duration";
+    static final String CHILD_DURATION_ANNOTATION = "Child Process Duration";
+
     /**
      * There 6 overloads for 2 methods for process creation in {@link RuntimeServiceImpl}.
-     * We should propagate sleuth context and call that one, which expect Map with parameters for initialization
+     * We should propagate sleuth context and call that one, which expect Map with parameters for initialization.
+     * Overload is resolved with precomputed {@link StartProcessInstanceInvokers} table.
      */
-    public static Object startProcessSpan(ProceedingJoinPoint pjp, Tracing tracing) throws Throwable {
+    public static Object startProcessSpan(ProceedingJoinPoint pjp, Tracing tracing,
+                                          TraceContextCache traceContextCache,
+                                          TracingScopeManager scopeManager,
+                                          ProcessDefinitionSampler processSampler) throws Throwable {
         //Check sleuth context configured
         if (tracing == null) {
-            return pjp.proceed(pjp.getArgs());
+            return pjp.proceed();
         }
         //Check called method signature
-        if (!pjp.getSignature().getName().startsWith("startProcessInstance")) {
-            return pjp.proceed(pjp.getArgs());
+        StartProcessInstanceInvokers.Invoker invoker =
+                StartProcessInstanceInvokers.forMethod(((MethodSignature) pjp.getSignature()).getMethod());
+        if (invoker == null) {
+            return pjp.proceed();
         }
 
-        //Define Map existence as last argument
         Object[] args = pjp.getArgs();
-        int argsLength = args.length;
-        if (args[argsLength - 1] instanceof Map) {
-            argsLength--;
-        }
-
         //Define sleuth context existence
-        Map<String, Object> internalProcessVariables = extractOrDefineParamMap(args);
+        Map<String, Object> internalProcessVariables = invoker.acceptsVariables()
+                ? extractOrDefineParamMap(args[args.length - 1])
+                : new HashMap<>();
         //If sleuth context configured - execute method as is (success way or second pass)
-        if (internalProcessVariables.containsKey(X_SLEUTH_TRACE_ID)) {
-            return pjp.proceed(pjp.getArgs());
+        ProcessTraceContext parentContext =
+                TraceContextVariables.decode(tracing, internalProcessVariables.get(X_SLEUTH_TRACE_CONTEXT));
+        if (parentContext != null && parentContext.hasDuration()) {
+            return pjp.proceed();
         }
 
-        //In another way restore sleuth context, if exists as process creation call param
-        if (internalProcessVariables.containsKey(X_SLEUTH_TRACE_CONTEXT)) {
-            final Map<String, String> parentTrace =
-                    extractSerializedContext(internalProcessVariables.get(X_SLEUTH_TRACE_CONTEXT));
-            Span parentSpan = restoreTracingContext(parentTrace);
-            tracing.tracer().withSpanInScope(parentSpan);
-        } else {
-            Object[] argsCache = new Object[argsLength + 1];
-            System.arraycopy(args, 0, argsCache, 0, argsLength);
-            argsCache[argsLength] = internalProcessVariables;
-            args = argsCache;
-        }
-
-        //Define root process span name (bpmn-schema name)
+        //Define root process span name (bpmn-schema name), precomputed by trace plan of definition
+        String processDefinitionKey = processDefinitionKey(pjp.getSignature().getName(), args);
+        TracePlan plan = plan(pjp.getTarget(), pjp.getSignature().getName(), args, processDefinitionKey);
         String processName = "unknownProcess";
         if (args[0] instanceof String) {
             processName = (String) args[0];
         }
 
-        Span span = tracing.tracer().nextSpan().name("RPS: " + processName);
-        tracing.tracer().withSpanInScope(span);
+        //In another way restore sleuth context, if exists as process creation call param
+        Span span = plan != null && !plan.enabled()
+                ? null
+                : processSampler.nextProcessSpan(tracing, processDefinitionKey,
+                parentContext != null ? parentContext.processContext() : null);
+        if (span == null) {
+            //not sampled or excluded: no trace variable, nothing to read for children, delegates and jobs
+            if (parentContext != null) {
+                internalProcessVariables.remove(X_SLEUTH_TRACE_CONTEXT);
+            }
+            Object processInstance = pjp.proceed();
+            if (processInstance instanceof ProcessInstance && !((ProcessInstance) processInstance).isEnded()) {
+                traceContextCache.put(((ProcessInstance) processInstance).getId(), null);
+            }
+            return processInstance;
+        }
+        Tracer tracer = tracing.tracer();
+        span.name(plan != null ? plan.rootSpanName() : ROOT_SPAN_PREFIX + processName);
         span.annotate("Root Process Started");
         span.start();
         span.flush();
         //should not be finished
-        final Map<String, String> tracingContext =
-                serializeAndInjectTracingContext(internalProcessVariables, span, X_SLEUTH_TRACE_CONTEXT);
-
-        //Save TraceId for search purposes
-        internalProcessVariables.put(X_SLEUTH_TRACE_ID, tracingContext.get(X_SLEUTH_TRACE_ID));
-
-        //Save span for process lifetime duration tracking
-        Span spanDuration = tracing.tracer().nextSpan().name("RPD: " + processName);
-        tracing.tracer().withSpanInScope(spanDuration);
-        spanDuration.annotate("Root Process Duration");
-        spanDuration.start();
-        serializeAndInjectTracingContext(internalProcessVariables, spanDuration, X_SLEUTH_TRACE_DURATION);
-
-        Class[] signTypes = calculateSignTypes(args);
-        String methodName = pjp.getSignature().getName();
-        Method declaredMethod = pjp.getTarget().getClass().getMethod(methodName, signTypes);
-        if(declaredMethod == null){
-            tracing.tracer().withSpanInScope(span);
-            return pjp.proceed(pjp.getArgs());
-        }
-        //!!!Execute overloaded method
-        return declaredMethod.invoke(pjp.getTarget(), args);
+
+        //Save id and start of process lifetime duration span, reported at process end
+        ProcessTraceContext processTraceContext = ProcessDurationSpans.start(tracing, span.context());
+        internalProcessVariables.put(X_SLEUTH_TRACE_CONTEXT, TraceContextVariables.encode(processTraceContext));
+
+        Object processInstance;
+        try (TracingScopeManager.Scope ws = scopeManager.withSpanInScope(tracer, span)) {
+            if (invoker.acceptsVariables()) {
+                args[args.length - 1] = internalProcessVariables;
+                processInstance = pjp.proceed(args);
+            } else {
+                //!!!Execute overloaded method
+                processInstance = invoker.invoke(pjp.getTarget(), args, internalProcessVariables);
+            }
+        } catch (Throwable e) {
+            //process was not started, nobody will finish its duration
+            ProcessDurationSpans.finish(tracing, processTraceContext,
+                    plan != null ? plan.rootDurationSpanName() : ROOT_DURATION_SPAN_PREFIX + processName,
+                    ROOT_DURATION_ANNOTATION, e);
+            throw e;
+        }
+        if (processInstance instanceof ProcessInstance && !((ProcessInstance) processInstance).isEnded()) {
+            traceContextCache.put(((ProcessInstance) processInstance).getId(), processTraceContext);
+        }
+        return processInstance;
     }
 
     /**
-     * Intercept process execution ended
+     * Process level end listener, called once per process instance:
+     * the aspect adds it to every parsed process definition, plugin mode - {@link
+     * io.karchevskiy.camunda.zipkin.plugin.ProcessEndSpanListener}. Reports RPD/CPD span.
      */
-    public static void endProcessSpan(JoinPoint pjp, Tracing tracing) {
+    public static void endProcessSpan(DelegateExecution execution, Tracing tracing,
+                                      TraceContextCache traceContextCache) {
         if (tracing == null) {
             return;
         }
-        if (!(pjp.getTarget() instanceof PvmExecutionImpl)) {
+        String processInstanceId = execution.getProcessInstanceId();
+        ProcessTraceContext processTraceContext = traceContextCache.get(processInstanceId,
+                () -> TraceContextVariables.read(tracing, execution));
+        traceContextCache.invalidate(processInstanceId);
+        if (processTraceContext == null) {
             return;
         }
-        PvmExecutionImpl target = (PvmExecutionImpl) pjp.getTarget();
-        Object sleuthContext = target.getVariable(X_SLEUTH_TRACE_DURATION);
-
-        if (sleuthContext == null) {
+        if (processTraceContext.durationStartMicros() != 0L) {
+            boolean child = execution.getSuperExecution() != null;
+            ProcessDurationSpans.finish(tracing, processTraceContext, durationSpanName(execution, child),
+                    child ? CHILD_DURATION_ANNOTATION : ROOT_DURATION_ANNOTATION, null);
             return;
         }
-
-        Map<String, String> tracingContextSerialized = extractSerializedContext(sleuthContext);
-        if (tracingContextSerialized.isEmpty()) {
+        //duration span started by previous version, kept open in tracer
+        TraceContext durationContext = processTraceContext.hasDuration()
+                ? processTraceContext.durationContext()
+                //process started by previous version
+                : TraceContextVariables.decodeLegacy(tracing,
+                execution.getProcessInstance().getVariableLocal(X_SLEUTH_TRACE_DURATION));
+        if (durationContext == null) {
             return;
         }
 
-        Span span = restoreTracingContext(tracingContextSerialized);
-        tracing.tracer().withSpanInScope(span);
+        Span span = tracing.tracer().toSpan(durationContext);
         span.tag("finishTime", LocalDateTime.now().toString());
         span.finish();
-        span.tag("afterFinishSpan", "Surprize span");
-        span.flush();
     }
 
-    private static Class[] calculateSignTypes(Object[] args) {
-        Class[] signTypes;
-        int length = args.length;
-        if (args[length - 1] instanceof Map) {
-            signTypes = new Class[length];
-        } else {
-            signTypes = new Class[length + 1];
+    /**
+     * Same names as at process start: RPD with definition key, CPD with definition name
+     */
+    private static String durationSpanName(DelegateExecution execution, boolean child) {
+        TracePlan plan = TracePlans.forExecution(execution);
+        if (plan != null) {
+            return child ? plan.childDurationSpanName() : plan.rootDurationSpanName();
+        }
+        ProcessDefinition processDefinition = execution instanceof ExecutionEntity
+                ? ((ExecutionEntity) execution).getProcessDefinition()
+                : null;
+        String key = processDefinition != null
+                ? processDefinition.getKey()
+                : execution.getProcessDefinitionId().split(":")[0];
+        if (!child) {
+            return ROOT_DURATION_SPAN_PREFIX + key;
         }
+        return "CPD:" + (processDefinition != null && processDefinition.getName() != null
+                ? processDefinition.getName()
+                : key);
+    }
 
-        for (int i = 0; i < length; i++) {
-            signTypes[i] = args[i].getClass();
+    /**
+     * startProcessInstanceByKey - key, startProcessInstanceById - key prefix of generated definition id
+     * (key:version:id), start by message - unknown
+     */
+    /**
+     * Registered plan of latest version; when definition was not parsed since restart (deployment cache is lazy)
+     * or key is deployed to several engines or tenants, definition is resolved in deployment cache of started engine
+     */
+    private static TracePlan plan(Object target, String methodName, Object[] args, String processDefinitionKey) {
+        TracePlan plan = TracePlans.latest(processDefinitionKey);
+        if (plan != null || processDefinitionKey == null || !(target instanceof ServiceImpl)) {
+            return plan;
+        }
+        String processDefinitionId = methodName.equals("startProcessInstanceByKey")
+                ? null
+                : (String) (methodName.equals("startProcessInstanceById") ? args[0] : args[1]);
+        try {
+            ProcessDefinitionEntity processDefinition = ((ServiceImpl) target).getCommandExecutor()
+                    .execute(commandContext -> {
+                        DeploymentCache deploymentCache =
+                                commandContext.getProcessEngineConfiguration().getDeploymentCache();
+                        return processDefinitionId != null
+                                ? deploymentCache.findDeployedProcessDefinitionById(processDefinitionId)
+                                : deploymentCache.findDeployedLatestProcessDefinitionByKey(processDefinitionKey);
+                    });
+            return (TracePlan) processDefinition.getProperty(TracePlan.PROPERTY);
+        } catch (ProcessEngineException e) {
+            //start fails with the same error
+            return null;
         }
+    }
 
-        signTypes[signTypes.length - 1] = Map.class;
-        return signTypes;
+    private static String processDefinitionKey(String methodName, Object[] args) {
+        Object definition;
+        if (methodName.equals("startProcessInstanceByKey") || methodName.equals("startProcessInstanceById")) {
+            definition = args[0];
+        } else if (methodName.equals("startProcessInstanceByMessageAndProcessDefinitionId")) {
+            definition = args[1];
+        } else {
+            return null;
+        }
+        if (!(definition instanceof String)) {
+            return null;
+        }
+        String value = (String) definition;
+        if (methodName.equals("startProcessInstanceByKey")) {
+            return value;
+        }
+        int separator = value.indexOf(':');
+        return separator == -1 ? null : value.substring(0, separator);
     }
 
-    private static Map<String, Object> extractOrDefineParamMap(Object[] args) {
-        Map<String, Object> internalProcessVariables = new HashMap<>();
-        for (Object arg : args) {
-            if (arg instanceof Map) {
-                internalProcessVariables = (Map<String, Object>) arg;
-            }
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> extractOrDefineParamMap(Object variables) {
+        if (variables instanceof Map) {
+            return (Map<String, Object>) variables;
         }
-        return internalProcessVariables;
+        return new HashMap<>();
     }
 }
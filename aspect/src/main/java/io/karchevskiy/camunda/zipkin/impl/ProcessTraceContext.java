@@ -0,0 +1,45 @@
+package io.karchevskiy.camunda.zipkin.impl;
+
+import brave.propagation.TraceContext;
+
+/**
+ * Decoded value of process trace variable: process span (RPS/CPS) and process duration span (RPD/CPD).
+ * Duration context is null, when variable holds only parent context passed by process starter.
+ * Duration start is 0 for processes started by versions, which kept duration span open in tracer.
+ */
+public final class ProcessTraceContext {
+
+    private final TraceContext processContext;
+    private final TraceContext durationContext;
+    private final long durationStartMicros;
+
+    public ProcessTraceContext(TraceContext processContext, TraceContext durationContext) {
+        this(processContext, durationContext, 0L);
+    }
+
+    public ProcessTraceContext(TraceContext processContext, TraceContext durationContext, long durationStartMicros) {
+        if (processContext == null) throw new NullPointerException("processContext == null");
+        this.processContext = processContext;
+        this.durationContext = durationContext;
+        this.durationStartMicros = durationStartMicros;
+    }
+
+    public TraceContext processContext() {
+        return processContext;
+    }
+
+    public TraceContext durationContext() {
+        return durationContext;
+    }
+
+    public long durationStartMicros() {
+        return durationStartMicros;
+    }
+
+    /**
+     * Process spans are already created for this context (second pass or child process)
+     */
+    public boolean hasDuration() {
+        return durationContext != null;
+    }
+}
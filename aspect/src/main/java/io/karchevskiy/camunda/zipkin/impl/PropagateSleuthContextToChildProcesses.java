@@ -1,26 +1,29 @@
 package io.karchevskiy.camunda.zipkin.impl;
 
 import brave.Span;
+import brave.Tracer;
 import brave.Tracing;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.camunda.bpm.engine.impl.bpmn.behavior.CallActivityBehavior;
+import org.camunda.bpm.engine.impl.context.Context;
 import org.camunda.bpm.engine.impl.core.model.CallableElement;
 import org.camunda.bpm.engine.impl.persistence.entity.ExecutionEntity;
 import org.camunda.bpm.engine.impl.pvm.process.ProcessDefinitionImpl;
 import org.camunda.bpm.engine.variable.VariableMap;
-import org.camunda.bpm.engine.variable.impl.VariableMapImpl;
-
-import java.util.Map;
 
 import static org.camunda.bpm.engine.impl.util.CallableElementUtil.getProcessDefinitionToCall;
-import static io.karchevskiy.camunda.zipkin.CamundaSlueuthContextInjectingAspect.*;
+import static io.karchevskiy.camunda.zipkin.CamundaSlueuthContextInjectingAspect.X_SLEUTH_TRACE_CONTEXT;
 
 public class PropagateSleuthContextToChildProcesses {
 
     /**
-     * Method propagates parent process sleuth context for child processes
+     * Method propagates parent process sleuth context for child processes.
+     * Child span names come from {@link TracePlan} of called definition, when call activity has constant key;
+     * otherwise called definition is resolved on every call.
      */
-    public static Object propagateSleuthContextToChildProcesses(ProceedingJoinPoint pjp, Tracing tracing) throws Throwable {
+    public static Object propagateSleuthContextToChildProcesses(ProceedingJoinPoint pjp, Tracing tracing,
+                                                                TraceContextCache traceContextCache,
+                                                                TracingScopeManager scopeManager) throws Throwable {
         if (tracing == null) {
             return pjp.proceed();
         }
@@ -32,44 +35,45 @@ public class PropagateSleuthContextToChildProcesses {
         }
 
         ExecutionEntity execution = (ExecutionEntity) pjp.getArgs()[0];
-
-        String childProcessName = defineChildProcessName(pjp, execution);
-
-        final VariableMapImpl sourceVariables = execution.getProcessInstance().getVariables();
-        if (sourceVariables == null) {
+        ActivityPlan activityPlan = TracePlans.activity(execution);
+        if (!TracePlans.traced(activityPlan)) {
             return pjp.proceed();
         }
-        Map<String, String> sleuthTraceSerialized = extractSerializedContext(sourceVariables.get(X_SLEUTH_TRACE_CONTEXT));
-        if (sleuthTraceSerialized.isEmpty()) {
+        //called key is resolved only for tenant of caller, see TracePlanParseListener
+        TracePlan childPlan = TracePlans.latest(Context.getProcessEngineConfiguration().getProcessEngineName(),
+                execution.getTenantId(), activityPlan != null ? activityPlan.calledProcessKey() : null);
+        if (childPlan != null && !childPlan.enabled()) {
             return pjp.proceed();
         }
 
-        VariableMap targetVariables = (VariableMap) pjp.getArgs()[1];
-        final Object sleuthTraceId = sourceVariables.get(X_SLEUTH_TRACE_ID);
-        if (sleuthTraceId != null) {
-            targetVariables.put(X_SLEUTH_TRACE_ID, sleuthTraceId);
-        } else {
+        ProcessTraceContext parentTraceContext = traceContextCache.get(execution.getProcessInstanceId(),
+                () -> TraceContextVariables.read(tracing, execution));
+        if (parentTraceContext == null) {
             return pjp.proceed();
         }
 
-        Span parentSpan = restoreTracingContext(sleuthTraceSerialized);
-        tracing.tracer().withSpanInScope(parentSpan);
+        VariableMap targetVariables = (VariableMap) pjp.getArgs()[1];
 
-        Span processStartedSpan = tracing.tracer().nextSpan().name("CPS:" + childProcessName);
+        Tracer tracer = tracing.tracer();
+        String childProcessName = childPlan != null ? null : defineChildProcessName(pjp, execution);
+        Span processStartedSpan = tracer.newChild(parentTraceContext.processContext())
+                .name(childPlan != null ? childPlan.childSpanName() : "CPS:" + childProcessName);
         processStartedSpan.annotate("Child Process Started");
-        tracing.tracer().withSpanInScope(processStartedSpan);
         processStartedSpan.start().flush();
-        serializeAndInjectTracingContext(targetVariables, processStartedSpan, X_SLEUTH_TRACE_CONTEXT);
-
-        Span processDurationSpan = tracing.tracer().nextSpan().name("CPD:" + childProcessName);
-        tracing.tracer().withSpanInScope(processDurationSpan);
-        processDurationSpan.annotate("Child Process Duration");
-        processDurationSpan.start();
-        serializeAndInjectTracingContext(targetVariables, processDurationSpan, X_SLEUTH_TRACE_DURATION);
 
-        tracing.tracer().withSpanInScope(processStartedSpan);
-        return pjp.proceed();
+        //Reported at child process end, see ProcessDurationSpans
+        ProcessTraceContext childTraceContext = ProcessDurationSpans.start(tracing, processStartedSpan.context());
+        targetVariables.put(X_SLEUTH_TRACE_CONTEXT, TraceContextVariables.encode(childTraceContext));
 
+        try (TracingScopeManager.Scope ws = scopeManager.withSpanInScope(tracer, processStartedSpan)) {
+            return pjp.proceed();
+        } catch (Throwable e) {
+            //child process was not started, nobody will finish its duration
+            ProcessDurationSpans.finish(tracing, childTraceContext,
+                    childPlan != null ? childPlan.childDurationSpanName() : "CPD:" + childProcessName,
+                    ProcessSpanDefinition.CHILD_DURATION_ANNOTATION, e);
+            throw e;
+        }
     }
 
     private static String defineChildProcessName(ProceedingJoinPoint pjp, ExecutionEntity execution){
@@ -0,0 +1,112 @@
+package io.karchevskiy.camunda.zipkin.impl;
+
+import org.camunda.bpm.engine.impl.RuntimeServiceImpl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dispatch table built once: every startProcessInstance* overload of {@link RuntimeServiceImpl}
+ * is mapped to its sibling, which accepts variables Map as last parameter.
+ * Sibling is stored as {@link MethodHandle} of type (Object target, Object[] args, Map variables) -> Object:
+ * arguments of intercepted overload are spread from its own argument array and variables are passed apart,
+ * so hot path does no reflection lookups, no boxing and allocates no argument array.
+ */
+public final class StartProcessInstanceInvokers {
+
+    private static final MethodType INVOKER_TYPE =
+            MethodType.methodType(Object.class, Object.class, Object[].class, Map.class);
+
+    private static final Map<Method, Invoker> INVOKERS = buildInvokers();
+
+    private StartProcessInstanceInvokers() {
+    }
+
+    /**
+     * @return invoker of variables-taking sibling or null, if overload has no such sibling
+     */
+    public static Invoker forMethod(Method method) {
+        return INVOKERS.get(method);
+    }
+
+    private static Map<Method, Invoker> buildInvokers() {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        Map<Method, Invoker> invokers = new HashMap<>();
+        Method[] methods = RuntimeServiceImpl.class.getMethods();
+        for (Method method : methods) {
+            if (!method.getName().startsWith("startProcessInstance")) {
+                continue;
+            }
+            Method sibling = variablesSibling(method, methods);
+            if (sibling == null) {
+                continue;
+            }
+            boolean acceptsVariables = sibling.equals(method);
+            int parameterCount = sibling.getParameterCount();
+            try {
+                //receiver is argument 0
+                MethodHandle handle = lookup.unreflect(sibling);
+                handle = acceptsVariables
+                        //variables are already in the last slot of args
+                        ? MethodHandles.dropArguments(handle.asSpreader(1, Object[].class, parameterCount),
+                        2, Map.class)
+                        : handle.asSpreader(1, Object[].class, parameterCount - 1);
+                invokers.put(method, new Invoker(handle.asType(INVOKER_TYPE), acceptsVariables));
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Can not access " + sibling, e);
+            }
+        }
+        return Collections.unmodifiableMap(invokers);
+    }
+
+    private static Method variablesSibling(Method method, Method[] methods) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        int length = parameterTypes.length;
+        if (length > 0 && parameterTypes[length - 1] == Map.class) {
+            return method;
+        }
+        for (Method candidate : methods) {
+            Class<?>[] candidateTypes = candidate.getParameterTypes();
+            if (candidate.getName().equals(method.getName())
+                    && candidateTypes.length == length + 1
+                    && candidateTypes[length] == Map.class
+                    && Arrays.equals(parameterTypes, Arrays.copyOf(candidateTypes, length))) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    public static final class Invoker {
+        private final MethodHandle handle;
+        private final boolean acceptsVariables;
+
+        Invoker(MethodHandle handle, boolean acceptsVariables) {
+            this.handle = handle;
+            this.acceptsVariables = acceptsVariables;
+        }
+
+        /**
+         * Intercepted overload already accepts variables Map as last argument
+         */
+        public boolean acceptsVariables() {
+            return acceptsVariables;
+        }
+
+        /**
+         * Calls variables-taking overload; args - arguments of intercepted overload, not copied
+         */
+        public Object invoke(Object target, Object[] args, Map<String, Object> variables) throws Throwable {
+            if (acceptsVariables) {
+                args[args.length - 1] = variables;
+            }
+            return (Object) handle.invokeExact(target, args, variables);
+        }
+    }
+}
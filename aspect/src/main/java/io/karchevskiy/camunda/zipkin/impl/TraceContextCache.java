@@ -0,0 +1,168 @@
+package io.karchevskiy.camunda.zipkin.impl;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of decoded process trace context by process instance id.
+ * Filled at process start and at first read, invalidated at process end.
+ * Misses (f.e. async continuation executed on another node) are loaded from process variables.
+ * Absence of context is cached too, so processes without tracing do not read variables on every call.
+ *
+ * LRU segments with lock striping, entries expire after write.
+ */
+public class TraceContextCache {
+
+    public static final int DEFAULT_MAX_SIZE = 10_000;
+    public static final Duration DEFAULT_EXPIRE_AFTER_WRITE = Duration.ofHours(1);
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long expireAfterWriteNanos;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public TraceContextCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_EXPIRE_AFTER_WRITE);
+    }
+
+    public TraceContextCache(int maxSize, Duration expireAfterWrite) {
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize <= 0");
+        int segmentSize = Math.max(1, maxSize / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize, evictions);
+        }
+        this.expireAfterWriteNanos = expireAfterWrite.toNanos();
+    }
+
+    /**
+     * @return cached context or context loaded by loader (may be null, when process has no context)
+     */
+    public ProcessTraceContext get(String processInstanceId, Supplier<ProcessTraceContext> loader) {
+        if (processInstanceId == null) {
+            return loader.get();
+        }
+        Segment segment = segmentFor(processInstanceId);
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.get(processInstanceId);
+        }
+        if (entry != null) {
+            if (System.nanoTime() - entry.writtenAt < expireAfterWriteNanos) {
+                hits.increment();
+                return entry.value;
+            }
+            synchronized (segment) {
+                segment.remove(processInstanceId, entry);
+            }
+            evictions.increment();
+        }
+        misses.increment();
+        ProcessTraceContext value = loader.get();
+        put(processInstanceId, value);
+        return value;
+    }
+
+    /**
+     * Lookup without loading, not counted as hit or miss
+     *
+     * @return cached context (null - process has no context) or notCached, when nothing is cached
+     */
+    public ProcessTraceContext getIfPresent(String processInstanceId, ProcessTraceContext notCached) {
+        if (processInstanceId == null) {
+            return notCached;
+        }
+        Segment segment = segmentFor(processInstanceId);
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.get(processInstanceId);
+        }
+        if (entry == null || System.nanoTime() - entry.writtenAt >= expireAfterWriteNanos) {
+            return notCached;
+        }
+        return entry.value;
+    }
+
+    public void put(String processInstanceId, ProcessTraceContext value) {
+        if (processInstanceId == null) {
+            return;
+        }
+        Segment segment = segmentFor(processInstanceId);
+        Entry entry = new Entry(value, System.nanoTime());
+        synchronized (segment) {
+            segment.put(processInstanceId, entry);
+        }
+    }
+
+    public void invalidate(String processInstanceId) {
+        if (processInstanceId == null) {
+            return;
+        }
+        Segment segment = segmentFor(processInstanceId);
+        synchronized (segment) {
+            segment.remove(processInstanceId);
+        }
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private Segment segmentFor(String processInstanceId) {
+        int hash = processInstanceId.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    private static final class Entry {
+        final ProcessTraceContext value;
+        final long writtenAt;
+
+        Entry(ProcessTraceContext value, long writtenAt) {
+            this.value = value;
+            this.writtenAt = writtenAt;
+        }
+    }
+
+    private static final class Segment extends LinkedHashMap<String, Entry> {
+        private final int maxSize;
+        private final LongAdder evictions;
+
+        Segment(int maxSize, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > maxSize) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
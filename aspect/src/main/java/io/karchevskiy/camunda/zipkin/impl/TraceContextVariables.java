@@ -0,0 +1,108 @@
+package io.karchevskiy.camunda.zipkin.impl;
+
+import brave.Tracing;
+import brave.propagation.B3SingleFormat;
+import brave.propagation.TraceContext;
+import brave.propagation.TraceContextOrSamplingFlags;
+import org.camunda.bpm.engine.delegate.DelegateExecution;
+
+import java.util.Map;
+
+import static io.karchevskiy.camunda.zipkin.CamundaSlueuthContextInjectingAspect.X_SLEUTH_TRACE_CONTEXT;
+
+/**
+ * Reads and writes sleuth context stored in process variables.
+ * Shared by LTW aspect and {@link io.karchevskiy.camunda.zipkin.plugin.TracingProcessEnginePlugin},
+ * so {@link Tracing} is passed explicitly instead of being taken from static field.
+ *
+ * Process context is stored in one string variable (primitive typed value, no byte array row):
+ * b3 single format of process span, ':', span id of process duration span, ':' and its start in epoch micros, f.e.
+ * 463ac35c9f6413ad48485a3953bb6124-a2fb4a1d1a96d312-1-0020000000000001:b7ad6b7169203331:1571300000000000
+ * Values without start (duration span kept open in tracer) and HashMap with b3 headers per span,
+ * written by older versions, are still decoded.
+ */
+public final class TraceContextVariables {
+
+    static final char DURATION_SEPARATOR = ':';
+
+    private TraceContextVariables() {
+    }
+
+    public static String encode(ProcessTraceContext context) {
+        return B3SingleFormat.writeB3SingleFormat(context.processContext())
+                + DURATION_SEPARATOR + context.durationContext().spanIdString()
+                + DURATION_SEPARATOR + context.durationStartMicros();
+    }
+
+    /**
+     * Reads only trace variable of process instance: other variables (f.e. large serialized payloads)
+     * are neither deserialized nor walked through execution tree.
+     *
+     * @return decoded context or null, if process has no context
+     */
+    public static ProcessTraceContext read(Tracing tracing, DelegateExecution execution) {
+        DelegateExecution processInstance = execution.getProcessInstance();
+        if (processInstance == null) {
+            return null;
+        }
+        return decode(tracing, processInstance.getVariableLocal(X_SLEUTH_TRACE_CONTEXT));
+    }
+
+    /**
+     * @return decoded context or null, if value is absent or can not be parsed
+     */
+    public static ProcessTraceContext decode(Tracing tracing, Object value) {
+        if (value instanceof String) {
+            return decode((String) value);
+        }
+        if (value instanceof Map) {
+            TraceContext processContext = decodeLegacy(tracing, value);
+            return processContext != null ? new ProcessTraceContext(processContext, null) : null;
+        }
+        return null;
+    }
+
+    /**
+     * Migration reader for HashMap values written by previous versions (X-SLEUTH-TRACE-CONTEXT and
+     * X-SLEUTH-TRACE-DURATION variables)
+     */
+    @SuppressWarnings("unchecked")
+    public static TraceContext decodeLegacy(Tracing tracing, Object value) {
+        if (!(value instanceof Map) || ((Map) value).isEmpty()) {
+            return null;
+        }
+        TraceContext.Extractor<Map<String, String>> extractor = tracing
+                .propagation()
+                .extractor(Map<String, String>::get);
+        return extractor.extract((Map<String, String>) value).context();
+    }
+
+    private static ProcessTraceContext decode(String value) {
+        int separator = value.indexOf(DURATION_SEPARATOR);
+        int end = separator == -1 ? value.length() : separator;
+        TraceContextOrSamplingFlags extracted = B3SingleFormat.parseB3SingleFormat(value, 0, end);
+        if (extracted == null || extracted.context() == null) {
+            return null;
+        }
+        TraceContext processContext = extracted.context();
+        if (separator == -1) {
+            return new ProcessTraceContext(processContext, null);
+        }
+        int startSeparator = value.indexOf(DURATION_SEPARATOR, separator + 1);
+        TraceContext durationContext;
+        long durationStartMicros = 0L;
+        try {
+            durationContext = processContext.toBuilder()
+                    .parentId(processContext.spanId())
+                    .spanId(Long.parseUnsignedLong(value.substring(separator + 1,
+                            startSeparator == -1 ? value.length() : startSeparator), 16))
+                    .build();
+            if (startSeparator != -1) {
+                durationStartMicros = Long.parseLong(value.substring(startSeparator + 1));
+            }
+        } catch (NumberFormatException e) {
+            durationContext = null;
+        }
+        return new ProcessTraceContext(processContext, durationContext, durationStartMicros);
+    }
+}
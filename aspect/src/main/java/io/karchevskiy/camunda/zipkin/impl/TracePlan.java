@@ -0,0 +1,80 @@
+package io.karchevskiy.camunda.zipkin.impl;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Immutable tracing plan of process definition built by {@link TracePlanParseListener}: span names and
+ * enablement of process and its activities. Stored as process definition property, so it lives in deployment
+ * cache next to the definition, and registered in {@link TracePlans} by key for lookups before definition is known.
+ */
+public final class TracePlan {
+
+    public static final String PROPERTY = "zipkin.tracePlan";
+
+    private final String processDefinitionKey;
+    private final boolean enabled;
+    private final String rootSpanName;
+    private final String rootDurationSpanName;
+    private final String childSpanName;
+    private final String childDurationSpanName;
+    private final Map<String, ActivityPlan> activities;
+    private final String[] loopActivityIds;
+
+    TracePlan(String processDefinitionKey, String processDefinitionName, boolean enabled,
+              Map<String, ActivityPlan> activities) {
+        String name = processDefinitionName != null ? processDefinitionName : processDefinitionKey;
+        this.processDefinitionKey = processDefinitionKey.intern();
+        this.enabled = enabled;
+        this.rootSpanName = (ProcessSpanDefinition.ROOT_SPAN_PREFIX + processDefinitionKey).intern();
+        this.rootDurationSpanName = (ProcessSpanDefinition.ROOT_DURATION_SPAN_PREFIX + processDefinitionKey).intern();
+        this.childSpanName = ("CPS:" + name).intern();
+        this.childDurationSpanName = ("CPD:" + name).intern();
+        this.activities = Collections.unmodifiableMap(activities);
+        this.loopActivityIds = activities.values().stream()
+                .filter(activity -> activity.aggregation() == ActivityPlan.Aggregation.LOOP)
+                .map(ActivityPlan::activityId)
+                .toArray(String[]::new);
+    }
+
+    public String processDefinitionKey() {
+        return processDefinitionKey;
+    }
+
+    /**
+     * @return false, when process is excluded from tracing (camunda:property zipkin.tracing=false)
+     */
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public String rootSpanName() {
+        return rootSpanName;
+    }
+
+    public String rootDurationSpanName() {
+        return rootDurationSpanName;
+    }
+
+    public String childSpanName() {
+        return childSpanName;
+    }
+
+    public String childDurationSpanName() {
+        return childDurationSpanName;
+    }
+
+    /**
+     * @return activities with {@link ActivityPlan.Aggregation#LOOP}, summaries are reported at process end
+     */
+    public String[] loopActivityIds() {
+        return loopActivityIds;
+    }
+
+    /**
+     * @return plan of activity or null, when activity has no plan (traced with defaults)
+     */
+    public ActivityPlan activity(String activityId) {
+        return activityId != null ? activities.get(activityId) : null;
+    }
+}
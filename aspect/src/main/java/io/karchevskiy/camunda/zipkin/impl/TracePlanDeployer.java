@@ -0,0 +1,45 @@
+package io.karchevskiy.camunda.zipkin.impl;
+
+import org.camunda.bpm.engine.impl.context.Context;
+import org.camunda.bpm.engine.impl.interceptor.CommandContext;
+import org.camunda.bpm.engine.impl.persistence.deploy.Deployer;
+import org.camunda.bpm.engine.impl.persistence.entity.DeploymentEntity;
+import org.camunda.bpm.engine.impl.persistence.entity.ProcessDefinitionEntity;
+
+import java.util.List;
+
+/**
+ * Registers {@link TracePlan} of deployed definitions in {@link TracePlans} after bpmn deployer: unlike parse
+ * listeners, it sees versions assigned (new deployment) or loaded (deployment cache miss) by the engine.
+ * Definitions re-parsed on cache miss (restart, eviction, job of old version) are registered only when
+ * they are the latest version of their key and tenant, so old versions never replace the plan of new starts.
+ *
+ * Aspect mode adds it to default deployers of engine configuration, plugin mode - to custom post deployers.
+ */
+public class TracePlanDeployer implements Deployer {
+
+    @Override
+    public void deploy(DeploymentEntity deployment) {
+        List<ProcessDefinitionEntity> processDefinitions = deployment.getDeployedProcessDefinitions();
+        if (processDefinitions == null || processDefinitions.isEmpty()) {
+            return;
+        }
+        CommandContext commandContext = Context.getCommandContext();
+        String engineName = Context.getProcessEngineConfiguration().getProcessEngineName();
+        for (ProcessDefinitionEntity processDefinition : processDefinitions) {
+            TracePlan plan = (TracePlan) processDefinition.getProperty(TracePlan.PROPERTY);
+            if (plan == null) {
+                continue;
+            }
+            if (!deployment.isNew()) {
+                ProcessDefinitionEntity latest = commandContext.getProcessDefinitionManager()
+                        .findLatestProcessDefinitionByKeyAndTenantId(processDefinition.getKey(),
+                                processDefinition.getTenantId());
+                if (latest == null || !latest.getId().equals(processDefinition.getId())) {
+                    continue;
+                }
+            }
+            TracePlans.register(engineName, processDefinition.getTenantId(), processDefinition.getVersion(), plan);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package io.karchevskiy.camunda.zipkin.impl;
+
+import org.camunda.bpm.engine.delegate.ExecutionListener;
+import org.camunda.bpm.engine.impl.bpmn.behavior.CallActivityBehavior;
+import org.camunda.bpm.engine.impl.bpmn.parser.AbstractBpmnParseListener;
+import org.camunda.bpm.engine.impl.core.model.BaseCallableElement;
+import org.camunda.bpm.engine.impl.core.variable.mapping.value.ConstantValueProvider;
+import org.camunda.bpm.engine.impl.persistence.entity.ProcessDefinitionEntity;
+import org.camunda.bpm.engine.impl.pvm.process.ActivityImpl;
+import org.camunda.bpm.engine.impl.pvm.process.ScopeImpl;
+import org.camunda.bpm.engine.impl.util.xml.Element;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.camunda.bpm.engine.impl.bpmn.parser.BpmnParser.CAMUNDA_BPMN_EXTENSIONS_NS;
+
+/**
+ * Builds {@link TracePlan} of every parsed process definition. Activities and processes are excluded from tracing
+ * with extension property:
+ * &lt;camunda:properties&gt;&lt;camunda:property name="zipkin.tracing" value="false"/&gt;&lt;/camunda:properties&gt;
+ *
+ * Aspect mode adds it to default parse listeners of engine configuration (with process end listener),
+ * plugin mode extends it with listeners, see {@link io.karchevskiy.camunda.zipkin.plugin.TracingBpmnParseListener}.
+ */
+public class TracePlanParseListener extends AbstractBpmnParseListener {
+
+    public static final String TRACING_PROPERTY = "zipkin.tracing";
+    public static final String AGGREGATE_PROPERTY = "zipkin.tracing.aggregate";
+
+    private final ExecutionListener processEndListener;
+    private final ExecutionListener multiInstanceEndListener;
+
+    public TracePlanParseListener() {
+        this(null, null);
+    }
+
+    /**
+     * @param processEndListener       built-in process end listener, null - not added
+     * @param multiInstanceEndListener built-in end listener of multi-instance bodies with delegate spans,
+     *                                 null - not added
+     */
+    public TracePlanParseListener(ExecutionListener processEndListener, ExecutionListener multiInstanceEndListener) {
+        this.processEndListener = processEndListener;
+        this.multiInstanceEndListener = multiInstanceEndListener;
+    }
+
+    /**
+     * Called after all activities of process are parsed
+     */
+    @Override
+    public void parseProcess(Element processElement, ProcessDefinitionEntity processDefinition) {
+        Map<String, ActivityPlan> activities = new HashMap<>();
+        collectActivityPlans(processDefinition, activities);
+        //version is not assigned yet: registered by key in TracePlanDeployer
+        TracePlan plan = new TracePlan(processDefinition.getKey(), processDefinition.getName(),
+                enabled(processElement), activities);
+        processDefinition.setProperty(TracePlan.PROPERTY, plan);
+        if (processEndListener != null) {
+            //built-in: called even when custom listeners are skipped (f.e. instance deleted with skipCustomListeners)
+            processDefinition.addBuiltInListener(ExecutionListener.EVENTNAME_END, processEndListener);
+        }
+    }
+
+    @Override
+    public void parseServiceTask(Element serviceTaskElement, ScopeImpl scope, ActivityImpl activity) {
+        addActivityPlan(serviceTaskElement, activity, delegateSpanName(serviceTaskElement), null);
+    }
+
+    @Override
+    public void parseSendTask(Element sendTaskElement, ScopeImpl scope, ActivityImpl activity) {
+        addActivityPlan(sendTaskElement, activity, delegateSpanName(sendTaskElement), null);
+    }
+
+    @Override
+    public void parseBusinessRuleTask(Element businessRuleTaskElement, ScopeImpl scope, ActivityImpl activity) {
+        addActivityPlan(businessRuleTaskElement, activity, delegateSpanName(businessRuleTaskElement), null);
+    }
+
+    @Override
+    public void parseScriptTask(Element scriptTaskElement, ScopeImpl scope, ActivityImpl activity) {
+        addActivityPlan(scriptTaskElement, activity, null, null);
+    }
+
+    @Override
+    public void parseTask(Element taskElement, ScopeImpl scope, ActivityImpl activity) {
+        addActivityPlan(taskElement, activity, null, null);
+    }
+
+    @Override
+    public void parseUserTask(Element userTaskElement, ScopeImpl scope, ActivityImpl activity) {
+        addActivityPlan(userTaskElement, activity, null, null);
+    }
+
+    @Override
+    public void parseReceiveTask(Element receiveTaskElement, ScopeImpl scope, ActivityImpl activity) {
+        addActivityPlan(receiveTaskElement, activity, null, null);
+    }
+
+    @Override
+    public void parseSubProcess(Element subProcessElement, ScopeImpl scope, ActivityImpl activity) {
+        addActivityPlan(subProcessElement, activity, null, null);
+    }
+
+    @Override
+    public void parseCallActivity(Element callActivityElement, ScopeImpl scope, ActivityImpl activity) {
+        addActivityPlan(callActivityElement, activity, null, calledProcessKey(activity));
+    }
+
+    /**
+     * @return activity plan, also stored as activity property
+     */
+    protected ActivityPlan addActivityPlan(Element element, ActivityImpl activity, String spanName,
+                                           String calledProcessKey) {
+        ActivityPlan.Aggregation aggregation = ActivityPlan.Aggregation.NONE;
+        if (element.element("multiInstanceLoopCharacteristics") != null) {
+            aggregation = ActivityPlan.Aggregation.MULTI_INSTANCE;
+        } else if ("true".equalsIgnoreCase(property(element, AGGREGATE_PROPERTY))) {
+            aggregation = ActivityPlan.Aggregation.LOOP;
+        }
+        ActivityPlan plan = new ActivityPlan(activity.getId(), enabled(element), spanName, calledProcessKey,
+                aggregation);
+        activity.setProperty(ActivityPlan.PROPERTY, plan);
+        //inner activity is parsed in scope of multi-instance body
+        if (plan.aggregation() == ActivityPlan.Aggregation.MULTI_INSTANCE && multiInstanceEndListener != null
+                && activity.getFlowScope() instanceof ActivityImpl) {
+            ((ActivityImpl) activity.getFlowScope())
+                    .addBuiltInListener(ExecutionListener.EVENTNAME_END, multiInstanceEndListener);
+        }
+        return plan;
+    }
+
+    /**
+     * JD:SimpleClassName for camunda:class, JD:BeanName for camunda:delegateExpression="${beanName}"
+     * (spring default bean naming gives class simple name), connector span for camunda:connector
+     */
+    public static String delegateSpanName(Element taskElement) {
+        String className = taskElement.attributeNS(CAMUNDA_BPMN_EXTENSIONS_NS, "class");
+        if (className != null) {
+            return "JD:" + className.substring(className.lastIndexOf('.') + 1);
+        }
+        String delegateExpression = taskElement.attributeNS(CAMUNDA_BPMN_EXTENSIONS_NS, "delegateExpression");
+        if (delegateExpression != null) {
+            return "JD:" + beanName(delegateExpression);
+        }
+        Element extensionElements = taskElement.element("extensionElements");
+        if (extensionElements != null && extensionElements.elementNS(CAMUNDA_BPMN_EXTENSIONS_NS, "connector") != null) {
+            return ActivityPlan.CONNECTOR_SPAN_NAME;
+        }
+        return null;
+    }
+
+    private static String beanName(String delegateExpression) {
+        String expression = delegateExpression.trim();
+        if ((expression.startsWith("${") || expression.startsWith("#{")) && expression.endsWith("}")) {
+            expression = expression.substring(2, expression.length() - 1).trim();
+        }
+        if (expression.isEmpty()) {
+            return delegateExpression;
+        }
+        return Character.toUpperCase(expression.charAt(0)) + expression.substring(1);
+    }
+
+    /**
+     * Only constant key with latest binding and tenant of caller can be resolved without process variables
+     */
+    private static String calledProcessKey(ActivityImpl activity) {
+        if (!(activity.getActivityBehavior() instanceof CallActivityBehavior)) {
+            return null;
+        }
+        BaseCallableElement callableElement = ((CallActivityBehavior) activity.getActivityBehavior())
+                .getCallableElement();
+        if (callableElement == null || !callableElement.isLatestBinding()
+                || callableElement.getTenantIdProvider() != null
+                || !(callableElement.getDefinitionKeyValueProvider() instanceof ConstantValueProvider)) {
+            return null;
+        }
+        Object key = callableElement.getDefinitionKeyValueProvider().getValue(null);
+        return key instanceof String ? (String) key : null;
+    }
+
+    private static boolean enabled(Element element) {
+        return !"false".equalsIgnoreCase(property(element, TRACING_PROPERTY));
+    }
+
+    /**
+     * @return value of camunda:property or null
+     */
+    private static String property(Element element, String name) {
+        Element extensionElements = element.element("extensionElements");
+        if (extensionElements == null) {
+            return null;
+        }
+        Element properties = extensionElements.elementNS(CAMUNDA_BPMN_EXTENSIONS_NS, "properties");
+        if (properties == null) {
+            return null;
+        }
+        for (Element property : properties.elementsNS(CAMUNDA_BPMN_EXTENSIONS_NS, "property")) {
+            if (name.equals(property.attribute("name"))) {
+                return property.attribute("value");
+            }
+        }
+        return null;
+    }
+
+    private static void collectActivityPlans(ScopeImpl scope, Map<String, ActivityPlan> activities) {
+        for (ActivityImpl activity : scope.getActivities()) {
+            ActivityPlan plan = (ActivityPlan) activity.getProperty(ActivityPlan.PROPERTY);
+            if (plan != null) {
+                activities.put(activity.getId(), plan);
+            }
+            collectActivityPlans(activity, activities);
+        }
+    }
+}
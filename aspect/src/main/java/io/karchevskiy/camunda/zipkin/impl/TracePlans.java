@@ -0,0 +1,99 @@
+package io.karchevskiy.camunda.zipkin.impl;
+
+import org.camunda.bpm.engine.delegate.DelegateExecution;
+import org.camunda.bpm.engine.impl.persistence.entity.ExecutionEntity;
+import org.camunda.bpm.engine.impl.pvm.process.ActivityImpl;
+import org.camunda.bpm.engine.impl.pvm.process.ProcessDefinitionImpl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lookups of {@link TracePlan} and {@link ActivityPlan}. Plans are found by execution (definition and activity
+ * properties) or, before process definition is resolved (process start, call activity), by key: plan of the
+ * highest deployed version, registered by {@link TracePlanDeployer} per engine and tenant.
+ * Missing plan means definition was deployed without plan listener: traced with defaults.
+ */
+public final class TracePlans {
+
+    /**
+     * Definition key - engine and tenant - latest registered version
+     */
+    private static final Map<String, Map<String, Registered>> LATEST = new ConcurrentHashMap<>();
+
+    private TracePlans() {
+    }
+
+    static void register(String engineName, String tenantId, int version, TracePlan plan) {
+        LATEST.computeIfAbsent(plan.processDefinitionKey(), key -> new ConcurrentHashMap<>())
+                .merge(scope(engineName, tenantId), new Registered(version, plan),
+                        (registered, deployed) -> deployed.version >= registered.version ? deployed : registered);
+    }
+
+    /**
+     * For callers, which do not know engine and tenant (process start through RuntimeService resolves
+     * definition in deployment cache, when null)
+     *
+     * @return plan of latest version of definition, null if unknown or deployed to several engines or tenants
+     */
+    public static TracePlan latest(String processDefinitionKey) {
+        Map<String, Registered> scopes = processDefinitionKey != null ? LATEST.get(processDefinitionKey) : null;
+        if (scopes == null || scopes.size() != 1) {
+            return null;
+        }
+        for (Registered registered : scopes.values()) {
+            return registered.plan;
+        }
+        return null;
+    }
+
+    /**
+     * @param tenantId null - definition without tenant
+     * @return plan of latest version of definition in engine and tenant, null if unknown
+     */
+    public static TracePlan latest(String engineName, String tenantId, String processDefinitionKey) {
+        Map<String, Registered> scopes = processDefinitionKey != null ? LATEST.get(processDefinitionKey) : null;
+        Registered registered = scopes != null ? scopes.get(scope(engineName, tenantId)) : null;
+        return registered != null ? registered.plan : null;
+    }
+
+    public static TracePlan forExecution(DelegateExecution execution) {
+        if (!(execution instanceof ExecutionEntity)) {
+            return null;
+        }
+        ProcessDefinitionImpl processDefinition = ((ExecutionEntity) execution).getProcessDefinition();
+        return processDefinition != null ? (TracePlan) processDefinition.getProperty(TracePlan.PROPERTY) : null;
+    }
+
+    /**
+     * @return plan of current activity of execution, null if activity has no plan
+     */
+    public static ActivityPlan activity(DelegateExecution execution) {
+        if (!(execution instanceof ExecutionEntity)) {
+            return null;
+        }
+        ActivityImpl activity = ((ExecutionEntity) execution).getActivity();
+        return activity != null ? (ActivityPlan) activity.getProperty(ActivityPlan.PROPERTY) : null;
+    }
+
+    /**
+     * @return false only for activities excluded by plan
+     */
+    public static boolean traced(ActivityPlan plan) {
+        return plan == null || plan.traced();
+    }
+
+    private static String scope(String engineName, String tenantId) {
+        return engineName + '/' + (tenantId != null ? tenantId : "");
+    }
+
+    private static final class Registered {
+        final int version;
+        final TracePlan plan;
+
+        Registered(int version, TracePlan plan) {
+            this.version = version;
+            this.plan = plan;
+        }
+    }
+}
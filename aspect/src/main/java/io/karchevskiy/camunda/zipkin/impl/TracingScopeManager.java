@@ -0,0 +1,116 @@
+package io.karchevskiy.camunda.zipkin.impl;
+
+import brave.Span;
+import brave.Tracer;
+import brave.Tracing;
+import brave.propagation.CurrentTraceContext;
+import brave.propagation.TraceContext;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Guards advice boundaries. Advices open scopes of their spans with {@link #withSpanInScope(Tracer, Span)}.
+ * With leak detection enabled, thread context is compared with context of the span just before its scope is
+ * closed: mismatch means that some scope opened inside advice (f.e. by delegate code) was never closed.
+ * Such leak is counted and logged, names of last leaking threads are kept for diagnostics. Closing the advice scope then restores context captured when
+ * it was opened, so pooled job executor and http threads do not parent later work to unrelated traces.
+ */
+public class TracingScopeManager {
+
+    static final int LAST_LEAKING_THREADS = 16;
+
+    private final Logger log = Logger.getLogger(TracingScopeManager.class.getName());
+
+    private final CurrentTraceContext currentTraceContext;
+    private final boolean leakDetection;
+    private final LongAdder leakedScopes = new LongAdder();
+    /**
+     * Bounded: thread names may be dynamic. Leaks are rare, so it is guarded by its own monitor
+     */
+    private final Map<String, Boolean> lastLeakingThreads = new LinkedHashMap<String, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > LAST_LEAKING_THREADS;
+        }
+    };
+
+    public TracingScopeManager(Tracing tracing, boolean leakDetection) {
+        this.currentTraceContext = tracing.currentTraceContext();
+        this.leakDetection = leakDetection;
+    }
+
+    /**
+     * Same as {@link Tracer#withSpanInScope(Span)}, checked for leaks on close
+     */
+    public Scope withSpanInScope(Tracer tracer, Span span) {
+        return new Scope(tracer.withSpanInScope(span), leakDetection ? span.context() : null);
+    }
+
+    /**
+     * Called while scope of expected context is still open
+     *
+     * @return false, when a scope opened inside it leaked
+     */
+    public boolean check(TraceContext expected) {
+        if (!leakDetection) {
+            return true;
+        }
+        TraceContext current = currentTraceContext.get();
+        if (expected.equals(current)) {
+            return true;
+        }
+        String thread = Thread.currentThread().getName();
+        leakedScopes.increment();
+        synchronized (lastLeakingThreads) {
+            //most recent last
+            lastLeakingThreads.remove(thread);
+            lastLeakingThreads.put(thread, Boolean.TRUE);
+        }
+        log.warning("Leaked tracing scope on thread " + thread + ": " + current + ", expected " + expected);
+        return false;
+    }
+
+    public boolean isLeakDetection() {
+        return leakDetection;
+    }
+
+    public long leakedScopes() {
+        return leakedScopes.sum();
+    }
+
+    /**
+     * @return names of up to {@link #LAST_LEAKING_THREADS} threads with leaks, most recent last
+     */
+    public List<String> lastLeakingThreads() {
+        synchronized (lastLeakingThreads) {
+            return new ArrayList<>(lastLeakingThreads.keySet());
+        }
+    }
+
+    public final class Scope implements AutoCloseable {
+
+        private final Tracer.SpanInScope spanInScope;
+        private final TraceContext expected;
+
+        private Scope(Tracer.SpanInScope spanInScope, TraceContext expected) {
+            this.spanInScope = spanInScope;
+            this.expected = expected;
+        }
+
+        /**
+         * Checks before closing: brave scope restores its previous context regardless of scopes leaked inside
+         */
+        @Override
+        public void close() {
+            if (expected != null) {
+                check(expected);
+            }
+            spanInScope.close();
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package io.karchevskiy.camunda.zipkin.kafka;
+
+import brave.Span;
+import brave.Tracer;
+import brave.Tracing;
+import brave.kafka.clients.KafkaTracing;
+import brave.propagation.B3SingleFormat;
+import brave.propagation.TraceContext;
+import io.karchevskiy.camunda.zipkin.impl.ProcessDefinitionSampler;
+import io.karchevskiy.camunda.zipkin.impl.ProcessDurationSpans;
+import io.karchevskiy.camunda.zipkin.impl.ProcessTraceContext;
+import io.karchevskiy.camunda.zipkin.impl.TraceContextCache;
+import io.karchevskiy.camunda.zipkin.impl.TraceContextVariables;
+import io.karchevskiy.camunda.zipkin.impl.TracePlan;
+import io.karchevskiy.camunda.zipkin.impl.TracePlans;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.RuntimeService;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.interceptor.CommandExecutor;
+import org.camunda.bpm.engine.runtime.MessageCorrelationBuilder;
+import org.camunda.bpm.engine.runtime.ProcessInstance;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static io.karchevskiy.camunda.zipkin.CamundaSlueuthContextInjectingAspect.X_SLEUTH_TRACE_CONTEXT;
+import static io.karchevskiy.camunda.zipkin.impl.ProcessSpanDefinition.ROOT_DURATION_ANNOTATION;
+import static io.karchevskiy.camunda.zipkin.impl.ProcessSpanDefinition.ROOT_DURATION_SPAN_PREFIX;
+import static io.karchevskiy.camunda.zipkin.impl.ProcessSpanDefinition.ROOT_SPAN_PREFIX;
+
+/**
+ * Starts or correlates processes from polled records, up to batch size records in one engine command and
+ * transaction, instead of a command and transaction per record. Offsets are committed only after the engine commit.
+ *
+ * Every record gets its own "ingest" span from {@link KafkaTracing#nextSpan(ConsumerRecord)}, so traces of records
+ * stay separate. For started processes RPS span, child of ingest span, is created here and the encoded context is
+ * written straight into trace variable: LTW aspect and start listener find it configured (second pass) and do not
+ * restore context again. Correlation runs in scope of ingest span and never overwrites trace variable of waiting
+ * instance.
+ *
+ * When batch transaction fails, it is rolled back and records are retried one per transaction. A record failing
+ * alone (or failing mapper) is rethrown: offsets of records before it are committed and consumer is seeked back to
+ * it and to unprocessed records of other partitions, so next poll returns them again (at least once).
+ * Call {@link #process(Consumer, ConsumerRecords)} outside of a transaction, on the polling thread.
+ */
+public class KafkaProcessBridge<K, V> {
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    static final String INGEST_SPAN_NAME = "ingest";
+    static final String PROCESS_DEFINITION_KEY_TAG = "camunda.process.definition.key";
+    static final String MESSAGE_NAME_TAG = "camunda.message.name";
+    static final String PROCESS_INSTANCE_ID_TAG = "camunda.process.instance.id";
+
+    private final Logger log = Logger.getLogger(KafkaProcessBridge.class.getName());
+
+    private final String engineName;
+    private final CommandExecutor commandExecutor;
+    private final RuntimeService runtimeService;
+    private final KafkaTracing kafkaTracing;
+    private final Tracing tracing;
+    private final ProcessDefinitionSampler processSampler;
+    private final TraceContextCache traceContextCache;
+    private final Function<ConsumerRecord<K, V>, ProcessCommand> mapper;
+    private final int batchSize;
+
+    private final LongAdder records = new LongAdder();
+    private final LongAdder transactions = new LongAdder();
+    private final LongAdder rollbacks = new LongAdder();
+
+    public KafkaProcessBridge(ProcessEngine processEngine, KafkaTracing kafkaTracing,
+                              ProcessDefinitionSampler processSampler, TraceContextCache traceContextCache,
+                              Function<ConsumerRecord<K, V>, ProcessCommand> mapper) {
+        this(processEngine, kafkaTracing, processSampler, traceContextCache, mapper, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param mapper    command for record, null - skip record (its offset is committed)
+     * @param batchSize records per engine transaction
+     */
+    public KafkaProcessBridge(ProcessEngine processEngine, KafkaTracing kafkaTracing,
+                              ProcessDefinitionSampler processSampler, TraceContextCache traceContextCache,
+                              Function<ConsumerRecord<K, V>, ProcessCommand> mapper, int batchSize) {
+        if (batchSize <= 0) throw new IllegalArgumentException("batchSize <= 0");
+        this.engineName = processEngine.getName();
+        this.commandExecutor = ((ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration())
+                .getCommandExecutorTxRequiresNew();
+        this.runtimeService = processEngine.getRuntimeService();
+        this.kafkaTracing = kafkaTracing;
+        this.tracing = kafkaTracing.messagingTracing().tracing();
+        this.processSampler = processSampler;
+        this.traceContextCache = traceContextCache;
+        this.mapper = mapper;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Processes records in batches and commits their offsets with consumer after every engine commit
+     */
+    public void process(Consumer<K, V> consumer, ConsumerRecords<K, V> polled) {
+        List<ConsumerRecord<K, V>> records = new ArrayList<>(polled.count());
+        for (ConsumerRecord<K, V> record : polled) {
+            records.add(record);
+        }
+        for (int from = 0; from < records.size(); from += batchSize) {
+            processBatch(consumer, records, from, Math.min(from + batchSize, records.size()));
+        }
+    }
+
+    public long recordCount() {
+        return records.sum();
+    }
+
+    public long transactionCount() {
+        return transactions.sum();
+    }
+
+    public long rollbackCount() {
+        return rollbacks.sum();
+    }
+
+    /**
+     * @param records all polled records, batch is [from, to)
+     */
+    private void processBatch(Consumer<K, V> consumer, List<ConsumerRecord<K, V>> records, int from, int to) {
+        List<ConsumerRecord<K, V>> batch = records.subList(from, to);
+        //mapper may throw: before any span is started
+        List<ProcessCommand> commands = new ArrayList<>(batch.size());
+        try {
+            for (ConsumerRecord<K, V> record : batch) {
+                commands.add(mapper.apply(record));
+            }
+        } catch (RuntimeException e) {
+            seekToUnprocessed(consumer, records.subList(from, records.size()));
+            throw e;
+        }
+        List<Ingest> ingests = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            ingests.add(new Ingest(batch.get(i), commands.get(i)));
+        }
+        try {
+            execute(ingests);
+        } catch (RuntimeException e) {
+            rollbacks.increment();
+            log.log(Level.FINE, "Batch of " + batch.size() + " records rolled back, retrying one per transaction", e);
+            for (Ingest ingest : ingests) {
+                ingest.rolledBack(e);
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                Ingest ingest = new Ingest(batch.get(i), commands.get(i));
+                try {
+                    execute(Collections.singletonList(ingest));
+                } catch (RuntimeException recordFailure) {
+                    rollbacks.increment();
+                    ingest.rolledBack(recordFailure);
+                    commitOffsets(consumer, batch.subList(0, i));
+                    seekToUnprocessed(consumer, records.subList(from + i, records.size()));
+                    throw recordFailure;
+                }
+                ingest.committed();
+            }
+            commitOffsets(consumer, batch);
+            return;
+        }
+        for (Ingest ingest : ingests) {
+            ingest.committed();
+        }
+        commitOffsets(consumer, batch);
+    }
+
+    private void execute(List<Ingest> ingests) {
+        commandExecutor.execute(commandContext -> {
+            for (Ingest ingest : ingests) {
+                ingest.execute();
+            }
+            return null;
+        });
+        transactions.increment();
+        records.add(ingests.size());
+    }
+
+    private void commitOffsets(Consumer<K, V> consumer, List<ConsumerRecord<K, V>> committed) {
+        if (committed.isEmpty()) {
+            return;
+        }
+        Map<TopicPartition, OffsetAndMetadata> offsets = new LinkedHashMap<>();
+        for (ConsumerRecord<K, V> record : committed) {
+            offsets.put(new TopicPartition(record.topic(), record.partition()),
+                    new OffsetAndMetadata(record.offset() + 1));
+        }
+        consumer.commitSync(offsets);
+    }
+
+    /**
+     * Fetch position is already after all polled records: rewinds every partition to its first unprocessed record
+     */
+    private void seekToUnprocessed(Consumer<K, V> consumer, List<ConsumerRecord<K, V>> unprocessed) {
+        Map<TopicPartition, Long> offsets = new LinkedHashMap<>();
+        for (ConsumerRecord<K, V> record : unprocessed) {
+            offsets.putIfAbsent(new TopicPartition(record.topic(), record.partition()), record.offset());
+        }
+        offsets.forEach(consumer::seek);
+    }
+
+    /**
+     * Record, its command and ingest span
+     */
+    private final class Ingest {
+
+        private final ProcessCommand command;
+        private final Span span;
+        private ProcessTraceContext processTraceContext;
+        private ProcessInstance processInstance;
+
+        Ingest(ConsumerRecord<K, V> record, ProcessCommand command) {
+            this.command = command;
+            this.span = kafkaTracing.nextSpan(record).name(INGEST_SPAN_NAME);
+            if (!span.isNoop() && command != null) {
+                if (command.isStart()) {
+                    span.tag(PROCESS_DEFINITION_KEY_TAG, command.processDefinitionKey());
+                } else {
+                    span.tag(MESSAGE_NAME_TAG, command.messageName());
+                }
+            }
+            span.start();
+        }
+
+        /**
+         * Called inside command of batch
+         */
+        void execute() {
+            if (command == null) {
+                return;
+            }
+            try (Tracer.SpanInScope ws = tracing.tracer().withSpanInScope(span)) {
+                if (command.isStart()) {
+                    start();
+                } else {
+                    correlate();
+                }
+            }
+        }
+
+        void start() {
+            String key = command.processDefinitionKey();
+            Map<String, Object> variables = new HashMap<>(command.variables());
+            //started without tenant id, as startProcessInstanceByKey below
+            TracePlan plan = TracePlans.latest(engineName, null, key);
+            if (plan == null || plan.enabled()) {
+                processTraceContext = startProcessSpan(key, plan);
+                variables.put(X_SLEUTH_TRACE_CONTEXT, processTraceContext != null
+                        ? TraceContextVariables.encode(processTraceContext)
+                        //not sampled: aspect and listener skip the process without sampling it again
+                        : B3SingleFormat.writeB3SingleFormat(notSampled(span.context())));
+            }
+            processInstance = runtimeService.startProcessInstanceByKey(key, command.businessKey(), variables);
+        }
+
+        void correlate() {
+            MessageCorrelationBuilder correlation = runtimeService.createMessageCorrelation(command.messageName())
+                    .setVariables(command.variables());
+            if (command.businessKey() != null) {
+                correlation.processInstanceBusinessKey(command.businessKey());
+            }
+            processInstance = correlation.correlateWithResult().getProcessInstance();
+        }
+
+        /**
+         * Same RPS span, as LTW aspect creates at process start
+         */
+        ProcessTraceContext startProcessSpan(String key, TracePlan plan) {
+            Span processSpan = processSampler.nextProcessSpan(tracing, key, span.context());
+            if (processSpan == null) {
+                return null;
+            }
+            processSpan.name(plan != null ? plan.rootSpanName() : ROOT_SPAN_PREFIX + key);
+            processSpan.annotate("Root Process Started");
+            processSpan.start();
+            processSpan.flush();
+            return ProcessDurationSpans.start(tracing, processSpan.context());
+        }
+
+        void committed() {
+            if (processInstance != null) {
+                if (!span.isNoop()) {
+                    span.tag(PROCESS_INSTANCE_ID_TAG, processInstance.getId());
+                }
+                if (processTraceContext != null && !processInstance.isEnded()) {
+                    traceContextCache.put(processInstance.getId(), processTraceContext);
+                }
+            }
+            span.finish();
+        }
+
+        /**
+         * Instance does not exist, nobody will finish its duration
+         */
+        void rolledBack(RuntimeException e) {
+            if (processTraceContext != null) {
+                TracePlan plan = TracePlans.latest(engineName, null, command.processDefinitionKey());
+                ProcessDurationSpans.finish(tracing, processTraceContext, plan != null
+                                ? plan.rootDurationSpanName()
+                                : ROOT_DURATION_SPAN_PREFIX + command.processDefinitionKey(),
+                        ROOT_DURATION_ANNOTATION, e);
+            }
+            span.error(e).finish();
+        }
+
+        TraceContext notSampled(TraceContext context) {
+            return Boolean.FALSE.equals(context.sampled()) ? context : context.toBuilder().sampled(false).build();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package io.karchevskiy.camunda.zipkin.kafka;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * What {@link KafkaProcessBridge} does with a record: start process by definition key or correlate message
+ */
+public final class ProcessCommand {
+
+    private final String processDefinitionKey;
+    private final String messageName;
+    private final String businessKey;
+    private final Map<String, Object> variables;
+
+    private ProcessCommand(String processDefinitionKey, String messageName, String businessKey,
+                           Map<String, Object> variables) {
+        this.processDefinitionKey = processDefinitionKey;
+        this.messageName = messageName;
+        this.businessKey = businessKey;
+        this.variables = variables != null ? variables : Collections.emptyMap();
+    }
+
+    public static ProcessCommand start(String processDefinitionKey, String businessKey,
+                                       Map<String, Object> variables) {
+        if (processDefinitionKey == null) throw new NullPointerException("processDefinitionKey == null");
+        return new ProcessCommand(processDefinitionKey, null, businessKey, variables);
+    }
+
+    /**
+     * @param businessKey of waiting process instance, null - correlate by message name and variables only
+     */
+    public static ProcessCommand correlate(String messageName, String businessKey, Map<String, Object> variables) {
+        if (messageName == null) throw new NullPointerException("messageName == null");
+        return new ProcessCommand(null, messageName, businessKey, variables);
+    }
+
+    public boolean isStart() {
+        return processDefinitionKey != null;
+    }
+
+    public String processDefinitionKey() {
+        return processDefinitionKey;
+    }
+
+    public String messageName() {
+        return messageName;
+    }
+
+    public String businessKey() {
+        return businessKey;
+    }
+
+    public Map<String, Object> variables() {
+        return variables;
+    }
+}
@@ -0,0 +1,62 @@
+package io.karchevskiy.camunda.zipkin.plugin;
+
+import brave.Span;
+import brave.Tracing;
+import io.karchevskiy.camunda.zipkin.impl.ActivityPlan;
+import io.karchevskiy.camunda.zipkin.impl.IterationAggregator;
+import io.karchevskiy.camunda.zipkin.impl.IterationStats;
+import io.karchevskiy.camunda.zipkin.impl.ProcessTraceContext;
+import io.karchevskiy.camunda.zipkin.impl.TraceContextCache;
+import io.karchevskiy.camunda.zipkin.impl.TraceContextVariables;
+import org.camunda.bpm.engine.delegate.DelegateExecution;
+import org.camunda.bpm.engine.delegate.ExecutionListener;
+
+/**
+ * Activity start/end listener wrapping delegate execution in span (JD for java delegates).
+ * Span and its scope live in {@link TracingCommandInterceptor} between start and end events,
+ * so messages sent by delegate get it as parent.
+ */
+public class DelegateSpanListener implements ExecutionListener {
+
+    private final Tracing tracing;
+    private final TraceContextCache traceContextCache;
+    private final ActivityPlan activityPlan;
+    private final IterationAggregator iterationAggregator;
+
+    public DelegateSpanListener(Tracing tracing, TraceContextCache traceContextCache, ActivityPlan activityPlan,
+                                IterationAggregator iterationAggregator) {
+        this.tracing = tracing;
+        this.traceContextCache = traceContextCache;
+        this.activityPlan = activityPlan;
+        this.iterationAggregator = iterationAggregator;
+    }
+
+    @Override
+    public void notify(DelegateExecution execution) {
+        if (EVENTNAME_END.equals(execution.getEventName())) {
+            TracingCommandInterceptor.close(execution.getActivityInstanceId());
+            return;
+        }
+        ProcessTraceContext processTraceContext = traceContextCache.get(execution.getProcessInstanceId(),
+                () -> TraceContextVariables.read(tracing, execution));
+        if (processTraceContext == null) {
+            return;
+        }
+        //multi-instance and loop iterations: child of summary span, reported only when slow or failed
+        IterationStats iterations = iterationAggregator.iterationStats(tracing, execution, activityPlan,
+                activityPlan.spanName(), processTraceContext.processContext());
+        Span span = tracing.tracer().newChild(iterations != null
+                ? iterations.summaryContext()
+                : processTraceContext.processContext()).name(activityPlan.spanName());
+        activityPlan.tag(span);
+        if (iterations == null) {
+            span.start();
+            TracingCommandInterceptor.open(execution.getActivityInstanceId(), span, tracing.tracer());
+            return;
+        }
+        long startMicros = tracing.clock(span.context()).currentTimeMicroseconds();
+        span.start(startMicros);
+        TracingCommandInterceptor.open(execution.getActivityInstanceId(), span, tracing.tracer(),
+                (iterationSpan, error) -> iterations.finish(tracing, iterationSpan, startMicros, error));
+    }
+}
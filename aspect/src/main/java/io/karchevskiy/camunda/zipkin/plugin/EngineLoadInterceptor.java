@@ -0,0 +1,31 @@
+package io.karchevskiy.camunda.zipkin.plugin;
+
+import io.karchevskiy.camunda.zipkin.impl.AdaptiveLoadSampler;
+import org.camunda.bpm.engine.impl.context.Context;
+import org.camunda.bpm.engine.impl.interceptor.Command;
+import org.camunda.bpm.engine.impl.interceptor.CommandInterceptor;
+
+/**
+ * Times outermost commands for {@link AdaptiveLoadSampler}, nested commands are part of them
+ */
+public class EngineLoadInterceptor extends CommandInterceptor {
+
+    private final AdaptiveLoadSampler loadSampler;
+
+    public EngineLoadInterceptor(AdaptiveLoadSampler loadSampler) {
+        this.loadSampler = loadSampler;
+    }
+
+    @Override
+    public <T> T execute(Command<T> command) {
+        if (Context.getCommandContext() != null) {
+            return next.execute(command);
+        }
+        long start = System.nanoTime();
+        try {
+            return next.execute(command);
+        } finally {
+            loadSampler.commandExecuted(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package io.karchevskiy.camunda.zipkin.plugin;
+
+import io.karchevskiy.camunda.zipkin.impl.AdaptiveLoadSampler;
+import org.camunda.bpm.engine.impl.ProcessEngineImpl;
+import org.camunda.bpm.engine.impl.cfg.AbstractProcessEnginePlugin;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.interceptor.CommandInterceptor;
+import org.camunda.bpm.engine.impl.jobexecutor.JobExecutor;
+import org.camunda.bpm.engine.impl.jobexecutor.NotifyAcquisitionRejectedJobsHandler;
+import org.camunda.bpm.engine.impl.jobexecutor.RejectedJobsHandler;
+import org.camunda.bpm.engine.impl.jobexecutor.ThreadPoolJobExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Feeds {@link AdaptiveLoadSampler} with engine load: command latency, rejected jobs and thread pool of
+ * job executor (when it is {@link ThreadPoolJobExecutor}). Works with both tracing modes.
+ */
+public class EngineLoadProcessEnginePlugin extends AbstractProcessEnginePlugin {
+
+    private final AdaptiveLoadSampler loadSampler;
+
+    public EngineLoadProcessEnginePlugin(AdaptiveLoadSampler loadSampler) {
+        this.loadSampler = loadSampler;
+    }
+
+    @Override
+    public void preInit(ProcessEngineConfigurationImpl configuration) {
+        List<CommandInterceptor> txRequired = configuration.getCustomPreCommandInterceptorsTxRequired();
+        if (txRequired == null) {
+            txRequired = new ArrayList<>();
+            configuration.setCustomPreCommandInterceptorsTxRequired(txRequired);
+        }
+        txRequired.add(new EngineLoadInterceptor(loadSampler));
+    }
+
+    @Override
+    public void postInit(ProcessEngineConfigurationImpl configuration) {
+        JobExecutor jobExecutor = configuration.getJobExecutor();
+        if (jobExecutor == null) {
+            return;
+        }
+        RejectedJobsHandler rejectedJobsHandler = jobExecutor.getRejectedJobsHandler() != null
+                ? jobExecutor.getRejectedJobsHandler()
+                : new NotifyAcquisitionRejectedJobsHandler();
+        jobExecutor.setRejectedJobsHandler((List<String> jobIds, ProcessEngineImpl processEngine,
+                                            JobExecutor executor) -> {
+            loadSampler.jobsRejected(jobIds.size());
+            rejectedJobsHandler.jobsRejected(jobIds, processEngine, executor);
+        });
+        if (jobExecutor instanceof ThreadPoolJobExecutor) {
+            ThreadPoolJobExecutor threadPoolJobExecutor = (ThreadPoolJobExecutor) jobExecutor;
+            loadSampler.jobExecutor(threadPoolJobExecutor::getThreadPoolExecutor);
+        }
+    }
+}
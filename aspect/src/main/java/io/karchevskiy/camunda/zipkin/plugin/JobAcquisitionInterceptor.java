@@ -0,0 +1,31 @@
+package io.karchevskiy.camunda.zipkin.plugin;
+
+import io.karchevskiy.camunda.zipkin.impl.JobExecutorTimings;
+import org.camunda.bpm.engine.impl.cmd.AcquireJobsCmd;
+import org.camunda.bpm.engine.impl.interceptor.Command;
+import org.camunda.bpm.engine.impl.interceptor.CommandInterceptor;
+import org.camunda.bpm.engine.impl.jobexecutor.AcquiredJobs;
+
+/**
+ * Times AcquireJobsCmd, everything else is passed through
+ */
+public class JobAcquisitionInterceptor extends CommandInterceptor {
+
+    private final JobExecutorTimings timings;
+
+    public JobAcquisitionInterceptor(JobExecutorTimings timings) {
+        this.timings = timings;
+    }
+
+    @Override
+    public <T> T execute(Command<T> command) {
+        if (!(command instanceof AcquireJobsCmd)) {
+            return next.execute(command);
+        }
+        long start = System.nanoTime();
+        T acquiredJobs = next.execute(command);
+        timings.acquisition(System.nanoTime() - start,
+                acquiredJobs instanceof AcquiredJobs ? ((AcquiredJobs) acquiredJobs).size() : 0);
+        return acquiredJobs;
+    }
+}
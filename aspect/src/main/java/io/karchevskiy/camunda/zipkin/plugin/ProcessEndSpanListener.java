@@ -0,0 +1,35 @@
+package io.karchevskiy.camunda.zipkin.plugin;
+
+import brave.Tracing;
+import io.karchevskiy.camunda.zipkin.impl.IterationAggregator;
+import io.karchevskiy.camunda.zipkin.impl.ProcessSpanDefinition;
+import io.karchevskiy.camunda.zipkin.impl.TraceContextCache;
+import org.camunda.bpm.engine.delegate.DelegateExecution;
+import org.camunda.bpm.engine.delegate.ExecutionListener;
+
+/**
+ * Process level end listener. Called once per process instance, reports loop summaries and RPD/CPD span
+ */
+public class ProcessEndSpanListener implements ExecutionListener {
+
+    private final Tracing tracing;
+    private final TraceContextCache traceContextCache;
+    private final IterationAggregator iterationAggregator;
+
+    public ProcessEndSpanListener(Tracing tracing, TraceContextCache traceContextCache) {
+        this(tracing, traceContextCache, IterationAggregator.DISABLED);
+    }
+
+    public ProcessEndSpanListener(Tracing tracing, TraceContextCache traceContextCache,
+                                  IterationAggregator iterationAggregator) {
+        this.tracing = tracing;
+        this.traceContextCache = traceContextCache;
+        this.iterationAggregator = iterationAggregator;
+    }
+
+    @Override
+    public void notify(DelegateExecution execution) {
+        iterationAggregator.processEnded(tracing, execution);
+        ProcessSpanDefinition.endProcessSpan(execution, tracing, traceContextCache);
+    }
+}
@@ -0,0 +1,89 @@
+package io.karchevskiy.camunda.zipkin.plugin;
+
+import brave.Span;
+import brave.Tracer;
+import brave.Tracing;
+import io.karchevskiy.camunda.zipkin.impl.ProcessDefinitionSampler;
+import io.karchevskiy.camunda.zipkin.impl.ProcessDurationSpans;
+import io.karchevskiy.camunda.zipkin.impl.ProcessTraceContext;
+import io.karchevskiy.camunda.zipkin.impl.TraceContextCache;
+import io.karchevskiy.camunda.zipkin.impl.TraceContextVariables;
+import io.karchevskiy.camunda.zipkin.impl.TracePlan;
+import io.karchevskiy.camunda.zipkin.impl.TracePlans;
+import org.camunda.bpm.engine.delegate.DelegateExecution;
+import org.camunda.bpm.engine.delegate.ExecutionListener;
+
+import static io.karchevskiy.camunda.zipkin.CamundaSlueuthContextInjectingAspect.X_SLEUTH_TRACE_CONTEXT;
+
+/**
+ * Process level start listener. Creates the same spans as LTW mode:
+ * RPS/RPD for root processes (parent - current span or context passed with start variables),
+ * CPS/CPD for processes started by call activity (parent - context of super process).
+ * Root process sampling is decided by {@link ProcessDefinitionSampler}, child processes inherit it.
+ */
+public class ProcessStartSpanListener implements ExecutionListener {
+
+    private final Tracing tracing;
+    private final TraceContextCache traceContextCache;
+    private final ProcessDefinitionSampler processSampler;
+    private final TracePlan plan;
+
+    public ProcessStartSpanListener(Tracing tracing, TraceContextCache traceContextCache,
+                                    ProcessDefinitionSampler processSampler, TracePlan plan) {
+        this.tracing = tracing;
+        this.traceContextCache = traceContextCache;
+        this.processSampler = processSampler;
+        this.plan = plan;
+    }
+
+    @Override
+    public void notify(DelegateExecution execution) {
+        Tracer tracer = tracing.tracer();
+        DelegateExecution superExecution = execution.getSuperExecution();
+        boolean child = superExecution != null;
+
+        ProcessTraceContext parentContext;
+        if (child) {
+            //call activity excluded from tracing
+            if (!TracePlans.traced(TracePlans.activity(superExecution))) {
+                return;
+            }
+            parentContext = traceContextCache.get(superExecution.getProcessInstanceId(),
+                    () -> TraceContextVariables.read(tracing, superExecution));
+            if (parentContext == null) {
+                return;
+            }
+        } else {
+            parentContext = TraceContextVariables.decode(tracing, execution.getVariableLocal(X_SLEUTH_TRACE_CONTEXT));
+            //sleuth context already configured by caller (same as second pass in LTW mode)
+            if (parentContext != null && parentContext.hasDuration()) {
+                return;
+            }
+        }
+
+        Span processStartedSpan;
+        if (child) {
+            processStartedSpan = tracer.newChild(parentContext.processContext());
+        } else {
+            processStartedSpan = processSampler.nextProcessSpan(tracing, plan.processDefinitionKey(),
+                    parentContext != null ? parentContext.processContext() : null);
+            if (processStartedSpan == null) {
+                //not sampled: no trace variable, nothing to read for children, delegates and jobs
+                if (parentContext != null) {
+                    execution.removeVariableLocal(X_SLEUTH_TRACE_CONTEXT);
+                }
+                traceContextCache.put(execution.getProcessInstanceId(), null);
+                return;
+            }
+        }
+        processStartedSpan.name(child ? plan.childSpanName() : plan.rootSpanName());
+        processStartedSpan.annotate(child ? "Child Process Started" : "Root Process Started");
+        //should not be finished
+        processStartedSpan.start().flush();
+
+        //Save id and start of process lifetime duration span, reported by ProcessEndSpanListener
+        ProcessTraceContext processTraceContext = ProcessDurationSpans.start(tracing, processStartedSpan.context());
+        execution.setVariableLocal(X_SLEUTH_TRACE_CONTEXT, TraceContextVariables.encode(processTraceContext));
+        traceContextCache.put(execution.getProcessInstanceId(), processTraceContext);
+    }
+}
@@ -0,0 +1,65 @@
+package io.karchevskiy.camunda.zipkin.plugin;
+
+import brave.Tracing;
+import io.karchevskiy.camunda.zipkin.impl.ActivityPlan;
+import io.karchevskiy.camunda.zipkin.impl.IterationAggregator;
+import io.karchevskiy.camunda.zipkin.impl.ProcessDefinitionSampler;
+import io.karchevskiy.camunda.zipkin.impl.TraceContextCache;
+import io.karchevskiy.camunda.zipkin.impl.TracePlan;
+import io.karchevskiy.camunda.zipkin.impl.TracePlanParseListener;
+import org.camunda.bpm.engine.delegate.ExecutionListener;
+import org.camunda.bpm.engine.impl.persistence.entity.ProcessDefinitionEntity;
+import org.camunda.bpm.engine.impl.pvm.process.ActivityImpl;
+import org.camunda.bpm.engine.impl.util.xml.Element;
+
+/**
+ * Adds tracing listeners to parsed process definitions. Span names and enablement come from {@link TracePlan},
+ * built once at deployment: excluded processes and activities get no listeners at all.
+ */
+public class TracingBpmnParseListener extends TracePlanParseListener {
+
+    private final Tracing tracing;
+    private final TraceContextCache traceContextCache;
+    private final ProcessDefinitionSampler processSampler;
+    private final IterationAggregator iterationAggregator;
+
+    public TracingBpmnParseListener(Tracing tracing, TraceContextCache traceContextCache,
+                                    ProcessDefinitionSampler processSampler) {
+        this(tracing, traceContextCache, processSampler, IterationAggregator.DISABLED);
+    }
+
+    public TracingBpmnParseListener(Tracing tracing, TraceContextCache traceContextCache,
+                                    ProcessDefinitionSampler processSampler,
+                                    IterationAggregator iterationAggregator) {
+        super(new ProcessEndSpanListener(tracing, traceContextCache, iterationAggregator),
+                execution -> iterationAggregator.multiInstanceEnded(tracing, execution));
+        this.tracing = tracing;
+        this.traceContextCache = traceContextCache;
+        this.processSampler = processSampler;
+        this.iterationAggregator = iterationAggregator;
+    }
+
+    @Override
+    public void parseProcess(Element processElement, ProcessDefinitionEntity processDefinition) {
+        super.parseProcess(processElement, processDefinition);
+        TracePlan plan = (TracePlan) processDefinition.getProperty(TracePlan.PROPERTY);
+        if (plan.enabled()) {
+            //built-in: called even when custom listeners are skipped
+            processDefinition.addBuiltInListener(ExecutionListener.EVENTNAME_START,
+                    new ProcessStartSpanListener(tracing, traceContextCache, processSampler, plan));
+        }
+    }
+
+    @Override
+    protected ActivityPlan addActivityPlan(Element element, ActivityImpl activity, String spanName,
+                                           String calledProcessKey) {
+        ActivityPlan plan = super.addActivityPlan(element, activity, spanName, calledProcessKey);
+        if (plan.traced() && plan.spanName() != null) {
+            DelegateSpanListener listener = new DelegateSpanListener(tracing, traceContextCache, plan,
+                    iterationAggregator);
+            activity.addListener(ExecutionListener.EVENTNAME_START, listener);
+            activity.addListener(ExecutionListener.EVENTNAME_END, listener);
+        }
+        return plan;
+    }
+}
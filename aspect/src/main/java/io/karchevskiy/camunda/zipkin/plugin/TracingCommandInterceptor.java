@@ -0,0 +1,136 @@
+package io.karchevskiy.camunda.zipkin.plugin;
+
+import brave.Span;
+import brave.Tracer;
+import io.karchevskiy.camunda.zipkin.impl.TracingScopeManager;
+import org.camunda.bpm.engine.impl.interceptor.Command;
+import org.camunda.bpm.engine.impl.interceptor.CommandInterceptor;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Owns spans opened by execution listeners during one engine command.
+ * Listener opens span and scope on activity start and closes them on activity end;
+ * if command fails between - end listener is never called, so span is finished here with error
+ * and scope is closed, pooled job executor / http threads stay clean.
+ */
+public class TracingCommandInterceptor extends CommandInterceptor {
+
+    private static final ThreadLocal<Deque<Frame>> FRAMES = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private final TracingScopeManager scopeManager;
+
+    public TracingCommandInterceptor(TracingScopeManager scopeManager) {
+        this.scopeManager = scopeManager;
+    }
+
+    @Override
+    public <T> T execute(Command<T> command) {
+        Deque<Frame> frames = FRAMES.get();
+        Frame frame = new Frame(scopeManager);
+        frames.push(frame);
+        Throwable error = null;
+        try {
+            return next.execute(command);
+        } catch (RuntimeException | Error e) {
+            error = e;
+            throw e;
+        } finally {
+            frames.pop();
+            frame.closeAll(error);
+        }
+    }
+
+    /**
+     * Completes span on close, error is null when span is closed by end listener
+     */
+    interface SpanCompletion {
+        SpanCompletion FINISH = (span, error) -> {
+            if (error != null) {
+                span.error(error);
+            }
+            span.finish();
+        };
+
+        void complete(Span span, Throwable error);
+    }
+
+    /**
+     * Opens span in scope, bound to current command
+     */
+    static void open(String key, Span span, Tracer tracer) {
+        open(key, span, tracer, SpanCompletion.FINISH);
+    }
+
+    static void open(String key, Span span, Tracer tracer, SpanCompletion completion) {
+        Frame frame = FRAMES.get().peek();
+        Tracer.SpanInScope scope = tracer.withSpanInScope(span);
+        if (frame == null) {
+            //not inside command - nothing will close scope later
+            scope.close();
+            return;
+        }
+        frame.open.push(new OpenSpan(key, span, scope, completion));
+    }
+
+    /**
+     * Closes span opened by {@link #open(String, Span, Tracer)} with the same key.
+     * Spans opened later and still not closed are finished too, to keep scopes LIFO
+     */
+    static void close(String key) {
+        Frame frame = FRAMES.get().peek();
+        if (frame == null) {
+            return;
+        }
+        for (OpenSpan openSpan : frame.open) {
+            if (!openSpan.key.equals(key)) {
+                continue;
+            }
+            OpenSpan top;
+            do {
+                top = frame.open.pop();
+                top.close(null, frame.scopeManager);
+            } while (top != openSpan);
+            return;
+        }
+    }
+
+    private static final class Frame {
+        final Deque<OpenSpan> open = new ArrayDeque<>();
+        final TracingScopeManager scopeManager;
+
+        Frame(TracingScopeManager scopeManager) {
+            this.scopeManager = scopeManager;
+        }
+
+        void closeAll(Throwable error) {
+            while (!open.isEmpty()) {
+                open.pop().close(error, scopeManager);
+            }
+        }
+    }
+
+    private static final class OpenSpan {
+        final String key;
+        final Span span;
+        final Tracer.SpanInScope scope;
+        final SpanCompletion completion;
+
+        OpenSpan(String key, Span span, Tracer.SpanInScope scope, SpanCompletion completion) {
+            this.key = key;
+            this.span = span;
+            this.scope = scope;
+            this.completion = completion;
+        }
+
+        /**
+         * Spans are closed LIFO, so context of this span is current unless a scope opened inside it leaked
+         */
+        void close(Throwable error, TracingScopeManager scopeManager) {
+            scopeManager.check(span.context());
+            scope.close();
+            completion.complete(span, error);
+        }
+    }
+}
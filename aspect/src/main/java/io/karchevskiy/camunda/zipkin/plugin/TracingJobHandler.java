@@ -0,0 +1,71 @@
+package io.karchevskiy.camunda.zipkin.plugin;
+
+import brave.Span;
+import brave.Tracing;
+import io.karchevskiy.camunda.zipkin.impl.JobExecutorTimings;
+import io.karchevskiy.camunda.zipkin.impl.JobSpanDefinition;
+import io.karchevskiy.camunda.zipkin.impl.TraceContextCache;
+import io.karchevskiy.camunda.zipkin.impl.TracingScopeManager;
+import org.camunda.bpm.engine.impl.interceptor.CommandContext;
+import org.camunda.bpm.engine.impl.jobexecutor.JobHandler;
+import org.camunda.bpm.engine.impl.jobexecutor.JobHandlerConfiguration;
+import org.camunda.bpm.engine.impl.persistence.entity.ExecutionEntity;
+import org.camunda.bpm.engine.impl.persistence.entity.JobEntity;
+
+/**
+ * Wraps engine job handler with JOB span, see {@link JobSpanDefinition}.
+ * Job is taken from command context, so jobs executed by ManagementService.executeJob are traced too.
+ */
+public class TracingJobHandler<T extends JobHandlerConfiguration> implements JobHandler<T> {
+
+    private final JobHandler<T> delegate;
+    private final Tracing tracing;
+    private final TraceContextCache traceContextCache;
+    private final TracingScopeManager scopeManager;
+    private final JobExecutorTimings timings;
+
+    public TracingJobHandler(JobHandler<T> delegate, Tracing tracing, TraceContextCache traceContextCache,
+                             TracingScopeManager scopeManager, JobExecutorTimings timings) {
+        this.delegate = delegate;
+        this.tracing = tracing;
+        this.traceContextCache = traceContextCache;
+        this.scopeManager = scopeManager;
+        this.timings = timings;
+    }
+
+    @Override
+    public String getType() {
+        return delegate.getType();
+    }
+
+    @Override
+    public void execute(T configuration, ExecutionEntity execution, CommandContext commandContext, String tenantId) {
+        //set by ExecuteJobsCmd for job executor and ManagementService.executeJob alike
+        JobEntity job = commandContext.getCurrentJob();
+        Span span = job != null
+                ? JobSpanDefinition.startJobSpan(tracing, traceContextCache, timings, job, execution)
+                : null;
+        if (span == null) {
+            delegate.execute(configuration, execution, commandContext, tenantId);
+            return;
+        }
+        try (TracingScopeManager.Scope ws = scopeManager.withSpanInScope(tracing.tracer(), span)) {
+            delegate.execute(configuration, execution, commandContext, tenantId);
+        } catch (RuntimeException | Error e) {
+            span.error(e);
+            throw e;
+        } finally {
+            span.finish();
+        }
+    }
+
+    @Override
+    public T newConfiguration(String canonicalString) {
+        return delegate.newConfiguration(canonicalString);
+    }
+
+    @Override
+    public void onDelete(T configuration, JobEntity jobEntity) {
+        delegate.onDelete(configuration, jobEntity);
+    }
+}
@@ -0,0 +1,106 @@
+package io.karchevskiy.camunda.zipkin.plugin;
+
+import brave.Tracing;
+import io.karchevskiy.camunda.zipkin.impl.IterationAggregator;
+import io.karchevskiy.camunda.zipkin.impl.JobExecutorTimings;
+import io.karchevskiy.camunda.zipkin.impl.ProcessDefinitionSampler;
+import io.karchevskiy.camunda.zipkin.impl.TraceContextCache;
+import io.karchevskiy.camunda.zipkin.impl.TracePlanDeployer;
+import io.karchevskiy.camunda.zipkin.impl.TracingScopeManager;
+import org.camunda.bpm.engine.impl.bpmn.parser.BpmnParseListener;
+import org.camunda.bpm.engine.impl.cfg.AbstractProcessEnginePlugin;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.interceptor.CommandInterceptor;
+import org.camunda.bpm.engine.impl.jobexecutor.JobHandler;
+import org.camunda.bpm.engine.impl.persistence.deploy.Deployer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracing without AspectJ load time weaving.
+ * Produces RPS/RPD, CPS/CPD and JD spans with engine extension points:
+ * parse listener adds execution listeners at deployment, command interceptor owns listener scopes,
+ * job handlers are wrapped with JOB spans.
+ * {@link Tracing} comes with constructor, no static fields, no javaagent.
+ */
+public class TracingProcessEnginePlugin extends AbstractProcessEnginePlugin {
+
+    private final Tracing tracing;
+    private final TraceContextCache traceContextCache;
+    private final TracingScopeManager scopeManager;
+    private final JobExecutorTimings jobExecutorTimings;
+    private final ProcessDefinitionSampler processSampler;
+    private final IterationAggregator iterationAggregator;
+
+    public TracingProcessEnginePlugin(Tracing tracing, TraceContextCache traceContextCache,
+                                      TracingScopeManager scopeManager) {
+        this(tracing, traceContextCache, scopeManager, new JobExecutorTimings(), ProcessDefinitionSampler.DEFERRING);
+    }
+
+    public TracingProcessEnginePlugin(Tracing tracing, TraceContextCache traceContextCache,
+                                      TracingScopeManager scopeManager, JobExecutorTimings jobExecutorTimings,
+                                      ProcessDefinitionSampler processSampler) {
+        this(tracing, traceContextCache, scopeManager, jobExecutorTimings, processSampler,
+                IterationAggregator.DISABLED);
+    }
+
+    public TracingProcessEnginePlugin(Tracing tracing, TraceContextCache traceContextCache,
+                                      TracingScopeManager scopeManager, JobExecutorTimings jobExecutorTimings,
+                                      ProcessDefinitionSampler processSampler,
+                                      IterationAggregator iterationAggregator) {
+        this.tracing = tracing;
+        this.traceContextCache = traceContextCache;
+        this.scopeManager = scopeManager;
+        this.jobExecutorTimings = jobExecutorTimings;
+        this.processSampler = processSampler;
+        this.iterationAggregator = iterationAggregator;
+    }
+
+    @Override
+    public void preInit(ProcessEngineConfigurationImpl configuration) {
+        List<BpmnParseListener> parseListeners = configuration.getCustomPreBPMNParseListeners();
+        if (parseListeners == null) {
+            parseListeners = new ArrayList<>();
+            configuration.setCustomPreBPMNParseListeners(parseListeners);
+        }
+        parseListeners.add(new TracingBpmnParseListener(tracing, traceContextCache, processSampler,
+                iterationAggregator));
+
+        List<Deployer> postDeployers = configuration.getCustomPostDeployers();
+        if (postDeployers == null) {
+            postDeployers = new ArrayList<>();
+            configuration.setCustomPostDeployers(postDeployers);
+        }
+        postDeployers.add(new TracePlanDeployer());
+
+        List<CommandInterceptor> txRequired = configuration.getCustomPreCommandInterceptorsTxRequired();
+        if (txRequired == null) {
+            txRequired = new ArrayList<>();
+            configuration.setCustomPreCommandInterceptorsTxRequired(txRequired);
+        }
+        txRequired.add(new TracingCommandInterceptor(scopeManager));
+        txRequired.add(new JobAcquisitionInterceptor(jobExecutorTimings));
+
+        List<CommandInterceptor> txRequiresNew = configuration.getCustomPreCommandInterceptorsTxRequiresNew();
+        if (txRequiresNew == null) {
+            txRequiresNew = new ArrayList<>();
+            configuration.setCustomPreCommandInterceptorsTxRequiresNew(txRequiresNew);
+        }
+        txRequiresNew.add(new TracingCommandInterceptor(scopeManager));
+    }
+
+    /**
+     * Job handlers are registered in init, so they are wrapped after it
+     */
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void postInit(ProcessEngineConfigurationImpl configuration) {
+        Map<String, JobHandler> jobHandlers = configuration.getJobHandlers();
+        jobHandlers.replaceAll((type, jobHandler) -> jobHandler instanceof TracingJobHandler
+                ? jobHandler
+                : new TracingJobHandler(jobHandler, tracing, traceContextCache, scopeManager,
+                jobExecutorTimings));
+    }
+}
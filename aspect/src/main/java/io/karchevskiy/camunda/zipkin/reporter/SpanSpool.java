@@ -0,0 +1,183 @@
+package io.karchevskiy.camunda.zipkin.reporter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Ring of encoded spans in memory-mapped file. Header keeps read and write positions, so spans appended before
+ * restart (or crash of JVM: pages of mapped file belong to OS) are read after it.
+ *
+ * Positions grow monotonically, offset in ring is position % capacity. Record is int length and span bytes;
+ * record, which does not fit till the end of ring, starts at ring start (length -1 marks skipped tail).
+ * When ring is full, oldest records are dropped. Not thread safe, {@link SpoolingReporter} guards it,
+ * except {@link #force()}.
+ */
+class SpanSpool implements Closeable {
+
+    static final int HEADER_SIZE = 64;
+
+    private static final int MAGIC = 0x5A53504C;
+    private static final int VERSION = 1;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int READ_OFFSET = 16;
+    private static final int WRITE_OFFSET = 24;
+    private static final int WRAP = -1;
+
+    private final Logger log = Logger.getLogger(SpanSpool.class.getName());
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final long capacity;
+    private long readPosition;
+    private long writePosition;
+
+    SpanSpool(Path path, int capacity) throws IOException {
+        if (capacity < 1024) throw new IllegalArgumentException("capacity < 1024");
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        this.file = new RandomAccessFile(path.toFile(), "rw");
+        this.capacity = capacity;
+        this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity);
+        long read = buffer.getLong(READ_OFFSET);
+        long write = buffer.getLong(WRITE_OFFSET);
+        if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION && buffer.getLong(CAPACITY_OFFSET) == capacity
+                && read >= 0 && read <= write && write - read <= capacity) {
+            readPosition = read;
+            writePosition = write;
+            if (write > read) {
+                log.info("Resuming " + (write - read) + " spooled bytes from " + path);
+            }
+        } else {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(CAPACITY_OFFSET, capacity);
+            buffer.putLong(READ_OFFSET, 0L);
+            buffer.putLong(WRITE_OFFSET, 0L);
+        }
+    }
+
+    /**
+     * @return count of dropped records: oldest ones, when ring is full, or 1, when span is larger than ring
+     */
+    int append(byte[] span) {
+        int offset = offset(writePosition);
+        long tail = capacity - offset;
+        long skip = tail < 4 + span.length ? tail : 0L;
+        long required = skip + 4 + span.length;
+        if (4 + span.length > capacity) {
+            return 1;
+        }
+        int dropped = 0;
+        while (writePosition + required - readPosition > capacity) {
+            if (readPosition == writePosition) {
+                //empty ring: skipped tail is not needed for record of capacity size
+                writePosition += skip;
+                readPosition = writePosition;
+                offset = offset(writePosition);
+                skip = 0L;
+                required = 4 + span.length;
+                break;
+            }
+            readPosition = next(readPosition);
+            dropped++;
+        }
+        if (skip >= 4) {
+            buffer.putInt(HEADER_SIZE + offset, WRAP);
+        }
+        int start = HEADER_SIZE + offset(writePosition + skip);
+        buffer.putInt(start, span.length);
+        ByteBuffer view = buffer.duplicate();
+        view.position(start + 4);
+        view.put(span);
+        writePosition += required;
+        buffer.putLong(READ_OFFSET, readPosition);
+        buffer.putLong(WRITE_OFFSET, writePosition);
+        return dropped;
+    }
+
+    /**
+     * Copies records from read position without consuming them
+     *
+     * @param maxBytes sum of span sizes, first span is read anyway
+     * @return position after last copied record
+     */
+    long peek(List<byte[]> spans, int maxSpans, int maxBytes) {
+        long position = readPosition;
+        int bytes = 0;
+        while (position < writePosition && spans.size() < maxSpans) {
+            position = skipWrap(position);
+            int start = HEADER_SIZE + offset(position);
+            int length = buffer.getInt(start);
+            if (!spans.isEmpty() && bytes + length > maxBytes) {
+                break;
+            }
+            byte[] span = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(start + 4);
+            view.get(span);
+            spans.add(span);
+            bytes += length;
+            position += 4 + length;
+        }
+        return position;
+    }
+
+    /**
+     * Consumes records before position; records dropped meanwhile are already consumed
+     */
+    void commit(long position) {
+        if (position > readPosition) {
+            readPosition = position;
+            buffer.putLong(READ_OFFSET, readPosition);
+        }
+    }
+
+    boolean isEmpty() {
+        return readPosition == writePosition;
+    }
+
+    long size() {
+        return writePosition - readPosition;
+    }
+
+    /**
+     * Writes mapped pages to disk, so spans survive crash of OS too. Reads no positions: may run concurrently
+     * with appends, pages written meanwhile are forced next time
+     */
+    void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        file.close();
+    }
+
+    private long next(long position) {
+        position = skipWrap(position);
+        return position + 4 + buffer.getInt(HEADER_SIZE + offset(position));
+    }
+
+    private long skipWrap(long position) {
+        int offset = offset(position);
+        long tail = capacity - offset;
+        if (tail < 4 || buffer.getInt(HEADER_SIZE + offset) == WRAP) {
+            return position + tail;
+        }
+        return position;
+    }
+
+    private int offset(long position) {
+        return (int) (position % capacity);
+    }
+}
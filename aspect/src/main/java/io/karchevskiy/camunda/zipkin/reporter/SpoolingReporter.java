@@ -0,0 +1,207 @@
+package io.karchevskiy.camunda.zipkin.reporter;
+
+import zipkin2.Span;
+import zipkin2.codec.Encoding;
+import zipkin2.codec.SpanBytesEncoder;
+import zipkin2.reporter.Reporter;
+import zipkin2.reporter.Sender;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reporter, which never blocks on collector: engine threads encode span and append it to {@link SpanSpool},
+ * background thread sends spooled spans with sender in batches and consumes them only after successful send.
+ * While collector is unreachable spans stay in file (oldest are dropped, when it is full) and sending is retried
+ * with growing backoff, so RPD/CPD spans of processes ending during outage are delivered after it, and after
+ * restart of application too.
+ */
+public class SpoolingReporter implements Reporter<Span>, Flushable, Closeable {
+
+    public static final int DEFAULT_SIZE = 64 * 1024 * 1024;
+    public static final int DEFAULT_BATCH_SPANS = 500;
+    public static final Duration DEFAULT_SYNC_INTERVAL = Duration.ofSeconds(1);
+    public static final Duration DEFAULT_MAX_BACKOFF = Duration.ofSeconds(30);
+
+    private static final long MIN_BACKOFF_MILLIS = 100;
+
+    private final Logger log = Logger.getLogger(SpoolingReporter.class.getName());
+
+    private final Sender sender;
+    private final SpanBytesEncoder encoder;
+    private final SpanSpool spool;
+    private final int batchSpans;
+    private final int batchBytes;
+    private final long syncIntervalNanos;
+    private final long maxBackoffMillis;
+    private final Object sending = new Object();
+    private final Thread thread;
+    private volatile boolean closed;
+    private volatile boolean unsynced;
+
+    private final LongAdder spooled = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public SpoolingReporter(Sender sender, Path path) throws IOException {
+        this(sender, path, DEFAULT_SIZE, DEFAULT_BATCH_SPANS, DEFAULT_SYNC_INTERVAL, DEFAULT_MAX_BACKOFF);
+    }
+
+    /**
+     * @param size         bytes of ring in file, excluding header
+     * @param syncInterval spooled spans are forced to disk at most once per interval
+     */
+    public SpoolingReporter(Sender sender, Path path, int size, int batchSpans, Duration syncInterval,
+                            Duration maxBackoff) throws IOException {
+        if (batchSpans <= 0) throw new IllegalArgumentException("batchSpans <= 0");
+        this.sender = sender;
+        this.encoder = sender.encoding() == Encoding.PROTO3 ? SpanBytesEncoder.PROTO3 : SpanBytesEncoder.JSON_V2;
+        this.spool = new SpanSpool(path, size);
+        this.batchSpans = batchSpans;
+        //room for list encoding: brackets and commas of json
+        this.batchBytes = Math.max(1, sender.messageMaxBytes() - batchSpans - 2);
+        this.syncIntervalNanos = syncInterval.toNanos();
+        this.maxBackoffMillis = Math.max(MIN_BACKOFF_MILLIS, maxBackoff.toMillis());
+        this.thread = new Thread(this::run, "zipkin-span-spool");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    @Override
+    public void report(Span span) {
+        byte[] encoded = encoder.encode(span);
+        int overflow;
+        synchronized (spool) {
+            if (closed) {
+                dropped.increment();
+                return;
+            }
+            boolean wasEmpty = spool.isEmpty();
+            overflow = spool.append(encoded);
+            if (wasEmpty) {
+                spool.notifyAll();
+            }
+        }
+        spooled.increment();
+        unsynced = true;
+        if (overflow > 0) {
+            dropped.add(overflow);
+        }
+    }
+
+    /**
+     * Sends everything spooled on calling thread
+     *
+     * @throws IOException when collector is unreachable, unsent spans stay in spool
+     */
+    @Override
+    public void flush() throws IOException {
+        while (sendBatch()) {
+            //next batch
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        thread.interrupt();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (spool) {
+            spool.close();
+        }
+    }
+
+    public long spooledCount() {
+        return spooled.sum();
+    }
+
+    public long sentCount() {
+        return sent.sum();
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    public long failureCount() {
+        return failures.sum();
+    }
+
+    public long spooledBytes() {
+        synchronized (spool) {
+            return spool.size();
+        }
+    }
+
+    private void run() {
+        long backoff = MIN_BACKOFF_MILLIS;
+        long syncedAt = System.nanoTime();
+        while (!closed) {
+            try {
+                synchronized (spool) {
+                    if (spool.isEmpty()) {
+                        spool.wait(TimeUnit.NANOSECONDS.toMillis(syncIntervalNanos) + 1);
+                    }
+                }
+                //also while collector is down: spans of outage should survive crash of OS
+                if (unsynced && System.nanoTime() - syncedAt >= syncIntervalNanos) {
+                    unsynced = false;
+                    //outside of lock: appending threads do not wait for disk
+                    spool.force();
+                    syncedAt = System.nanoTime();
+                }
+                if (sendBatch()) {
+                    unsynced = true;
+                    backoff = MIN_BACKOFF_MILLIS;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                failures.increment();
+                log.log(Level.FINE, "Zipkin collector is unreachable, retry in " + backoff + "ms", e);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, maxBackoffMillis);
+            }
+        }
+    }
+
+    /**
+     * @return false, when spool was empty
+     */
+    private boolean sendBatch() throws IOException {
+        synchronized (sending) {
+            List<byte[]> batch = new ArrayList<>();
+            long end;
+            synchronized (spool) {
+                end = spool.peek(batch, batchSpans, batchBytes);
+            }
+            if (batch.isEmpty()) {
+                return false;
+            }
+            sender.sendSpans(batch).execute();
+            synchronized (spool) {
+                spool.commit(end);
+            }
+            sent.add(batch.size());
+            return true;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package io.karchevskiy.camunda.zipkin.tail;
+
+import brave.handler.MutableSpan;
+import org.camunda.bpm.engine.delegate.BpmnError;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static io.karchevskiy.camunda.zipkin.impl.JobSpanDefinition.JOB_RETRIES_TAG;
+
+/**
+ * Keeps trace of root process instance, when any rule matches:
+ * root process ran at least slowerThan, some span failed (errors), delegate threw {@link BpmnError},
+ * job failed on its last retry (incident is created) or random probability (decided at process start).
+ */
+public final class TailSamplingRules {
+
+    static final String JOB_SPAN_PREFIX = "JOB:";
+
+    private final long slowerThanMicros;
+    private final boolean errors;
+    private final boolean bpmnErrors;
+    private final boolean incidents;
+    private final float probability;
+
+    /**
+     * @param slowerThan  null - duration is not checked
+     * @param probability 0.0 - 1.0, share of traces kept regardless of other rules
+     */
+    public TailSamplingRules(Duration slowerThan, boolean errors, boolean bpmnErrors, boolean incidents,
+                             float probability) {
+        if (probability < 0.0f || probability > 1.0f) {
+            throw new IllegalArgumentException("probability should be between 0.0 and 1.0: " + probability);
+        }
+        this.slowerThanMicros = slowerThan != null ? slowerThan.toNanos() / 1000 : 0L;
+        this.errors = errors;
+        this.bpmnErrors = bpmnErrors;
+        this.incidents = incidents;
+        this.probability = probability;
+    }
+
+    boolean keepRandomly() {
+        return probability > 0.0f && ThreadLocalRandom.current().nextFloat() < probability;
+    }
+
+    boolean keepSpan(MutableSpan span) {
+        Throwable error = span.error();
+        if (error == null && span.tag("error") == null) {
+            return false;
+        }
+        if (errors) {
+            return true;
+        }
+        if (bpmnErrors && error instanceof BpmnError) {
+            return true;
+        }
+        //retries at job start; failed last retry leaves job with no retries and opens incident
+        return incidents && span.name() != null && span.name().startsWith(JOB_SPAN_PREFIX)
+                && "1".equals(span.tag(JOB_RETRIES_TAG));
+    }
+
+    boolean keepDuration(long durationMicros) {
+        return slowerThanMicros > 0L && durationMicros >= slowerThanMicros;
+    }
+}
@@ -0,0 +1,292 @@
+package io.karchevskiy.camunda.zipkin.tail;
+
+import brave.handler.FinishedSpanHandler;
+import brave.handler.MutableSpan;
+import brave.propagation.TraceContext;
+import zipkin2.Span;
+import zipkin2.codec.SpanBytesDecoder;
+import zipkin2.codec.SpanBytesEncoder;
+import zipkin2.reporter.Reporter;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static io.karchevskiy.camunda.zipkin.impl.ProcessSpanDefinition.ROOT_DURATION_SPAN_PREFIX;
+import static io.karchevskiy.camunda.zipkin.impl.ProcessSpanDefinition.ROOT_SPAN_PREFIX;
+
+/**
+ * Tail sampling of root process traces. Buffer of trace is opened by flushed RPS span (root process start),
+ * spans finished on this node are held until RPD span (root process end), then reported to reporter or dropped
+ * by {@link TailSamplingRules}. Spans of trace finished after decision follow it.
+ *
+ * Buffered spans are proto3 encoded into one byte array per trace. Memory is bounded by total size of buffers,
+ * spans per trace and age of buffer: oldest buffers are decided early by rules known so far (errors, age
+ * over duration threshold) and counted as degraded.
+ *
+ * Should run before zipkin reporting handler: returned false hides span from it.
+ */
+public class TailSamplingSpanHandler extends FinishedSpanHandler {
+
+    public static final long DEFAULT_MAX_BUFFERED_BYTES = 64L * 1024 * 1024;
+    public static final int DEFAULT_MAX_SPANS_PER_TRACE = 10_000;
+    public static final Duration DEFAULT_MAX_AGE = Duration.ofHours(1);
+
+    private static final int DECISIONS_SIZE = 10_000;
+    private static final int MIN_SWEEP = 1024;
+
+    private final Logger log = Logger.getLogger(TailSamplingSpanHandler.class.getName());
+
+    private final TailSamplingRules rules;
+    private final Reporter<Span> reporter;
+    private final String localServiceName;
+    private final long maxBufferedBytes;
+    private final int maxSpansPerTrace;
+    private final long maxAgeNanos;
+
+    private final Map<Long, TraceBuffer> buffers = new ConcurrentHashMap<>();
+    /**
+     * Age index: buffers decided before older ones are removed by sweep, see {@link #sweepDecided()}
+     */
+    private final Queue<TraceBuffer> oldestFirst = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger closedSinceSweep = new AtomicInteger();
+    /**
+     * Decisions of last traces for their late spans: bounded by ring of decided trace ids, oldest is evicted
+     */
+    private final Map<Long, Boolean> decisions = new ConcurrentHashMap<>();
+    private final AtomicLongArray decided = new AtomicLongArray(DECISIONS_SIZE);
+    private final AtomicInteger nextDecided = new AtomicInteger();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final LongAdder kept = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder degraded = new LongAdder();
+
+    public TailSamplingSpanHandler(TailSamplingRules rules, Reporter<Span> reporter, String localServiceName) {
+        this(rules, reporter, localServiceName, DEFAULT_MAX_BUFFERED_BYTES, DEFAULT_MAX_SPANS_PER_TRACE,
+                DEFAULT_MAX_AGE);
+    }
+
+    public TailSamplingSpanHandler(TailSamplingRules rules, Reporter<Span> reporter, String localServiceName,
+                                   long maxBufferedBytes, int maxSpansPerTrace, Duration maxAge) {
+        if (maxBufferedBytes <= 0) throw new IllegalArgumentException("maxBufferedBytes <= 0");
+        if (maxSpansPerTrace <= 0) throw new IllegalArgumentException("maxSpansPerTrace <= 0");
+        this.rules = rules;
+        this.reporter = reporter;
+        this.localServiceName = localServiceName;
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.maxSpansPerTrace = maxSpansPerTrace;
+        this.maxAgeNanos = maxAge.toNanos();
+    }
+
+    @Override
+    public boolean handle(TraceContext context, MutableSpan span) {
+        Long traceId = context.traceId();
+        String name = span.name();
+        boolean rootStart = name != null && span.finishTimestamp() == 0L && name.startsWith(ROOT_SPAN_PREFIX);
+        TraceBuffer buffer = buffers.get(traceId);
+        if (buffer == null) {
+            if (!rootStart) {
+                Boolean decision = decision(traceId);
+                return decision == null || decision;
+            }
+            expire(System.nanoTime());
+            if (rules.keepRandomly()) {
+                decide(traceId, true);
+                return true;
+            }
+            TraceBuffer created = new TraceBuffer(traceId, System.nanoTime());
+            buffer = buffers.putIfAbsent(traceId, created);
+            if (buffer == null) {
+                buffer = created;
+                oldestFirst.add(created);
+            }
+        }
+
+        byte[] encoded = SpanBytesEncoder.PROTO3.encode(ZipkinSpans.convert(context, span, localServiceName));
+        byte[] report = null;
+        boolean decided;
+        boolean keep;
+        synchronized (buffer) {
+            decided = buffer.decided;
+            keep = buffer.keep;
+            if (!decided) {
+                buffer.append(encoded);
+                bufferedBytes.addAndGet(encoded.length);
+                if (rules.keepSpan(span)) {
+                    buffer.keep = true;
+                }
+                if (rootStart) {
+                    buffer.openRoots++;
+                } else if (name != null && span.finishTimestamp() != 0L && name.startsWith(ROOT_DURATION_SPAN_PREFIX)) {
+                    if (rules.keepDuration(span.finishTimestamp() - span.startTimestamp())) {
+                        buffer.keep = true;
+                    }
+                    if (--buffer.openRoots <= 0) {
+                        report = close(buffer, buffer.keep);
+                    }
+                } else if (buffer.spans >= maxSpansPerTrace) {
+                    report = closeEarly(buffer, System.nanoTime());
+                }
+            }
+        }
+        if (decided) {
+            return keep;
+        }
+        report(report);
+        while (bufferedBytes.get() > maxBufferedBytes) {
+            TraceBuffer oldest = oldestFirst.poll();
+            if (oldest == null) {
+                break;
+            }
+            synchronized (oldest) {
+                report = oldest.decided ? null : closeEarly(oldest, System.nanoTime());
+            }
+            report(report);
+        }
+        sweepDecided();
+        return false;
+    }
+
+    public long keptCount() {
+        return kept.sum();
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    public long degradedCount() {
+        return degraded.sum();
+    }
+
+    public long bufferedTraces() {
+        return buffers.size();
+    }
+
+    public long bufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    /**
+     * Buffers opened before now - max age
+     */
+    private void expire(long now) {
+        TraceBuffer oldest;
+        while ((oldest = oldestFirst.peek()) != null && (oldest.decided || now - oldest.openedAt > maxAgeNanos)) {
+            oldestFirst.remove(oldest);
+            byte[] report;
+            synchronized (oldest) {
+                report = oldest.decided ? null : closeEarly(oldest, now);
+            }
+            report(report);
+        }
+    }
+
+    /**
+     * Expiration stops at first live buffer, so buffers decided behind long running root process are removed here,
+     * once there are more of them than live buffers: index stays within twice of live buffers, amortized O(1)
+     */
+    private void sweepDecided() {
+        int closed = closedSinceSweep.get();
+        if (closed <= Math.max(MIN_SWEEP, buffers.size()) || !closedSinceSweep.compareAndSet(closed, 0)) {
+            return;
+        }
+        oldestFirst.removeIf(buffer -> buffer.decided);
+    }
+
+    int ageIndexSize() {
+        return oldestFirst.size();
+    }
+
+    /**
+     * Root process is still running, so its age is its duration so far
+     */
+    private byte[] closeEarly(TraceBuffer buffer, long now) {
+        degraded.increment();
+        return close(buffer, buffer.keep || rules.keepDuration((now - buffer.openedAt) / 1000));
+    }
+
+    /**
+     * Called with buffer lock held
+     *
+     * @return encoded spans to report; null, when trace is dropped
+     */
+    private byte[] close(TraceBuffer buffer, boolean keep) {
+        buffer.decided = true;
+        buffer.keep = keep;
+        buffers.remove(buffer.traceId, buffer);
+        closedSinceSweep.incrementAndGet();
+        bufferedBytes.addAndGet(-buffer.size);
+        decide(buffer.traceId, keep);
+        byte[] spans = keep ? Arrays.copyOf(buffer.bytes, buffer.size) : null;
+        buffer.bytes = null;
+        return spans;
+    }
+
+    private void decide(Long traceId, boolean keep) {
+        (keep ? kept : dropped).increment();
+        decisions.put(traceId, keep);
+        //trace id is never 0: empty slot
+        long evicted = decided.getAndSet(Math.floorMod(nextDecided.getAndIncrement(), DECISIONS_SIZE), traceId);
+        if (evicted != 0L && evicted != traceId) {
+            decisions.remove(evicted);
+        }
+    }
+
+    private Boolean decision(Long traceId) {
+        return decisions.get(traceId);
+    }
+
+    /**
+     * Outside of buffer lock: reporter may block, when its queue is full
+     */
+    private void report(byte[] spans) {
+        if (spans == null) {
+            return;
+        }
+        try {
+            for (Span span : SpanBytesDecoder.PROTO3.decodeList(spans)) {
+                reporter.report(span);
+            }
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, "Failed to report tail sampled trace", e);
+        }
+    }
+
+    private static final class TraceBuffer {
+        final Long traceId;
+        final long openedAt;
+        byte[] bytes = new byte[256];
+        int size;
+        int spans;
+        int openRoots;
+        boolean keep;
+        volatile boolean decided;
+
+        TraceBuffer(Long traceId, long openedAt) {
+            this.traceId = traceId;
+            this.openedAt = openedAt;
+        }
+
+        /**
+         * Proto3 encoded span is ListOfSpans with one element, so concatenation is a list
+         */
+        void append(byte[] span) {
+            if (size + span.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + span.length));
+            }
+            System.arraycopy(span, 0, bytes, size, span.length);
+            size += span.length;
+            spans++;
+        }
+    }
+}
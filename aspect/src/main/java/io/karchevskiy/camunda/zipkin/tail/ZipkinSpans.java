@@ -0,0 +1,53 @@
+package io.karchevskiy.camunda.zipkin.tail;
+
+import brave.handler.MutableSpan;
+import brave.propagation.TraceContext;
+import zipkin2.Endpoint;
+import zipkin2.Span;
+
+/**
+ * {@link MutableSpan} to zipkin span, same fields as reported by brave zipkin handler
+ */
+final class ZipkinSpans {
+
+    private ZipkinSpans() {
+    }
+
+    static Span convert(TraceContext context, MutableSpan span, String localServiceName) {
+        Span.Builder builder = Span.newBuilder()
+                .traceId(context.traceIdHigh(), context.traceId())
+                .parentId(context.parentIdAsLong())
+                .id(context.spanId())
+                .name(span.name())
+                .shared(span.shared() ? Boolean.TRUE : null)
+                .debug(context.debug() ? Boolean.TRUE : null);
+        long start = span.startTimestamp();
+        long finish = span.finishTimestamp();
+        builder.timestamp(start);
+        if (start != 0L && finish != 0L) {
+            builder.duration(Math.max(finish - start, 1L));
+        }
+        if (span.kind() != null) {
+            builder.kind(Span.Kind.valueOf(span.kind().name()));
+        }
+        builder.localEndpoint(Endpoint.newBuilder()
+                .serviceName(span.localServiceName() != null ? span.localServiceName() : localServiceName)
+                .ip(span.localIp())
+                .port(span.localPort())
+                .build());
+        if (span.remoteServiceName() != null || span.remoteIp() != null) {
+            builder.remoteEndpoint(Endpoint.newBuilder()
+                    .serviceName(span.remoteServiceName())
+                    .ip(span.remoteIp())
+                    .port(span.remotePort())
+                    .build());
+        }
+        span.forEachTag(Span.Builder::putTag, builder);
+        span.forEachAnnotation(Span.Builder::addAnnotation, builder);
+        Throwable error = span.error();
+        if (error != null && span.tag("error") == null) {
+            builder.putTag("error", error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName());
+        }
+        return builder.build();
+    }
+}
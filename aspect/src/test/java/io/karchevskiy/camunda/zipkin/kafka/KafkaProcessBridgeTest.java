@@ -0,0 +1,144 @@
+package io.karchevskiy.camunda.zipkin.kafka;
+
+import brave.Tracing;
+import brave.kafka.clients.KafkaTracing;
+import brave.sampler.Sampler;
+import io.karchevskiy.camunda.zipkin.impl.ProcessDefinitionSampler;
+import io.karchevskiy.camunda.zipkin.impl.TraceContextCache;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.ProcessEngineException;
+import org.camunda.bpm.engine.RuntimeService;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.interceptor.Command;
+import org.camunda.bpm.engine.impl.interceptor.CommandExecutor;
+import org.camunda.bpm.engine.runtime.ProcessInstance;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class KafkaProcessBridgeTest {
+
+    private static final String TOPIC = "orders";
+    private static final TopicPartition PARTITION_0 = new TopicPartition(TOPIC, 0);
+    private static final TopicPartition PARTITION_1 = new TopicPartition(TOPIC, 1);
+
+    private final Tracing tracing = Tracing.newBuilder().sampler(Sampler.NEVER_SAMPLE).build();
+    private final MockConsumer<String, String> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+    private final RuntimeService runtimeService = mock(RuntimeService.class);
+    private ProcessEngine processEngine;
+
+    @Before
+    public void setUp() {
+        ProcessEngineConfigurationImpl configuration = mock(ProcessEngineConfigurationImpl.class);
+        when(configuration.getCommandExecutorTxRequiresNew()).thenReturn(new CommandExecutor() {
+            @Override
+            public <T> T execute(Command<T> command) {
+                return command.execute(null);
+            }
+        });
+        processEngine = mock(ProcessEngine.class);
+        when(processEngine.getProcessEngineConfiguration()).thenReturn(configuration);
+        when(processEngine.getRuntimeService()).thenReturn(runtimeService);
+        ProcessInstance processInstance = mock(ProcessInstance.class);
+        when(processInstance.isEnded()).thenReturn(true);
+        when(runtimeService.startProcessInstanceByKey(anyString(), anyString(), anyMap())).thenReturn(processInstance);
+
+        consumer.assign(Arrays.asList(PARTITION_0, PARTITION_1));
+        Map<TopicPartition, Long> beginningOffsets = new HashMap<>();
+        beginningOffsets.put(PARTITION_0, 0L);
+        beginningOffsets.put(PARTITION_1, 0L);
+        consumer.updateBeginningOffsets(beginningOffsets);
+    }
+
+    @After
+    public void tearDown() {
+        tracing.close();
+    }
+
+    @Test
+    public void commitsAllProcessedRecords() {
+        add(PARTITION_0, 5);
+
+        bridge(record -> ProcessCommand.start("order", record.value(), null)).process(consumer, poll());
+
+        assertEquals(5, consumer.committed(PARTITION_0).offset());
+        assertEquals(5, consumer.position(PARTITION_0));
+    }
+
+    @Test
+    public void seeksBackToRecordFailingAlone() {
+        add(PARTITION_0, 5);
+        when(runtimeService.startProcessInstanceByKey(eq("order"), eq("3"), anyMap()))
+                .thenThrow(new ProcessEngineException("failed"));
+        KafkaProcessBridge<String, String> bridge =
+                bridge(record -> ProcessCommand.start("order", record.value(), null));
+
+        try {
+            bridge.process(consumer, poll());
+            fail("record 3 fails");
+        } catch (ProcessEngineException expected) {
+            //rethrown
+        }
+
+        //batch [2, 3] rolled back, 2 retried alone and committed, 3 and 4 are polled again
+        assertEquals(3, consumer.committed(PARTITION_0).offset());
+        assertEquals(3, consumer.position(PARTITION_0));
+        assertEquals(2, bridge.rollbackCount());
+    }
+
+    @Test
+    public void seeksAllPartitionsBackWhenMapperFails() {
+        add(PARTITION_0, 2);
+        add(PARTITION_1, 2);
+
+        try {
+            bridge(record -> {
+                throw new IllegalArgumentException("unreadable");
+            }).process(consumer, poll());
+            fail("mapper fails");
+        } catch (IllegalArgumentException expected) {
+            //rethrown
+        }
+
+        assertNull(consumer.committed(PARTITION_0));
+        assertNull(consumer.committed(PARTITION_1));
+        assertEquals(0, consumer.position(PARTITION_0));
+        assertEquals(0, consumer.position(PARTITION_1));
+    }
+
+    private KafkaProcessBridge<String, String> bridge(Function<ConsumerRecord<String, String>, ProcessCommand> mapper) {
+        return new KafkaProcessBridge<>(processEngine, KafkaTracing.create(tracing),
+                ProcessDefinitionSampler.DEFERRING, new TraceContextCache(), mapper, 2);
+    }
+
+    private void add(TopicPartition partition, int count) {
+        for (int offset = 0; offset < count; offset++) {
+            consumer.addRecord(new ConsumerRecord<>(TOPIC, partition.partition(), offset, null,
+                    String.valueOf(offset)));
+        }
+    }
+
+    private ConsumerRecords<String, String> poll() {
+        return consumer.poll(Duration.ZERO);
+    }
+}
@@ -0,0 +1,108 @@
+package io.karchevskiy.camunda.zipkin.reporter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpanSpoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsRecordsAcrossRingEnd() throws IOException {
+        try (SpanSpool spool = new SpanSpool(file(), 1024)) {
+            //several rounds of ring with varying record sizes: wrap markers and tails shorter than length
+            for (int i = 0; i < 50; i++) {
+                byte[] span = span(i, 100 + i * 37 % 150);
+                assertEquals(0, spool.append(span));
+                List<byte[]> spans = new ArrayList<>();
+                long end = spool.peek(spans, 10, Integer.MAX_VALUE);
+                assertEquals(1, spans.size());
+                assertArrayEquals(span, spans.get(0));
+                spool.commit(end);
+                assertTrue(spool.isEmpty());
+            }
+        }
+    }
+
+    @Test
+    public void dropsOldestRecordsWhenFull() throws IOException {
+        try (SpanSpool spool = new SpanSpool(file(), 1024)) {
+            int dropped = 0;
+            for (int i = 0; i < 4; i++) {
+                dropped += spool.append(span(i, 300));
+            }
+            //4th record does not fit till ring end and is written at ring start over the 1st one
+            assertEquals(1, dropped);
+            assertSpans(spool, span(1, 300), span(2, 300), span(3, 300));
+
+            assertEquals("larger than ring", 1, spool.append(span(4, 1021)));
+            assertSpans(spool, span(1, 300), span(2, 300), span(3, 300));
+        }
+    }
+
+    @Test
+    public void commitOfDroppedRecordsKeepsNewer() throws IOException {
+        try (SpanSpool spool = new SpanSpool(file(), 1024)) {
+            spool.append(span(0, 300));
+            spool.append(span(1, 300));
+            long end = spool.peek(new ArrayList<>(), 10, Integer.MAX_VALUE);
+            //dropped while batch was sent
+            assertEquals(0, spool.append(span(2, 300)));
+            assertEquals(1, spool.append(span(3, 300)));
+            spool.commit(end);
+            assertSpans(spool, span(2, 300), span(3, 300));
+        }
+    }
+
+    @Test
+    public void resumesSpooledRecordsAfterReopen() throws IOException {
+        Path path = file();
+        try (SpanSpool spool = new SpanSpool(path, 4096)) {
+            for (int i = 0; i < 3; i++) {
+                spool.append(span(i, 200));
+            }
+            List<byte[]> first = new ArrayList<>();
+            spool.commit(spool.peek(first, 1, Integer.MAX_VALUE));
+        }
+        try (SpanSpool spool = new SpanSpool(path, 4096)) {
+            assertEquals(2 * (4 + 200), spool.size());
+            assertSpans(spool, span(1, 200), span(2, 200));
+            assertEquals(0, spool.append(span(3, 200)));
+            assertSpans(spool, span(1, 200), span(2, 200), span(3, 200));
+        }
+        try (SpanSpool spool = new SpanSpool(path, 8192)) {
+            assertTrue("other capacity: spool is reset", spool.isEmpty());
+        }
+    }
+
+    private Path file() throws IOException {
+        return folder.newFolder().toPath().resolve("spans.spool");
+    }
+
+    private static void assertSpans(SpanSpool spool, byte[]... expected) {
+        List<byte[]> spans = new ArrayList<>();
+        spool.peek(spans, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        assertEquals(expected.length, spans.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(expected[i], spans.get(i));
+        }
+    }
+
+    private static byte[] span(int id, int length) {
+        byte[] span = new byte[length];
+        Arrays.fill(span, (byte) id);
+        return span;
+    }
+}
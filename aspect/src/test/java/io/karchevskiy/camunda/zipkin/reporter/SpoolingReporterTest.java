@@ -0,0 +1,175 @@
+package io.karchevskiy.camunda.zipkin.reporter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import zipkin2.Call;
+import zipkin2.Callback;
+import zipkin2.Span;
+import zipkin2.codec.Encoding;
+import zipkin2.codec.SpanBytesDecoder;
+import zipkin2.reporter.Sender;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SpoolingReporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsSpansUntilCollectorAcceptsThem() throws IOException {
+        FakeSender sender = new FakeSender();
+        sender.failing = true;
+        try (SpoolingReporter reporter = reporter(sender, 64 * 1024)) {
+            Span span = span(1);
+            reporter.report(span);
+            try {
+                reporter.flush();
+                fail("collector is down");
+            } catch (IOException expected) {
+                //stays in spool
+            }
+            assertEquals(0, reporter.sentCount());
+            assertTrue(reporter.spooledBytes() > 0);
+
+            sender.failing = false;
+            reporter.flush();
+            assertEquals(1, reporter.sentCount());
+            assertEquals(0, reporter.spooledBytes());
+            assertEquals(1, sender.sent().size());
+            assertEquals(span, sender.sent().get(0));
+        }
+    }
+
+    @Test
+    public void countsSpansDroppedWhileCollectorIsDown() throws IOException {
+        FakeSender sender = new FakeSender();
+        sender.failing = true;
+        try (SpoolingReporter reporter = reporter(sender, 1024)) {
+            for (int i = 1; i <= 50; i++) {
+                reporter.report(span(i));
+            }
+            assertEquals(50, reporter.spooledCount());
+            assertTrue(reporter.droppedCount() > 0);
+
+            sender.failing = false;
+            reporter.flush();
+            List<Span> sent = sender.sent();
+            assertEquals(50 - reporter.droppedCount(), sent.size());
+            assertEquals(sent.size(), reporter.sentCount());
+            //oldest are dropped
+            assertEquals(span(50), sent.get(sent.size() - 1));
+        }
+    }
+
+    @Test
+    public void sendsSpansSpooledBeforeRestart() throws IOException {
+        Path path = folder.newFolder().toPath().resolve("spans.spool");
+        FakeSender down = new FakeSender();
+        down.failing = true;
+        try (SpoolingReporter reporter = reporter(down, path, 64 * 1024)) {
+            reporter.report(span(1));
+            reporter.report(span(2));
+        }
+
+        FakeSender up = new FakeSender();
+        try (SpoolingReporter reporter = reporter(up, path, 64 * 1024)) {
+            reporter.flush();
+            List<Span> sent = up.sent();
+            assertEquals(2, sent.size());
+            assertEquals(span(1), sent.get(0));
+            assertEquals(span(2), sent.get(1));
+        }
+    }
+
+    private SpoolingReporter reporter(Sender sender, int size) throws IOException {
+        return reporter(sender, folder.newFolder().toPath().resolve("spans.spool"), size);
+    }
+
+    private static SpoolingReporter reporter(Sender sender, Path path, int size) throws IOException {
+        return new SpoolingReporter(sender, path, size, 10, Duration.ofMillis(10), Duration.ofMillis(100));
+    }
+
+    private static Span span(int id) {
+        return Span.newBuilder()
+                .traceId("463ac35c9f6413ad")
+                .id(id)
+                .name("RPS:test")
+                .timestamp(1472470996199000L + id)
+                .duration(207000L)
+                .build();
+    }
+
+    /**
+     * Collector stand-in: accepts json batches, unless failing
+     */
+    static final class FakeSender extends Sender {
+
+        volatile boolean failing;
+        private final List<byte[]> messages = new ArrayList<>();
+
+        @Override
+        public Encoding encoding() {
+            return Encoding.JSON;
+        }
+
+        @Override
+        public int messageMaxBytes() {
+            return 500_000;
+        }
+
+        @Override
+        public int messageSizeInBytes(List<byte[]> spans) {
+            return encoding().listSizeInBytes(spans);
+        }
+
+        @Override
+        public Call<Void> sendSpans(List<byte[]> spans) {
+            return new Call.Base<Void>() {
+                @Override
+                protected Void doExecute() throws IOException {
+                    if (failing) {
+                        throw new IOException("collector is down");
+                    }
+                    synchronized (messages) {
+                        messages.addAll(spans);
+                    }
+                    return null;
+                }
+
+                @Override
+                protected void doEnqueue(Callback<Void> callback) {
+                    try {
+                        callback.onSuccess(doExecute());
+                    } catch (IOException e) {
+                        callback.onError(e);
+                    }
+                }
+
+                @Override
+                public Call<Void> clone() {
+                    return sendSpans(spans);
+                }
+            };
+        }
+
+        List<Span> sent() {
+            List<Span> sent = new ArrayList<>();
+            synchronized (messages) {
+                for (byte[] span : messages) {
+                    sent.add(SpanBytesDecoder.JSON_V2.decodeOne(span));
+                }
+            }
+            return sent;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package io.karchevskiy.camunda.zipkin.tail;
+
+import brave.handler.MutableSpan;
+import brave.propagation.TraceContext;
+import org.junit.Test;
+import zipkin2.Span;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.karchevskiy.camunda.zipkin.impl.ProcessSpanDefinition.ROOT_DURATION_SPAN_PREFIX;
+import static io.karchevskiy.camunda.zipkin.impl.ProcessSpanDefinition.ROOT_SPAN_PREFIX;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TailSamplingSpanHandlerTest {
+
+    private static final long START = 1_500_000_000_000_000L;
+
+    private final List<Span> reported = new ArrayList<>();
+
+    @Test
+    public void keepsTraceWithError() {
+        TailSamplingSpanHandler handler = handler(null, TailSamplingSpanHandler.DEFAULT_MAX_SPANS_PER_TRACE);
+
+        assertFalse(handler.handle(context(1L, 1L), rootStart()));
+        MutableSpan delegate = span("JD: charge", 10L);
+        delegate.error(new IllegalStateException("declined"));
+        assertFalse(handler.handle(context(1L, 2L), delegate));
+        assertFalse(handler.handle(context(1L, 3L), rootDuration(20L)));
+
+        assertEquals(3, reported.size());
+        assertEquals(1, handler.keptCount());
+        assertEquals(0, handler.bufferedTraces());
+        assertEquals(0, handler.bufferedBytes());
+        //late span follows decision
+        assertTrue(handler.handle(context(1L, 4L), span("JD: late", 1L)));
+    }
+
+    @Test
+    public void dropsTraceMatchingNoRule() {
+        TailSamplingSpanHandler handler = handler(Duration.ofSeconds(1),
+                TailSamplingSpanHandler.DEFAULT_MAX_SPANS_PER_TRACE);
+
+        handler.handle(context(1L, 1L), rootStart());
+        handler.handle(context(1L, 2L), span("JD: charge", 10L));
+        handler.handle(context(1L, 3L), rootDuration(20L));
+
+        assertTrue(reported.isEmpty());
+        assertEquals(1, handler.droppedCount());
+        assertEquals(0, handler.bufferedBytes());
+        assertFalse(handler.handle(context(1L, 4L), span("JD: late", 1L)));
+    }
+
+    @Test
+    public void keepsSlowTrace() {
+        TailSamplingSpanHandler handler = handler(Duration.ofSeconds(1),
+                TailSamplingSpanHandler.DEFAULT_MAX_SPANS_PER_TRACE);
+
+        handler.handle(context(1L, 1L), rootStart());
+        handler.handle(context(1L, 2L), rootDuration(2_000_000L));
+
+        assertEquals(2, reported.size());
+        assertEquals(1, handler.keptCount());
+    }
+
+    @Test
+    public void decidesTraceEarlyOverSpanLimit() {
+        TailSamplingSpanHandler handler = handler(null, 2);
+
+        handler.handle(context(1L, 1L), rootStart());
+        handler.handle(context(1L, 2L), span("JD: first", 1L));
+
+        assertEquals(1, handler.degradedCount());
+        assertEquals(1, handler.droppedCount());
+        assertEquals(0, handler.bufferedTraces());
+        assertFalse(handler.handle(context(1L, 3L), rootDuration(20L)));
+    }
+
+    @Test
+    public void spansOfOtherNodesAreNotBuffered() {
+        TailSamplingSpanHandler handler = handler(null, TailSamplingSpanHandler.DEFAULT_MAX_SPANS_PER_TRACE);
+
+        assertTrue(handler.handle(context(1L, 2L), span("JD: charge", 10L)));
+        assertEquals(0, handler.bufferedTraces());
+    }
+
+    @Test
+    public void longRunningTraceDoesNotPinDecidedBuffers() {
+        TailSamplingSpanHandler handler = handler(null, TailSamplingSpanHandler.DEFAULT_MAX_SPANS_PER_TRACE);
+        handler.handle(context(1L, 1L), rootStart());
+
+        for (long traceId = 2L; traceId < 10_000L; traceId++) {
+            handler.handle(context(traceId, 1L), rootStart());
+            handler.handle(context(traceId, 2L), rootDuration(20L));
+        }
+
+        assertEquals(1, handler.bufferedTraces());
+        //long running buffer and buffers decided since last sweep
+        assertTrue(handler.ageIndexSize() <= 1 + 1025);
+    }
+
+    private TailSamplingSpanHandler handler(Duration slowerThan, int maxSpansPerTrace) {
+        TailSamplingRules rules = new TailSamplingRules(slowerThan, true, true, true, 0.0f);
+        return new TailSamplingSpanHandler(rules, reported::add, "camunda",
+                TailSamplingSpanHandler.DEFAULT_MAX_BUFFERED_BYTES, maxSpansPerTrace, Duration.ofHours(1));
+    }
+
+    private static TraceContext context(long traceId, long spanId) {
+        return TraceContext.newBuilder().traceId(traceId).spanId(spanId).sampled(true).build();
+    }
+
+    /**
+     * Flushed RPS span: started, never finished
+     */
+    private static MutableSpan rootStart() {
+        MutableSpan span = new MutableSpan();
+        span.name(ROOT_SPAN_PREFIX + "order");
+        span.startTimestamp(START);
+        return span;
+    }
+
+    private static MutableSpan rootDuration(long durationMicros) {
+        return span(ROOT_DURATION_SPAN_PREFIX + "order", durationMicros);
+    }
+
+    private static MutableSpan span(String name, long durationMicros) {
+        MutableSpan span = new MutableSpan();
+        span.name(name);
+        span.startTimestamp(START);
+        span.finishTimestamp(START + durationMicros);
+        return span;
+    }
+}
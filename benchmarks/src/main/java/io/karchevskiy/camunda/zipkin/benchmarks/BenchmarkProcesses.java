@@ -0,0 +1,40 @@
+package io.karchevskiy.camunda.zipkin.benchmarks;
+
+import io.karchevskiy.camunda.zipkin.benchmarks.delegate.NoopDelegate;
+import org.camunda.bpm.engine.RepositoryService;
+import org.camunda.bpm.model.bpmn.Bpmn;
+
+/**
+ * Minimal models, every one isolates single traced element.
+ */
+public final class BenchmarkProcesses {
+
+    /** start - end: process start and process end */
+    public static final String START_END = "startEnd";
+    /** start - receive task: process start only, instance stays in wait state */
+    public static final String WAIT_STATE = "waitState";
+    /** start - service task with {@link NoopDelegate} - end */
+    public static final String JAVA_DELEGATE = "javaDelegate";
+    /** start - call activity of {@link #START_END} - end */
+    public static final String CALL_ACTIVITY = "callActivity";
+    /** start - service task with {@link io.karchevskiy.camunda.zipkin.benchmarks.connector.NoopConnector} - end */
+    public static final String CONNECTOR = "connector";
+
+    private BenchmarkProcesses() {
+    }
+
+    public static void deploy(RepositoryService repositoryService) {
+        repositoryService.createDeployment()
+                .name("benchmark")
+                .addModelInstance(START_END + ".bpmn", Bpmn.createExecutableProcess(START_END)
+                        .startEvent().endEvent().done())
+                .addModelInstance(WAIT_STATE + ".bpmn", Bpmn.createExecutableProcess(WAIT_STATE)
+                        .startEvent().receiveTask().endEvent().done())
+                .addModelInstance(JAVA_DELEGATE + ".bpmn", Bpmn.createExecutableProcess(JAVA_DELEGATE)
+                        .startEvent().serviceTask().camundaClass(NoopDelegate.class.getName()).endEvent().done())
+                .addModelInstance(CALL_ACTIVITY + ".bpmn", Bpmn.createExecutableProcess(CALL_ACTIVITY)
+                        .startEvent().callActivity().calledElement(START_END).endEvent().done())
+                .addClasspathResource("processes/" + CONNECTOR + ".bpmn")
+                .deploy();
+    }
+}
@@ -0,0 +1,49 @@
+package io.karchevskiy.camunda.zipkin.benchmarks;
+
+import org.aspectj.weaver.loadtime.Agent;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.net.URISyntaxException;
+
+import static io.karchevskiy.camunda.zipkin.benchmarks.EngineState.*;
+
+/**
+ * Runs benchmarks matching first argument (regexp, all by default) twice:
+ * tracingMode=aspect in forks with -javaagent:aspectjweaver,
+ * tracingMode=none and tracingMode=plugin in forks without agent, so baseline pays no weaving at all.
+ * Benchmarks without {@link EngineState} are excluded from the second pass.
+ * Every run is profiled with gc profiler: gc.alloc.rate.norm is allocation per operation.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, URISyntaxException {
+        String include = args.length > 0 ? args[0] : ".*";
+
+        new Runner(options(include)
+                .param("tracingMode", NONE, PLUGIN)
+                .build()).run();
+
+        new Runner(options(include)
+                .exclude(StartProcessDispatchBenchmark.class.getSimpleName())
+                .exclude(KafkaConsumerPollBenchmark.class.getSimpleName())
+                .exclude(KafkaProducerSendBenchmark.class.getSimpleName())
+                .param("tracingMode", ASPECT)
+                .jvmArgsAppend("-javaagent:" + weaverJar())
+                .build()).run();
+    }
+
+    private static ChainedOptionsBuilder options(String include) {
+        return new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class);
+    }
+
+    public static String weaverJar() throws URISyntaxException {
+        return new File(Agent.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getAbsolutePath();
+    }
+}
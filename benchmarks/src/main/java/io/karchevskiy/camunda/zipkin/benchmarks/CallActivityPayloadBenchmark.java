@@ -0,0 +1,53 @@
+package io.karchevskiy.camunda.zipkin.benchmarks;
+
+import org.camunda.bpm.engine.runtime.ProcessInstance;
+import org.camunda.bpm.engine.variable.VariableMap;
+import org.camunda.bpm.engine.variable.Variables;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static io.karchevskiy.camunda.zipkin.benchmarks.BenchmarkProcesses.CALL_ACTIVITY;
+
+/**
+ * Call activity start latency against size of parent process variables.
+ * Tracing reads only trace variable of parent, so traced latency should not grow with payload
+ * faster than untraced one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CallActivityPayloadBenchmark {
+
+    @Param({"0", "65536", "1048576"})
+    public int payloadBytes;
+
+    private VariableMap variables;
+
+    @Setup
+    public void setUp() {
+        variables = Variables.createVariables();
+        if (payloadBytes > 0) {
+            variables.putValue("payload", Variables.byteArrayValue(new byte[payloadBytes]));
+        }
+    }
+
+    @Benchmark
+    public ProcessInstance callActivity(EngineState engine) {
+        //start mutates passed map (trace variable is added): fresh copy per invocation, payload itself is shared
+        return engine.runtimeService.startProcessInstanceByKey(CALL_ACTIVITY, Variables.fromMap(variables));
+    }
+}
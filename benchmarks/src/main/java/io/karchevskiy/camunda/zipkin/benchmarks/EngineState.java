@@ -0,0 +1,94 @@
+package io.karchevskiy.camunda.zipkin.benchmarks;
+
+import brave.Tracing;
+import brave.sampler.Sampler;
+import io.karchevskiy.camunda.zipkin.CamundaSlueuthContextInjectingAspect;
+import io.karchevskiy.camunda.zipkin.impl.TraceContextCache;
+import io.karchevskiy.camunda.zipkin.impl.TracingScopeManager;
+import io.karchevskiy.camunda.zipkin.plugin.TracingProcessEnginePlugin;
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.ProcessEngineConfiguration;
+import org.camunda.bpm.engine.RuntimeService;
+import org.camunda.bpm.engine.impl.cfg.StandaloneInMemProcessEngineConfiguration;
+import org.camunda.connect.plugin.impl.ConnectProcessEnginePlugin;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import zipkin2.codec.SpanBytesEncoder;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedded engine on in-memory H2, one per fork.
+ *
+ * tracingMode:
+ * none - no tracing, baseline
+ * aspect - LTW aspect, fork must run with -javaagent:aspectjweaver (see {@link BenchmarkRunner})
+ * plugin - {@link TracingProcessEnginePlugin}
+ *
+ * Finished spans are encoded to json v2 and dropped, so reporting cost is included without network.
+ */
+@State(Scope.Benchmark)
+public class EngineState {
+
+    public static final String NONE = "none";
+    public static final String ASPECT = "aspect";
+    public static final String PLUGIN = "plugin";
+
+    private static final AtomicLong DATABASES = new AtomicLong();
+
+    @Param({NONE, ASPECT, PLUGIN})
+    public String tracingMode;
+
+    @Param({"sampled", "unsampled"})
+    public String sampling;
+
+    public Tracing tracing;
+    public ProcessEngine processEngine;
+    public RuntimeService runtimeService;
+    public final AtomicLong reportedSpans = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        StandaloneInMemProcessEngineConfiguration configuration = new StandaloneInMemProcessEngineConfiguration();
+        configuration.setJdbcUrl("jdbc:h2:mem:benchmark-" + DATABASES.incrementAndGet() + ";DB_CLOSE_DELAY=-1");
+        configuration.setDatabaseSchemaUpdate(ProcessEngineConfiguration.DB_SCHEMA_UPDATE_CREATE_DROP);
+        configuration.setHistory(ProcessEngineConfiguration.HISTORY_NONE);
+        configuration.setJobExecutorActivate(false);
+        configuration.setMetricsEnabled(false);
+        configuration.getProcessEnginePlugins().add(new ConnectProcessEnginePlugin());
+
+        if (!NONE.equals(tracingMode)) {
+            tracing = Tracing.newBuilder()
+                    .localServiceName("benchmark")
+                    .sampler("sampled".equals(sampling) ? Sampler.ALWAYS_SAMPLE : Sampler.NEVER_SAMPLE)
+                    .spanReporter(span -> {
+                        SpanBytesEncoder.JSON_V2.encode(span);
+                        reportedSpans.incrementAndGet();
+                    })
+                    .build();
+            TraceContextCache traceContextCache = new TraceContextCache();
+            TracingScopeManager scopeManager = new TracingScopeManager(tracing, false);
+            if (ASPECT.equals(tracingMode)) {
+                new CamundaSlueuthContextInjectingAspect(tracing, traceContextCache, scopeManager);
+            } else {
+                configuration.getProcessEnginePlugins()
+                        .add(new TracingProcessEnginePlugin(tracing, traceContextCache, scopeManager));
+            }
+        }
+
+        processEngine = configuration.buildProcessEngine();
+        runtimeService = processEngine.getRuntimeService();
+        BenchmarkProcesses.deploy(processEngine.getRepositoryService());
+    }
+
+    @TearDown
+    public void tearDown() {
+        processEngine.close();
+        if (tracing != null) {
+            tracing.close();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package io.karchevskiy.camunda.zipkin.benchmarks;
+
+import brave.Tracing;
+import brave.kafka.clients.ConsumerSpanGranularity;
+import brave.kafka.clients.KafkaTracing;
+import brave.propagation.B3SingleFormat;
+import brave.propagation.TraceContext;
+import brave.sampler.Sampler;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import zipkin2.reporter.Reporter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * TracingConsumer.poll of {@link #RECORDS} records in 4 partitions, results are per record:
+ * ops/s - records/s, gc.alloc.rate.norm - bytes allocated per record.
+ * fastPath=false - extractor and injector per record (previous implementation), true - B3 headers parsed
+ * from bytes. headers: b3 - upstream context in b3 single header, multi - X-B3-* headers, none - no context,
+ * unsampled - unsampled upstream context in b3 single header. pollRaw - consumer without tracing.
+ * granularity: consumer span per record, per partition batch or per poll.
+ * Headers changed by poll are restored before every invocation, outside of measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KafkaConsumerPollBenchmark {
+
+    static final int RECORDS = 1000;
+    static final String TOPIC = "events";
+
+    @Param({"false", "true"})
+    public boolean fastPath;
+
+    @Param({"b3", "multi", "none", "unsampled"})
+    public String headers;
+
+    @Param({"RECORD", "PARTITION", "POLL"})
+    public ConsumerSpanGranularity granularity;
+
+    private Tracing tracing;
+    private Consumer<String, String> consumer;
+    private Consumer<String, String> rawConsumer;
+    private List<ConsumerRecord<String, String>> records;
+    private List<Header[]> originalHeaders;
+
+    @Setup
+    public void setUp() {
+        tracing = Tracing.newBuilder()
+                .localServiceName("kafka-poll-benchmark")
+                .sampler(Sampler.ALWAYS_SAMPLE)
+                .spanReporter(Reporter.NOOP)
+                .build();
+        Map<TopicPartition, List<ConsumerRecord<String, String>>> byPartition = new HashMap<>();
+        records = new ArrayList<>(RECORDS);
+        originalHeaders = new ArrayList<>(RECORDS);
+        for (int i = 0; i < RECORDS; i++) {
+            int partition = i % 4;
+            Headers recordHeaders = new RecordHeaders(upstreamHeaders());
+            ConsumerRecord<String, String> record = new ConsumerRecord<>(TOPIC, partition, i, 0L,
+                    TimestampType.CREATE_TIME, 0L, 8, 64, "key-" + i, "value-" + i, recordHeaders);
+            byPartition.computeIfAbsent(new TopicPartition(TOPIC, partition), p -> new ArrayList<>()).add(record);
+            records.add(record);
+            originalHeaders.add(recordHeaders.toArray());
+        }
+        ConsumerRecords<String, String> polled = new ConsumerRecords<>(byPartition);
+        rawConsumer = new FixedRecordsConsumer(polled);
+        consumer = KafkaTracing.newBuilder(tracing)
+                .b3HeaderFastPath(fastPath)
+                .consumerSpanGranularity(granularity)
+                .build()
+                .consumer(rawConsumer);
+    }
+
+    @Setup(Level.Invocation)
+    public void restoreHeaders() {
+        for (int i = 0; i < RECORDS; i++) {
+            Headers recordHeaders = records.get(i).headers();
+            for (Header header : recordHeaders.toArray()) {
+                recordHeaders.remove(header.key());
+            }
+            for (Header header : originalHeaders.get(i)) {
+                recordHeaders.add(header);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        tracing.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public ConsumerRecords<String, String> poll() {
+        return consumer.poll(Duration.ZERO);
+    }
+
+    /**
+     * Baseline for unsampled traffic: delegate without tracing
+     */
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public ConsumerRecords<String, String> pollRaw() {
+        return rawConsumer.poll(Duration.ZERO);
+    }
+
+    private Header[] upstreamHeaders() {
+        TraceContext context = TraceContext.newBuilder()
+                .traceIdHigh(ThreadLocalRandom.current().nextLong())
+                .traceId(ThreadLocalRandom.current().nextLong())
+                .parentId(ThreadLocalRandom.current().nextLong() | 1L)
+                .spanId(ThreadLocalRandom.current().nextLong() | 1L)
+                .sampled(!"unsampled".equals(headers))
+                .build();
+        Header contentType = new RecordHeader("contentType", "application/json".getBytes(UTF_8));
+        switch (headers) {
+            case "b3":
+            case "unsampled":
+                return new Header[]{contentType,
+                        new RecordHeader("b3", B3SingleFormat.writeB3SingleFormatAsBytes(context))};
+            case "multi":
+                return new Header[]{contentType,
+                        new RecordHeader("X-B3-TraceId", context.traceIdString().getBytes(UTF_8)),
+                        new RecordHeader("X-B3-SpanId", context.spanIdString().getBytes(UTF_8)),
+                        new RecordHeader("X-B3-ParentSpanId", context.parentIdString().getBytes(UTF_8)),
+                        new RecordHeader("X-B3-Sampled", "1".getBytes(UTF_8))};
+            default:
+                return new Header[]{contentType};
+        }
+    }
+
+    /**
+     * Returns the same records on every poll
+     */
+    static class FixedRecordsConsumer extends MockConsumer<String, String> {
+
+        private final ConsumerRecords<String, String> records;
+
+        FixedRecordsConsumer(ConsumerRecords<String, String> records) {
+            super(OffsetResetStrategy.EARLIEST);
+            this.records = records;
+        }
+
+        @Override
+        public synchronized ConsumerRecords<String, String> poll(long timeout) {
+            return records;
+        }
+
+        @Override
+        public synchronized ConsumerRecords<String, String> poll(Duration timeout) {
+            return records;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package io.karchevskiy.camunda.zipkin.benchmarks;
+
+import brave.ScopedSpan;
+import brave.Tracing;
+import brave.kafka.clients.KafkaTracing;
+import brave.sampler.Sampler;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import zipkin2.reporter.Reporter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TracingProducer.send of {@link #RECORDS} records, results are per record:
+ * ops/s - records/s, gc.alloc.rate.norm - bytes allocated per record.
+ * fastPath=false - injector with String headers (previous implementation), true - b3 header written as bytes.
+ * parent: scope - records sent inside one sampled span, so they share the trace, none - new trace per record,
+ * unsampled - inside one unsampled span. Every record is new with empty headers, as in applications.
+ * sendRaw - producer without tracing, baseline for unsampled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KafkaProducerSendBenchmark {
+
+    static final int RECORDS = 1000;
+    static final String TOPIC = "events";
+
+    @Param({"false", "true"})
+    public boolean fastPath;
+
+    @Param({"scope", "none", "unsampled"})
+    public String parent;
+
+    private Tracing tracing;
+    private Producer<String, String> producer;
+    private Producer<String, String> rawProducer;
+
+    @Setup
+    public void setUp() {
+        tracing = Tracing.newBuilder()
+                .localServiceName("kafka-send-benchmark")
+                .sampler("unsampled".equals(parent) ? Sampler.NEVER_SAMPLE : Sampler.ALWAYS_SAMPLE)
+                .spanReporter(Reporter.NOOP)
+                .build();
+        rawProducer = new CompletingProducer();
+        producer = KafkaTracing.newBuilder(tracing)
+                .b3HeaderFastPath(fastPath)
+                .build()
+                .producer(rawProducer);
+    }
+
+    @TearDown
+    public void tearDown() {
+        tracing.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void send(Blackhole blackhole) {
+        send(producer, blackhole);
+    }
+
+    /**
+     * Baseline for unsampled traffic: delegate without tracing, inside the same scope
+     */
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void sendRaw(Blackhole blackhole) {
+        send(rawProducer, blackhole);
+    }
+
+    private void send(Producer<String, String> target, Blackhole blackhole) {
+        ScopedSpan span = "none".equals(parent) ? null : tracing.tracer().startScopedSpan("batch");
+        try {
+            for (int i = 0; i < RECORDS; i++) {
+                blackhole.consume(target.send(new ProducerRecord<>(TOPIC, null, "key", "value",
+                        new RecordHeaders())));
+            }
+        } finally {
+            if (span != null) {
+                span.finish();
+            }
+        }
+    }
+
+    /**
+     * Completes every send at once and keeps no history of sent records
+     */
+    static class CompletingProducer extends MockProducer<String, String> {
+
+        private static final RecordMetadata METADATA =
+                new RecordMetadata(new TopicPartition(TOPIC, 0), 0L, 0L, 0L, 0L, 0, 0);
+
+        @Override
+        public synchronized Future<RecordMetadata> send(ProducerRecord<String, String> record, Callback callback) {
+            if (callback != null) {
+                callback.onCompletion(METADATA, null);
+            }
+            return CompletableFuture.completedFuture(METADATA);
+        }
+    }
+}
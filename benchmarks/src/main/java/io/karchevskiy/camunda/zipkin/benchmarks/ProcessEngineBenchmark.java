@@ -0,0 +1,75 @@
+package io.karchevskiy.camunda.zipkin.benchmarks;
+
+import org.camunda.bpm.engine.runtime.ProcessInstance;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static io.karchevskiy.camunda.zipkin.benchmarks.BenchmarkProcesses.*;
+
+/**
+ * Traced elements one by one, compare tracingMode=aspect/plugin against tracingMode=none
+ * with the same sampling. Process end cost is startEnd minus processStart.
+ * Run with gc profiler (default in {@link BenchmarkRunner}) for allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessEngineBenchmark {
+
+    @Benchmark
+    public ProcessInstance processStart(EngineState engine) {
+        return engine.runtimeService.startProcessInstanceByKey(WAIT_STATE);
+    }
+
+    @Benchmark
+    public ProcessInstance startEnd(EngineState engine) {
+        return engine.runtimeService.startProcessInstanceByKey(START_END);
+    }
+
+    @Benchmark
+    public ProcessInstance javaDelegate(EngineState engine) {
+        return engine.runtimeService.startProcessInstanceByKey(JAVA_DELEGATE);
+    }
+
+    @Benchmark
+    public ProcessInstance callActivity(EngineState engine) {
+        return engine.runtimeService.startProcessInstanceByKey(CALL_ACTIVITY);
+    }
+
+    @Benchmark
+    public ProcessInstance connector(EngineState engine) {
+        return engine.runtimeService.startProcessInstanceByKey(CONNECTOR);
+    }
+
+    /**
+     * processStart leaves instances in wait state, do not let them slow down next iterations
+     */
+    @TearDown(Level.Iteration)
+    public void deleteWaitingInstances(EngineState engine) {
+        List<String> ids = engine.runtimeService.createProcessInstanceQuery()
+                .processDefinitionKey(WAIT_STATE)
+                .list()
+                .stream()
+                .map(ProcessInstance::getId)
+                .collect(Collectors.toList());
+        if (!ids.isEmpty()) {
+            engine.runtimeService.deleteProcessInstances(ids, "benchmark", true, true);
+        }
+    }
+}
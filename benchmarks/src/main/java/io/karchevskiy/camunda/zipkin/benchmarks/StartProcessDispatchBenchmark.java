@@ -0,0 +1,88 @@
+package io.karchevskiy.camunda.zipkin.benchmarks;
+
+import io.karchevskiy.camunda.zipkin.impl.StartProcessInstanceInvokers;
+import org.camunda.bpm.engine.impl.RuntimeServiceImpl;
+import org.camunda.bpm.engine.runtime.ProcessInstance;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redispatch of intercepted startProcessInstance* overload to its variables-taking sibling:
+ * reflective lookup per call (previous implementation) against {@link StartProcessInstanceInvokers}.
+ * Target does no engine work, only dispatch is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StartProcessDispatchBenchmark {
+
+    private RuntimeServiceImpl target;
+    private Object[] args;
+    private StartProcessInstanceInvokers.Invoker invoker;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        target = new StubRuntimeService();
+        args = new Object[]{"process"};
+        Method intercepted = RuntimeServiceImpl.class.getMethod("startProcessInstanceByKey", String.class);
+        invoker = StartProcessInstanceInvokers.forMethod(intercepted);
+    }
+
+    @Benchmark
+    public Object reflective() throws Exception {
+        Map<String, Object> variables = new HashMap<>();
+        Object[] invocationArgs = new Object[args.length + 1];
+        System.arraycopy(args, 0, invocationArgs, 0, args.length);
+        invocationArgs[args.length] = variables;
+        Class[] signTypes = calculateSignTypes(invocationArgs);
+        Method method = target.getClass().getMethod("startProcessInstanceByKey", signTypes);
+        return method.invoke(target, invocationArgs);
+    }
+
+    @Benchmark
+    public Object methodHandle() throws Throwable {
+        Map<String, Object> variables = new HashMap<>();
+        return invoker.invoke(target, args, variables);
+    }
+
+    private static Class[] calculateSignTypes(Object[] args) {
+        Class[] signTypes;
+        int length = args.length;
+        if (args[length - 1] instanceof Map) {
+            signTypes = new Class[length];
+        } else {
+            signTypes = new Class[length + 1];
+        }
+
+        for (int i = 0; i < length; i++) {
+            signTypes[i] = args[i].getClass();
+        }
+
+        signTypes[signTypes.length - 1] = Map.class;
+        return signTypes;
+    }
+
+    public static class StubRuntimeService extends RuntimeServiceImpl {
+
+        @Override
+        public ProcessInstance startProcessInstanceByKey(String processDefinitionKey, Map<String, Object> variables) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package io.karchevskiy.camunda.zipkin.benchmarks.connector;
+
+import org.camunda.connect.impl.AbstractConnector;
+import org.camunda.connect.impl.AbstractConnectorRequest;
+import org.camunda.connect.impl.AbstractConnectorResponse;
+import org.camunda.connect.spi.Connector;
+import org.camunda.connect.spi.ConnectorResponse;
+
+import java.util.Map;
+
+/**
+ * Connector without transport: measures only connector behavior and its tracing.
+ */
+public class NoopConnector extends AbstractConnector<NoopConnector.NoopRequest, NoopConnector.NoopResponse> {
+
+    public static final String ID = "noop-connector";
+
+    public NoopConnector() {
+        super(ID);
+    }
+
+    @Override
+    public NoopRequest createRequest() {
+        return new NoopRequest(this);
+    }
+
+    @Override
+    public ConnectorResponse execute(NoopRequest request) {
+        return new NoopResponse();
+    }
+
+    public static class NoopRequest extends AbstractConnectorRequest<NoopResponse> {
+
+        NoopRequest(Connector<?> connector) {
+            super(connector);
+        }
+    }
+
+    public static class NoopResponse extends AbstractConnectorResponse {
+
+        @Override
+        protected void collectResponseParameters(Map<String, Object> responseParameters) {
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package io.karchevskiy.camunda.zipkin.benchmarks.connector;
+
+import org.camunda.connect.spi.Connector;
+import org.camunda.connect.spi.ConnectorProvider;
+
+public class NoopConnectorProvider implements ConnectorProvider {
+
+    @Override
+    public String getConnectorId() {
+        return NoopConnector.ID;
+    }
+
+    @Override
+    public Connector<?> createConnectorInstance() {
+        return new NoopConnector();
+    }
+}
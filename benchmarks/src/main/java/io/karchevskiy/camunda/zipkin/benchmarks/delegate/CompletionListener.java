@@ -0,0 +1,13 @@
+package io.karchevskiy.camunda.zipkin.benchmarks.delegate;
+
+import io.karchevskiy.camunda.zipkin.benchmarks.loadtest.LoadRecorder;
+import org.camunda.bpm.engine.delegate.DelegateExecution;
+import org.camunda.bpm.engine.delegate.ExecutionListener;
+
+public class CompletionListener implements ExecutionListener {
+
+    @Override
+    public void notify(DelegateExecution execution) {
+        LoadRecorder.completed(execution.getProcessBusinessKey());
+    }
+}
@@ -0,0 +1,15 @@
+package io.karchevskiy.camunda.zipkin.benchmarks.delegate;
+
+import org.camunda.bpm.engine.delegate.DelegateExecution;
+import org.camunda.bpm.engine.delegate.JavaDelegate;
+
+/**
+ * Load test service task: small variable write, like typical adapter storing a response
+ */
+public class LoadDelegate implements JavaDelegate {
+
+    @Override
+    public void execute(DelegateExecution execution) {
+        execution.setVariable(execution.getCurrentActivityId() + "Result", "ok");
+    }
+}
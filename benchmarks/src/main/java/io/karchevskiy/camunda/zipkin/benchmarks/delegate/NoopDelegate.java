@@ -0,0 +1,11 @@
+package io.karchevskiy.camunda.zipkin.benchmarks.delegate;
+
+import org.camunda.bpm.engine.delegate.DelegateExecution;
+import org.camunda.bpm.engine.delegate.JavaDelegate;
+
+public class NoopDelegate implements JavaDelegate {
+
+    @Override
+    public void execute(DelegateExecution execution) {
+    }
+}
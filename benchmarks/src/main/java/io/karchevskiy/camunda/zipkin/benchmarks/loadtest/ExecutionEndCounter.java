@@ -0,0 +1,26 @@
+package io.karchevskiy.camunda.zipkin.benchmarks.loadtest;
+
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Before;
+import org.camunda.bpm.engine.impl.pvm.runtime.PvmExecutionImpl;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test only (META-INF/aop-loadtest.xml, aspect mode runs): counts execution ends, which tracing
+ * used to intercept, against process instance ends, where process end listener is called now.
+ */
+@Aspect
+public class ExecutionEndCounter {
+
+    static final LongAdder EXECUTION_ENDS = new LongAdder();
+    static final LongAdder PROCESS_INSTANCE_ENDS = new LongAdder();
+
+    @Before("execution(public void org.camunda.bpm.engine.impl.pvm.runtime.PvmExecutionImpl.end(..)) && this(execution)")
+    public void countEnd(PvmExecutionImpl execution) {
+        EXECUTION_ENDS.increment();
+        if (execution.isProcessInstanceExecution()) {
+            PROCESS_INSTANCE_ENDS.increment();
+        }
+    }
+}
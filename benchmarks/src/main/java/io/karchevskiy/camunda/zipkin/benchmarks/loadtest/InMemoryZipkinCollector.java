@@ -0,0 +1,85 @@
+package io.karchevskiy.camunda.zipkin.benchmarks.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import zipkin2.Span;
+import zipkin2.codec.SpanBytesDecoder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Stand-in for zipkin server on loopback: accepts POST /api/v2/spans (json v2, optionally gzipped),
+ * decodes and counts spans by name prefix (rps, rpd, cps, cpd, jd...). Nothing is stored.
+ */
+public class InMemoryZipkinCollector implements Closeable {
+
+    public static final String SPANS_PATH = "/api/v2/spans";
+
+    private final HttpServer server;
+    private final LongAdder spans = new LongAdder();
+    private final Map<String, LongAdder> spansByKind = new ConcurrentHashMap<>();
+
+    public InMemoryZipkinCollector() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(SPANS_PATH, this::collect);
+        server.start();
+    }
+
+    public String endpoint() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + SPANS_PATH;
+    }
+
+    public long spans() {
+        return spans.sum();
+    }
+
+    public Map<String, Long> spansByKind() {
+        Map<String, Long> result = new TreeMap<>();
+        spansByKind.forEach((kind, count) -> result.put(kind, count.sum()));
+        return result;
+    }
+
+    private void collect(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            InputStream body = exchange.getRequestBody();
+            if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                body = new GZIPInputStream(body);
+            }
+            List<Span> decoded = SpanBytesDecoder.JSON_V2.decodeList(body.readAllBytes());
+            for (Span span : decoded) {
+                spans.increment();
+                spansByKind.computeIfAbsent(kind(span.name()), k -> new LongAdder()).increment();
+            }
+            exchange.sendResponseHeaders(202, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static String kind(String name) {
+        if (name == null) {
+            return "unnamed";
+        }
+        int separator = name.indexOf(':');
+        return separator == -1 ? name : name.substring(0, separator);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,75 @@
+package io.karchevskiy.camunda.zipkin.benchmarks.loadtest;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Start and completion time of every instance, instance index is business key.
+ * One recorder per run JVM, completion is reported from end listener.
+ */
+public final class LoadRecorder {
+
+    private static volatile LoadRecorder current;
+
+    private final AtomicLongArray startedAt;
+    private final long[] latencies;
+    private final CountDownLatch completion;
+    private volatile long lastCompletedAt;
+
+    private LoadRecorder(int instances) {
+        this.startedAt = new AtomicLongArray(instances);
+        this.latencies = new long[instances];
+        this.completion = new CountDownLatch(instances);
+    }
+
+    static LoadRecorder start(int instances) {
+        current = new LoadRecorder(instances);
+        return current;
+    }
+
+    public static void completed(String businessKey) {
+        LoadRecorder recorder = current;
+        if (recorder == null || businessKey == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        int index = Integer.parseInt(businessKey);
+        recorder.latencies[index] = now - recorder.startedAt.get(index);
+        recorder.lastCompletedAt = now;
+        recorder.completion.countDown();
+    }
+
+    void started(int index) {
+        startedAt.set(index, System.nanoTime());
+    }
+
+    /**
+     * Instance was not started, it is neither waited for nor counted
+     */
+    void failed(int index) {
+        completion.countDown();
+    }
+
+    boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return completion.await(timeout, unit);
+    }
+
+    long completedCount() {
+        return Arrays.stream(latencies).filter(latency -> latency > 0).count();
+    }
+
+    long lastCompletedAt() {
+        return lastCompletedAt;
+    }
+
+    /**
+     * @return sorted latencies of completed instances, nanos
+     */
+    long[] sortedLatencies() {
+        long[] completed = Arrays.stream(latencies).filter(latency -> latency > 0).toArray();
+        Arrays.sort(completed);
+        return completed;
+    }
+}
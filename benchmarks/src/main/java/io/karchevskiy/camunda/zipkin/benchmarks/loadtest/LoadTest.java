@@ -0,0 +1,104 @@
+package io.karchevskiy.camunda.zipkin.benchmarks.loadtest;
+
+import io.karchevskiy.camunda.zipkin.benchmarks.BenchmarkRunner;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static io.karchevskiy.camunda.zipkin.benchmarks.EngineState.ASPECT;
+import static io.karchevskiy.camunda.zipkin.benchmarks.EngineState.NONE;
+
+/**
+ * Macro load test: untraced run first, then every traced mode from loadtest.modes,
+ * each {@link LoadTestRun} in fresh JVM with the same settings.
+ * Exits with 1 when traced run loses more instances/sec or adds more p99 latency
+ * than loadtest.budget.throughput / loadtest.budget.p99 percent, so maven build fails.
+ * Everything runs on loopback, no zipkin server or network required.
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        LoadTestSettings settings = new LoadTestSettings();
+
+        Map<String, String> baseline = run(NONE, settings);
+        boolean withinBudget = true;
+        StringBuilder report = new StringBuilder("\nLOAD TEST REPORT, budget: throughput -")
+                .append(settings.throughputBudget).append("%, p99 +").append(settings.p99Budget).append("%\n")
+                .append(line(baseline, "", ""));
+        for (String mode : settings.modes.split(",")) {
+            Map<String, String> traced = run(mode.trim(), settings);
+            double throughputDrop = 100 * (1 - number(traced, "instancesPerSecond") / number(baseline, "instancesPerSecond"));
+            double p99Growth = 100 * (number(traced, "p99Ms") / number(baseline, "p99Ms") - 1);
+            boolean ok = throughputDrop <= settings.throughputBudget && p99Growth <= settings.p99Budget;
+            withinBudget &= ok;
+            report.append(line(traced,
+                    String.format(Locale.ROOT, " throughputDrop=%.1f%% p99Growth=%.1f%%", throughputDrop, p99Growth),
+                    ok ? " OK" : " OVER BUDGET"));
+        }
+        System.out.println(report);
+        System.exit(withinBudget ? 0 : 1);
+    }
+
+    private static Map<String, String> run(String mode, LoadTestSettings settings) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-Xmx" + settings.heap);
+        if (ASPECT.equals(mode)) {
+            command.add("-javaagent:" + BenchmarkRunner.weaverJar());
+            command.add("-Dorg.aspectj.weaver.loadtime.configuration=META-INF/aop.xml;META-INF/aop-loadtest.xml");
+        }
+        command.addAll(LoadTestSettings.forwardedProperties());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(LoadTestRun.class.getName());
+        command.add(mode);
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String result = null;
+        try (BufferedReader output = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = output.readLine()) != null) {
+                System.out.println("[" + mode + "] " + line);
+                if (line.startsWith(LoadTestRun.RESULT)) {
+                    result = line;
+                }
+            }
+        }
+        int exitCode = process.waitFor();
+        if (result == null || exitCode != 0) {
+            throw new IllegalStateException("Load test run " + mode + " failed, exit code " + exitCode);
+        }
+        return parse(result);
+    }
+
+    private static Map<String, String> parse(String result) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String pair : result.substring(LoadTestRun.RESULT.length()).trim().split(" ")) {
+            int separator = pair.indexOf('=');
+            values.put(pair.substring(0, separator), pair.substring(separator + 1));
+        }
+        return values;
+    }
+
+    private static double number(Map<String, String> values, String key) {
+        return Double.parseDouble(values.get(key));
+    }
+
+    private static String line(Map<String, String> values, String overhead, String verdict) {
+        String avoidedEndAdvice = ASPECT.equals(values.get("mode"))
+                ? " avoidedEndAdvice=" + values.get("avoidedEndAdvice")
+                : "";
+        return String.format("%-7s instances/s=%s p50Ms=%s p99Ms=%s heapGrowthMb=%s spans=%s %s%s%s%s%n",
+                values.get("mode"), values.get("instancesPerSecond"), values.get("p50Ms"), values.get("p99Ms"),
+                values.get("heapGrowthMb"), values.get("spans"), values.get("spansByKind"), avoidedEndAdvice,
+                overhead, verdict);
+    }
+}
@@ -0,0 +1,40 @@
+package io.karchevskiy.camunda.zipkin.benchmarks.loadtest;
+
+import io.karchevskiy.camunda.zipkin.benchmarks.delegate.CompletionListener;
+import io.karchevskiy.camunda.zipkin.benchmarks.delegate.LoadDelegate;
+import org.camunda.bpm.engine.RepositoryService;
+import org.camunda.bpm.engine.delegate.ExecutionListener;
+import org.camunda.bpm.model.bpmn.Bpmn;
+
+/**
+ * Same shape as application sample.bpmn and child.bpmn, child is started with call activity:
+ * loadParent: start - async service task - call activity loadChild - timer - end (completion listener)
+ * loadChild: start - async service task - end
+ */
+final class LoadTestProcesses {
+
+    static final String PARENT = "loadParent";
+    static final String CHILD = "loadChild";
+
+    private LoadTestProcesses() {
+    }
+
+    static void deploy(RepositoryService repositoryService, String timer) {
+        repositoryService.createDeployment()
+                .name("load-test")
+                .addModelInstance(PARENT + ".bpmn", Bpmn.createExecutableProcess(PARENT)
+                        .startEvent()
+                        .serviceTask("callServiceA").camundaAsyncBefore().camundaClass(LoadDelegate.class.getName())
+                        .callActivity("callChild").calledElement(CHILD)
+                        .intermediateCatchEvent("wait").timerWithDuration(timer)
+                        .endEvent("end")
+                        .camundaExecutionListenerClass(ExecutionListener.EVENTNAME_END, CompletionListener.class.getName())
+                        .done())
+                .addModelInstance(CHILD + ".bpmn", Bpmn.createExecutableProcess(CHILD)
+                        .startEvent()
+                        .serviceTask("callServiceB").camundaAsyncBefore().camundaClass(LoadDelegate.class.getName())
+                        .endEvent()
+                        .done())
+                .deploy();
+    }
+}
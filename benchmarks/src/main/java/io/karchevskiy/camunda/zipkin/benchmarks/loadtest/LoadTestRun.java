@@ -0,0 +1,148 @@
+package io.karchevskiy.camunda.zipkin.benchmarks.loadtest;
+
+import brave.Tracing;
+import brave.sampler.Sampler;
+import io.karchevskiy.camunda.zipkin.CamundaSlueuthContextInjectingAspect;
+import io.karchevskiy.camunda.zipkin.impl.TraceContextCache;
+import io.karchevskiy.camunda.zipkin.impl.TracingScopeManager;
+import io.karchevskiy.camunda.zipkin.plugin.TracingProcessEnginePlugin;
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.ProcessEngineConfiguration;
+import org.camunda.bpm.engine.RuntimeService;
+import org.camunda.bpm.engine.impl.cfg.StandaloneInMemProcessEngineConfiguration;
+import org.camunda.bpm.engine.impl.jobexecutor.DefaultJobExecutor;
+import zipkin2.reporter.AsyncReporter;
+import zipkin2.reporter.urlconnection.URLConnectionSender;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import static io.karchevskiy.camunda.zipkin.benchmarks.EngineState.*;
+
+/**
+ * One load test run in its own JVM, started by {@link LoadTest}. Argument is tracing mode:
+ * none, plugin or aspect (JVM must run with -javaagent:aspectjweaver).
+ * Traced runs sample everything and send spans over http to {@link InMemoryZipkinCollector}.
+ * Result is printed as single LOAD-TEST-RESULT line of key=value pairs. In aspect mode execution ends
+ * are counted by {@link ExecutionEndCounter}: avoidedEndAdvice - ends, which do not reach tracing any more.
+ */
+public class LoadTestRun {
+
+    static final String RESULT = "LOAD-TEST-RESULT";
+
+    private static final Logger log = Logger.getLogger(LoadTestRun.class.getName());
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : NONE;
+        LoadTestSettings settings = new LoadTestSettings();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        int exitCode;
+
+        try (InMemoryZipkinCollector collector = new InMemoryZipkinCollector();
+             URLConnectionSender sender = URLConnectionSender.create(collector.endpoint());
+             AsyncReporter<zipkin2.Span> reporter = AsyncReporter.create(sender)) {
+
+            Tracing tracing = NONE.equals(mode) ? null : Tracing.newBuilder()
+                    .localServiceName("load-test")
+                    .sampler(Sampler.ALWAYS_SAMPLE)
+                    .spanReporter(reporter)
+                    .build();
+            ProcessEngine processEngine = buildProcessEngine(mode, tracing, settings);
+            RuntimeService runtimeService = processEngine.getRuntimeService();
+            LoadTestProcesses.deploy(processEngine.getRepositoryService(), settings.timer);
+
+            System.gc();
+            long heapBefore = memory.getHeapMemoryUsage().getUsed();
+
+            LoadRecorder recorder = LoadRecorder.start(settings.instances);
+            LongAdder failedStarts = new LongAdder();
+            ExecutorService starters = Executors.newFixedThreadPool(settings.starterThreads);
+            long begin = System.nanoTime();
+            for (int i = 0; i < settings.instances; i++) {
+                int index = i;
+                starters.execute(() -> {
+                    recorder.started(index);
+                    try {
+                        runtimeService.startProcessInstanceByKey(LoadTestProcesses.PARENT, String.valueOf(index));
+                    } catch (RuntimeException e) {
+                        failedStarts.increment();
+                        recorder.failed(index);
+                        log.warning("Instance " + index + " not started: " + e);
+                    }
+                });
+            }
+            starters.shutdown();
+            boolean finished = recorder.await(settings.timeout.toMillis(), TimeUnit.MILLISECONDS);
+
+            long[] latencies = recorder.sortedLatencies();
+            double seconds = (recorder.lastCompletedAt() - begin) / 1e9;
+            reporter.flush();
+            System.gc();
+            long heapAfter = memory.getHeapMemoryUsage().getUsed();
+            processEngine.close();
+
+            System.out.println(RESULT
+                    + " mode=" + mode
+                    + " instances=" + settings.instances
+                    + " completed=" + latencies.length
+                    + " failedStarts=" + failedStarts.sum()
+                    + " instancesPerSecond=" + String.format(Locale.ROOT, "%.1f", seconds > 0 ? latencies.length / seconds : 0)
+                    + " p50Ms=" + percentileMillis(latencies, 0.50)
+                    + " p99Ms=" + percentileMillis(latencies, 0.99)
+                    + " heapGrowthMb=" + (heapAfter - heapBefore) / (1024 * 1024)
+                    + " spans=" + collector.spans()
+                    + " spansByKind=" + collector.spansByKind().toString().replace(" ", "")
+                    + " executionEnds=" + ExecutionEndCounter.EXECUTION_ENDS.sum()
+                    + " processInstanceEnds=" + ExecutionEndCounter.PROCESS_INSTANCE_ENDS.sum()
+                    + " avoidedEndAdvice=" + (ExecutionEndCounter.EXECUTION_ENDS.sum()
+                    - ExecutionEndCounter.PROCESS_INSTANCE_ENDS.sum()));
+
+            if (tracing != null) {
+                tracing.close();
+            }
+            exitCode = finished && failedStarts.sum() == 0 ? 0 : 2;
+        }
+        System.exit(exitCode);
+    }
+
+    private static ProcessEngine buildProcessEngine(String mode, Tracing tracing, LoadTestSettings settings) {
+        StandaloneInMemProcessEngineConfiguration configuration = new StandaloneInMemProcessEngineConfiguration();
+        configuration.setJdbcUrl("jdbc:h2:mem:load-test;DB_CLOSE_DELAY=-1");
+        configuration.setDatabaseSchemaUpdate(ProcessEngineConfiguration.DB_SCHEMA_UPDATE_CREATE_DROP);
+        configuration.setHistory(ProcessEngineConfiguration.HISTORY_FULL);
+
+        DefaultJobExecutor jobExecutor = new DefaultJobExecutor();
+        jobExecutor.setCorePoolSize(settings.jobThreads);
+        jobExecutor.setMaxPoolSize(settings.jobThreads);
+        jobExecutor.setMaxJobsPerAcquisition(settings.jobThreads);
+        jobExecutor.setWaitTimeInMillis(100);
+        configuration.setJobExecutor(jobExecutor);
+        configuration.setJobExecutorActivate(true);
+
+        if (tracing != null) {
+            TraceContextCache traceContextCache = new TraceContextCache();
+            TracingScopeManager scopeManager = new TracingScopeManager(tracing, false);
+            if (ASPECT.equals(mode)) {
+                new CamundaSlueuthContextInjectingAspect(tracing, traceContextCache, scopeManager);
+            } else {
+                configuration.getProcessEnginePlugins()
+                        .add(new TracingProcessEnginePlugin(tracing, traceContextCache, scopeManager));
+            }
+        }
+        return configuration.buildProcessEngine();
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1_000_000d;
+    }
+}
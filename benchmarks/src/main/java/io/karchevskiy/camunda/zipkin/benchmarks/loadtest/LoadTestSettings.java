@@ -0,0 +1,38 @@
+package io.karchevskiy.camunda.zipkin.benchmarks.loadtest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Load test settings from loadtest.* system properties, forwarded by {@link LoadTest} to every run.
+ */
+public class LoadTestSettings {
+
+    static final String PREFIX = "loadtest.";
+
+    /** process instances started per run */
+    final int instances = Integer.getInteger(PREFIX + "instances", 2000);
+    /** threads starting instances */
+    final int starterThreads = Integer.getInteger(PREFIX + "starterThreads", 8);
+    /** job executor threads */
+    final int jobThreads = Integer.getInteger(PREFIX + "jobThreads", 8);
+    /** timer of parent process */
+    final String timer = System.getProperty(PREFIX + "timer", "PT1S");
+    final Duration timeout = Duration.parse(System.getProperty(PREFIX + "timeout", "PT10M"));
+    /** max drop of instances/sec against untraced run, % */
+    final double throughputBudget = Double.parseDouble(System.getProperty(PREFIX + "budget.throughput", "25"));
+    /** max growth of p99 latency against untraced run, % */
+    final double p99Budget = Double.parseDouble(System.getProperty(PREFIX + "budget.p99", "50"));
+    /** traced modes compared with untraced run */
+    final String modes = System.getProperty(PREFIX + "modes", "plugin,aspect");
+    final String heap = System.getProperty(PREFIX + "heap", "1g");
+
+    static List<String> forwardedProperties() {
+        List<String> properties = new ArrayList<>();
+        System.getProperties().stringPropertyNames().stream()
+                .filter(name -> name.startsWith(PREFIX))
+                .forEach(name -> properties.add("-D" + name + "=" + System.getProperty(name)));
+        return properties;
+    }
+}
@@ -0,0 +1,65 @@
+package io.karchevskiy.camunda.zipkin.exporter;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command line options: --name=value
+ */
+final class ExporterSettings {
+
+    static final String USAGE = String.join(System.lineSeparator(),
+            "Rebuilds zipkin spans from camunda history tables",
+            "  --jdbc-url=<url>          required, f.e. jdbc:postgresql://localhost/camunda or jdbc:h2:./camunda",
+            "  --user=<user>             database user",
+            "  --password=<password>     database password",
+            "  --output=<file>           output file, default traces.json",
+            "  --format=json|ndjson      json - zipkin v2 json array (POST /api/v2/spans), ndjson - span per line",
+            "  --workers=<n>             parallel chunk workers (one connection each), default 4",
+            "  --chunk-size=<n>          root process instances per chunk, default 500",
+            "  --service-name=<name>     local endpoint service name, default camunda");
+
+    enum Format {
+        JSON, NDJSON
+    }
+
+    final String jdbcUrl;
+    final String user;
+    final String password;
+    final Path output;
+    final Format format;
+    final int workers;
+    final int chunkSize;
+    final String serviceName;
+
+    private ExporterSettings(Map<String, String> options) {
+        this.jdbcUrl = options.get("jdbc-url");
+        if (jdbcUrl == null) {
+            throw new IllegalArgumentException("--jdbc-url is required");
+        }
+        this.user = options.getOrDefault("user", "");
+        this.password = options.getOrDefault("password", "");
+        this.output = Paths.get(options.getOrDefault("output", "traces.json"));
+        this.format = Format.valueOf(options.getOrDefault("format", "json").toUpperCase());
+        this.workers = Integer.parseInt(options.getOrDefault("workers", "4"));
+        this.chunkSize = Integer.parseInt(options.getOrDefault("chunk-size", "500"));
+        this.serviceName = options.getOrDefault("service-name", "camunda");
+        if (workers <= 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException("--workers and --chunk-size must be positive");
+        }
+    }
+
+    static ExporterSettings parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') == -1) {
+                throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+            int separator = arg.indexOf('=');
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return new ExporterSettings(options);
+    }
+}
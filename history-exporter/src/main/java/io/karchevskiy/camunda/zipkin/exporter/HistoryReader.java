@@ -0,0 +1,132 @@
+package io.karchevskiy.camunda.zipkin.exporter;
+
+import io.karchevskiy.camunda.zipkin.exporter.HistoryRows.ActivityInstanceRow;
+import io.karchevskiy.camunda.zipkin.exporter.HistoryRows.ProcessInstanceRow;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.karchevskiy.camunda.zipkin.CamundaSlueuthContextInjectingAspect.X_SLEUTH_TRACE_CONTEXT;
+import static io.karchevskiy.camunda.zipkin.CamundaSlueuthContextInjectingAspect.X_SLEUTH_TRACE_ID;
+
+/**
+ * Plain jdbc over ACT_HI_* tables. Root process instances are paged by key (ID_ > last id of previous page),
+ * so every page costs the same index range scan regardless of offset. Rows of called processes carry
+ * ROOT_PROC_INST_ID_ (camunda 7.10+), so one chunk is loaded with range condition on it.
+ */
+final class HistoryReader {
+
+    private static final String ROOTS = "select ID_ from ACT_HI_PROCINST"
+            + " where ID_ = ROOT_PROC_INST_ID_ and ID_ > ? order by ID_";
+
+    private static final String PROCESS_INSTANCES = "select P.ID_, P.ROOT_PROC_INST_ID_,"
+            + " P.SUPER_PROCESS_INSTANCE_ID_, P.PROC_DEF_KEY_, P.BUSINESS_KEY_, P.STATE_, P.START_TIME_, P.END_TIME_,"
+            + " D.NAME_ from ACT_HI_PROCINST P left join ACT_RE_PROCDEF D on D.ID_ = P.PROC_DEF_ID_"
+            + " where P.ROOT_PROC_INST_ID_ between ? and ?";
+
+    private static final String ACTIVITY_INSTANCES = "select ID_, PARENT_ACT_INST_ID_, PROC_INST_ID_, ACT_ID_,"
+            + " ACT_NAME_, ACT_TYPE_, CALL_PROC_INST_ID_, ACT_INST_STATE_, START_TIME_, END_TIME_"
+            + " from ACT_HI_ACTINST where ROOT_PROC_INST_ID_ between ? and ?";
+
+    private static final String TRACE_VARIABLES = "select PROC_INST_ID_, NAME_, TEXT_ from ACT_HI_VARINST"
+            + " where NAME_ in (?, ?) and ROOT_PROC_INST_ID_ between ? and ?";
+
+    /**
+     * ACT_INST_STATE_ of canceled activity instance
+     */
+    private static final int CANCELED = 2;
+
+    private HistoryReader() {
+    }
+
+    /**
+     * @return next page of root process instance ids, ordered
+     */
+    static List<String> nextRoots(Connection connection, String afterId, int limit) throws SQLException {
+        List<String> ids = new ArrayList<>(limit);
+        try (PreparedStatement statement = connection.prepareStatement(ROOTS)) {
+            statement.setMaxRows(limit);
+            statement.setFetchSize(limit);
+            statement.setString(1, afterId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    ids.add(resultSet.getString(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    static HistoryRows read(Connection connection, String firstRootId, String lastRootId) throws SQLException {
+        HistoryRows rows = new HistoryRows();
+        try (PreparedStatement statement = connection.prepareStatement(PROCESS_INSTANCES)) {
+            statement.setString(1, firstRootId);
+            statement.setString(2, lastRootId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    ProcessInstanceRow row = new ProcessInstanceRow();
+                    row.id = resultSet.getString(1);
+                    row.rootId = resultSet.getString(2);
+                    row.superProcessInstanceId = resultSet.getString(3);
+                    row.processDefinitionKey = resultSet.getString(4);
+                    row.businessKey = resultSet.getString(5);
+                    row.state = resultSet.getString(6);
+                    row.startMicros = micros(resultSet.getTimestamp(7));
+                    row.endMicros = resultSet.getTimestamp(8) != null ? micros(resultSet.getTimestamp(8)) : null;
+                    row.processDefinitionName = resultSet.getString(9);
+                    rows.processInstances.add(row);
+                }
+            }
+        }
+        try (PreparedStatement statement = connection.prepareStatement(ACTIVITY_INSTANCES)) {
+            statement.setFetchSize(1000);
+            statement.setString(1, firstRootId);
+            statement.setString(2, lastRootId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    ActivityInstanceRow row = new ActivityInstanceRow();
+                    row.id = resultSet.getString(1);
+                    row.parentId = resultSet.getString(2);
+                    row.processInstanceId = resultSet.getString(3);
+                    row.activityId = resultSet.getString(4);
+                    row.activityName = resultSet.getString(5);
+                    row.activityType = resultSet.getString(6);
+                    row.calledProcessInstanceId = resultSet.getString(7);
+                    row.canceled = resultSet.getInt(8) == CANCELED;
+                    row.startMicros = micros(resultSet.getTimestamp(9));
+                    row.endMicros = resultSet.getTimestamp(10) != null ? micros(resultSet.getTimestamp(10)) : null;
+                    rows.activityInstances.add(row);
+                }
+            }
+        }
+        try (PreparedStatement statement = connection.prepareStatement(TRACE_VARIABLES)) {
+            statement.setString(1, X_SLEUTH_TRACE_CONTEXT);
+            statement.setString(2, X_SLEUTH_TRACE_ID);
+            statement.setString(3, firstRootId);
+            statement.setString(4, lastRootId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    String value = resultSet.getString(3);
+                    if (value == null) {
+                        continue;
+                    }
+                    if (X_SLEUTH_TRACE_ID.equals(resultSet.getString(2))) {
+                        rows.legacyTraceIds.put(resultSet.getString(1), value);
+                    } else {
+                        rows.traceVariables.put(resultSet.getString(1), value);
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static long micros(Timestamp timestamp) {
+        return timestamp.getTime() * 1000;
+    }
+}
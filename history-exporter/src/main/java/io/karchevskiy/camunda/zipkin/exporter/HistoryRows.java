@@ -0,0 +1,51 @@
+package io.karchevskiy.camunda.zipkin.exporter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * History rows of one chunk of root process instances (with all their called processes)
+ */
+final class HistoryRows {
+
+    final List<ProcessInstanceRow> processInstances = new ArrayList<>();
+    final List<ActivityInstanceRow> activityInstances = new ArrayList<>();
+    /**
+     * Trace variable value by process instance id
+     */
+    final Map<String, String> traceVariables = new HashMap<>();
+    /**
+     * X-B3-TraceId variable (hex trace id) by process instance id, written by versions before trace variable
+     */
+    final Map<String, String> legacyTraceIds = new HashMap<>();
+
+    static final class ProcessInstanceRow {
+        String id;
+        String rootId;
+        String superProcessInstanceId;
+        String processDefinitionKey;
+        /**
+         * null - definition has no name or was deleted
+         */
+        String processDefinitionName;
+        String businessKey;
+        String state;
+        long startMicros;
+        Long endMicros;
+    }
+
+    static final class ActivityInstanceRow {
+        String id;
+        String parentId;
+        String processInstanceId;
+        String activityId;
+        String activityName;
+        String activityType;
+        String calledProcessInstanceId;
+        boolean canceled;
+        long startMicros;
+        Long endMicros;
+    }
+}
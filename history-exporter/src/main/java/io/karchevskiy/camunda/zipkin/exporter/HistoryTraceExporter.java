@@ -0,0 +1,111 @@
+package io.karchevskiy.camunda.zipkin.exporter;
+
+import zipkin2.Span;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Offline trace reconstruction from camunda history (ACT_HI_PROCINST, ACT_HI_ACTINST, ACT_HI_VARINST),
+ * f.e. for instances finished before tracing was enabled or while collector was down.
+ *
+ * Main thread pages root process instance ids by key, chunks are loaded, rebuilt and encoded by workers
+ * (one connection each). At most two chunks per worker are in flight, so memory does not depend on history size.
+ * Output is uploaded with curl -H 'Content-Type: application/json' -d @traces.json http://zipkin:9411/api/v2/spans
+ */
+public class HistoryTraceExporter {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0 || "--help".equals(args[0])) {
+            System.out.println(ExporterSettings.USAGE);
+            return;
+        }
+        ExporterSettings settings;
+        try {
+            settings = ExporterSettings.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(ExporterSettings.USAGE);
+            System.exit(1);
+            return;
+        }
+        new HistoryTraceExporter().export(settings);
+    }
+
+    void export(ExporterSettings settings) throws Exception {
+        long started = System.nanoTime();
+        LongAdder processInstances = new LongAdder();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        BlockingQueue<Connection> connections = new ArrayBlockingQueue<>(settings.workers);
+        ExecutorService workers = Executors.newFixedThreadPool(settings.workers);
+        Semaphore inFlight = new Semaphore(settings.workers * 2);
+        TraceBuilder traceBuilder = new TraceBuilder(settings.serviceName);
+
+        try (Connection pager = connect(settings);
+             SpanFileWriter writer = new SpanFileWriter(settings.output, settings.format)) {
+            for (int i = 0; i < settings.workers; i++) {
+                connections.add(connect(settings));
+            }
+            String lastRootId = "";
+            while (failure.get() == null) {
+                List<String> roots = HistoryReader.nextRoots(pager, lastRootId, settings.chunkSize);
+                if (roots.isEmpty()) {
+                    break;
+                }
+                String firstRootId = roots.get(0);
+                lastRootId = roots.get(roots.size() - 1);
+                String chunkLastRootId = lastRootId;
+                inFlight.acquire();
+                workers.execute(() -> {
+                    Connection connection = null;
+                    try {
+                        connection = connections.take();
+                        HistoryRows rows = HistoryReader.read(connection, firstRootId, chunkLastRootId);
+                        List<Span> spans = traceBuilder.build(rows);
+                        writer.write(SpanFileWriter.encode(spans));
+                        processInstances.add(rows.processInstances.size());
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        if (connection != null) {
+                            connections.add(connection);
+                        }
+                        inFlight.release();
+                    }
+                });
+            }
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            double seconds = (System.nanoTime() - started) / 1e9;
+            System.out.println(String.format(Locale.ROOT, "Exported %d process instances, %d spans to %s in %.1f s",
+                    processInstances.sum(), writer.written(), settings.output, seconds));
+        } finally {
+            workers.shutdownNow();
+            for (Connection connection : connections) {
+                connection.close();
+            }
+        }
+    }
+
+    private static Connection connect(ExporterSettings settings) throws SQLException {
+        Connection connection = DriverManager.getConnection(settings.jdbcUrl, settings.user, settings.password);
+        connection.setReadOnly(true);
+        //postgres streams result sets with fetch size only outside of autocommit
+        connection.setAutoCommit(false);
+        return connection;
+    }
+}
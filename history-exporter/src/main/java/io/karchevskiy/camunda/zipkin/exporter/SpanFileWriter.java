@@ -0,0 +1,65 @@
+package io.karchevskiy.camunda.zipkin.exporter;
+
+import zipkin2.Span;
+import zipkin2.codec.SpanBytesEncoder;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Zipkin v2 json array or newline delimited json. Spans are encoded by workers,
+ * writer only appends bytes of whole chunk under lock.
+ */
+final class SpanFileWriter implements AutoCloseable {
+
+    private final OutputStream out;
+    private final ExporterSettings.Format format;
+    private long written;
+
+    SpanFileWriter(Path output, ExporterSettings.Format format) throws IOException {
+        this.out = new BufferedOutputStream(Files.newOutputStream(output), 1 << 16);
+        this.format = format;
+        if (format == ExporterSettings.Format.JSON) {
+            out.write('[');
+        }
+    }
+
+    static byte[][] encode(List<Span> spans) {
+        byte[][] encoded = new byte[spans.size()][];
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = SpanBytesEncoder.JSON_V2.encode(spans.get(i));
+        }
+        return encoded;
+    }
+
+    synchronized void write(byte[][] spans) throws IOException {
+        for (byte[] span : spans) {
+            if (format == ExporterSettings.Format.JSON) {
+                if (written > 0) {
+                    out.write(',');
+                }
+                out.write(span);
+            } else {
+                out.write(span);
+                out.write('\n');
+            }
+            written++;
+        }
+    }
+
+    synchronized long written() {
+        return written;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (format == ExporterSettings.Format.JSON) {
+            out.write(']');
+        }
+        out.close();
+    }
+}
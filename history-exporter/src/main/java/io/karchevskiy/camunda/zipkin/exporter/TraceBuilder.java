@@ -0,0 +1,183 @@
+package io.karchevskiy.camunda.zipkin.exporter;
+
+import io.karchevskiy.camunda.zipkin.exporter.HistoryRows.ActivityInstanceRow;
+import io.karchevskiy.camunda.zipkin.exporter.HistoryRows.ProcessInstanceRow;
+import io.karchevskiy.camunda.zipkin.impl.ProcessTraceContext;
+import io.karchevskiy.camunda.zipkin.impl.TraceContextVariables;
+import zipkin2.Endpoint;
+import zipkin2.Span;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rebuilds process tree of root instance: RPD/CPD span per process instance (named as by live tracing),
+ * ACT span per activity instance.
+ * Called processes are children of their call activity span, activities are children of parent activity
+ * instance (sub process, multi instance body) or of process span.
+ *
+ * Trace id is taken from trace variable of root process (or X-B3-TraceId variable of older versions),
+ * so rebuilt spans join trace of process starter.
+ * Process span with stored context reuses stored duration span id and parent, so spans already reported
+ * by live tracing are merged by zipkin instead of duplicated. Other ids are derived from instance ids:
+ * repeated export of the same history produces the same spans.
+ */
+final class TraceBuilder {
+
+    private final Endpoint localEndpoint;
+
+    TraceBuilder(String serviceName) {
+        this.localEndpoint = Endpoint.newBuilder().serviceName(serviceName).build();
+    }
+
+    List<Span> build(HistoryRows rows) {
+        Map<String, List<ProcessInstanceRow>> processesByRoot = new HashMap<>();
+        for (ProcessInstanceRow process : rows.processInstances) {
+            processesByRoot.computeIfAbsent(process.rootId, id -> new ArrayList<>()).add(process);
+        }
+        Map<String, List<ActivityInstanceRow>> activitiesByProcess = new HashMap<>();
+        Map<String, ActivityInstanceRow> callActivities = new HashMap<>();
+        for (ActivityInstanceRow activity : rows.activityInstances) {
+            activitiesByProcess.computeIfAbsent(activity.processInstanceId, id -> new ArrayList<>()).add(activity);
+            if (activity.calledProcessInstanceId != null) {
+                callActivities.put(activity.calledProcessInstanceId, activity);
+            }
+        }
+
+        List<Span> spans = new ArrayList<>(rows.processInstances.size() + rows.activityInstances.size());
+        for (Map.Entry<String, List<ProcessInstanceRow>> tree : processesByRoot.entrySet()) {
+            ProcessTraceContext rootContext = decode(rows.traceVariables.get(tree.getKey()));
+            long traceIdHigh = 0L;
+            long traceId = id(tree.getKey());
+            String legacyTraceId = rows.legacyTraceIds.get(tree.getKey());
+            if (rootContext != null) {
+                traceIdHigh = rootContext.processContext().traceIdHigh();
+                traceId = rootContext.processContext().traceId();
+            } else if (isTraceId(legacyTraceId)) {
+                //instance started by version, which stored trace id in its own variable
+                String hex = legacyTraceId.toLowerCase();
+                traceIdHigh = hex.length() == 32 ? Long.parseUnsignedLong(hex.substring(0, 16), 16) : 0L;
+                traceId = Long.parseUnsignedLong(hex.substring(hex.length() - 16), 16);
+            }
+
+            Map<String, Long> processSpanIds = new HashMap<>();
+            Map<String, Long> processParentIds = new HashMap<>();
+            for (ProcessInstanceRow process : tree.getValue()) {
+                ProcessTraceContext context = decode(rows.traceVariables.get(process.id));
+                if (context != null && context.hasDuration()
+                        && context.processContext().traceId() == traceId
+                        && context.processContext().traceIdHigh() == traceIdHigh) {
+                    processSpanIds.put(process.id, context.durationContext().spanId());
+                    processParentIds.put(process.id, context.processContext().spanId());
+                } else {
+                    processSpanIds.put(process.id, id(process.id));
+                }
+            }
+
+            for (ProcessInstanceRow process : tree.getValue()) {
+                boolean root = process.id.equals(process.rootId);
+                Long parentId = processParentIds.get(process.id);
+                if (parentId == null && !root) {
+                    ActivityInstanceRow callActivity = callActivities.get(process.id);
+                    parentId = callActivity != null
+                            ? id(callActivity.id)
+                            : processSpanIds.get(process.superProcessInstanceId);
+                }
+                Span.Builder span = span(traceIdHigh, traceId, processSpanIds.get(process.id), parentId,
+                        process.startMicros, process.endMicros)
+                        .name(root ? "RPD: " + process.processDefinitionKey : childDurationSpanName(process))
+                        .putTag("camunda.process.instance.id", process.id)
+                        .putTag("camunda.process.definition.key", process.processDefinitionKey)
+                        .putTag("camunda.process.state", String.valueOf(process.state));
+                if (process.businessKey != null) {
+                    span.putTag("camunda.process.business.key", process.businessKey);
+                }
+                spans.add(span.build());
+
+                for (ActivityInstanceRow activity : activitiesByProcess.getOrDefault(process.id, List.of())) {
+                    Long activityParentId = activity.parentId == null || activity.parentId.equals(process.id)
+                            ? processSpanIds.get(process.id)
+                            : Long.valueOf(id(activity.parentId));
+                    Span.Builder activitySpan = span(traceIdHigh, traceId, id(activity.id), activityParentId,
+                            activity.startMicros, activity.endMicros)
+                            .name("ACT:" + (activity.activityName != null ? activity.activityName : activity.activityId))
+                            .putTag("camunda.activity.id", activity.activityId)
+                            .putTag("camunda.activity.type", activity.activityType)
+                            .putTag("camunda.activity.instance.id", activity.id);
+                    if (activity.canceled) {
+                        activitySpan.putTag("camunda.activity.canceled", "true");
+                    }
+                    spans.add(activitySpan.build());
+                }
+            }
+        }
+        return spans;
+    }
+
+    /**
+     * Same name as live CPD span: definition name, key when definition has no name
+     */
+    private static String childDurationSpanName(ProcessInstanceRow process) {
+        return "CPD:" + (process.processDefinitionName != null
+                ? process.processDefinitionName
+                : process.processDefinitionKey);
+    }
+
+    private Span.Builder span(long traceIdHigh, long traceId, long id, Long parentId, long startMicros, Long endMicros) {
+        Span.Builder span = Span.newBuilder()
+                .traceId(traceIdHigh, traceId)
+                .id(id)
+                .localEndpoint(localEndpoint)
+                .timestamp(startMicros);
+        if (parentId != null) {
+            span.parentId(parentId);
+        }
+        if (endMicros != null) {
+            //zipkin drops zero duration
+            span.duration(Math.max(1, endMicros - startMicros));
+        }
+        return span;
+    }
+
+    /**
+     * 16 or 32 hex characters, not all zero
+     */
+    static boolean isTraceId(String value) {
+        if (value == null || (value.length() != 16 && value.length() != 32)) {
+            return false;
+        }
+        boolean nonZero = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = Character.toLowerCase(value.charAt(i));
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+            nonZero |= c != '0';
+        }
+        return nonZero;
+    }
+
+    private static ProcessTraceContext decode(String value) {
+        //only string values are stored in TEXT_, legacy map values (serialized in byte array) are not supported
+        return value != null ? TraceContextVariables.decode(null, value) : null;
+    }
+
+    /**
+     * Stable non zero 64 bit id of camunda instance id: FNV-1a with murmur3 finalizer
+     */
+    static long id(String instanceId) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < instanceId.length(); i++) {
+            hash ^= instanceId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash != 0 ? hash : 1;
+    }
+}
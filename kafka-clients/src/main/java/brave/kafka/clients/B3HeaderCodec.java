@@ -0,0 +1,230 @@
+/*
+ * Copyright 2013-2019 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.kafka.clients;
+
+import brave.internal.Nullable;
+import brave.propagation.B3SingleFormat;
+import brave.propagation.SamplingFlags;
+import brave.propagation.TraceContext;
+import brave.propagation.TraceContextOrSamplingFlags;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+/**
+ * Reads B3 single and multi headers straight from record header bytes and writes the b3 single
+ * header as bytes, so polling does not decode a String per header nor run the extractor per record.
+ * Used only when propagation is plain B3: any other key (f.e. extra fields) needs the extractor.
+ *
+ * <p>One instance per consumer, which is not thread-safe either: header values found in a record
+ * are kept in fields reused across records, and the last injected value is reused while the
+ * consumer span is shared by records of a topic.
+ */
+final class B3HeaderCodec {
+  static final String B3 = "b3";
+  static final String TRACE_ID = "X-B3-TraceId";
+  static final String SPAN_ID = "X-B3-SpanId";
+  static final String PARENT_SPAN_ID = "X-B3-ParentSpanId";
+  static final String SAMPLED = "X-B3-Sampled";
+  static final String FLAGS = "X-B3-Flags";
+  static final Set<String> KEYS =
+    new HashSet<>(Arrays.asList(B3, TRACE_ID, SPAN_ID, PARENT_SPAN_ID, SAMPLED, FLAGS));
+
+  static boolean supports(Collection<String> propagationKeys) {
+    return KEYS.equals(new HashSet<>(propagationKeys));
+  }
+
+  byte[] b3, traceId, spanId, parentId, sampled, flags;
+  TraceContext injected;
+  byte[] injectedValue;
+
+  /**
+   * @return {@link TraceContextOrSamplingFlags#EMPTY}, when record has no B3 headers, or null, when
+   * a header can not be parsed here and the extractor should decide
+   */
+  @Nullable TraceContextOrSamplingFlags extract(Headers headers) {
+    b3 = traceId = spanId = parentId = sampled = flags = null;
+    boolean found = false;
+    for (Header header : headers) {
+      byte[] value = header.value();
+      if (value == null) continue;
+      switch (header.key()) {
+        case B3:
+          b3 = value;
+          break;
+        case TRACE_ID:
+          traceId = value;
+          break;
+        case SPAN_ID:
+          spanId = value;
+          break;
+        case PARENT_SPAN_ID:
+          parentId = value;
+          break;
+        case SAMPLED:
+          sampled = value;
+          break;
+        case FLAGS:
+          flags = value;
+          break;
+        default:
+          continue;
+      }
+      found = true;
+    }
+    if (!found) return TraceContextOrSamplingFlags.EMPTY;
+    if (b3 != null) return parseSingle(b3);
+    return parseMulti();
+  }
+
+  /** Same value as the b3 single injector of messaging: without parent id */
+  void inject(TraceContext context, Headers headers) {
+    if (context != injected) {
+      injectedValue = B3SingleFormat.writeB3SingleFormatWithoutParentIdAsBytes(context);
+      injected = context;
+    }
+    headers.remove(B3);
+    headers.add(B3, injectedValue);
+  }
+
+  /** {traceId}-{spanId}[-{sampling}[-{parentSpanId}]] or only {sampling} */
+  @Nullable static TraceContextOrSamplingFlags parseSingle(byte[] value) {
+    int length = value.length;
+    if (length == 1) {
+      SamplingFlags flags = sampling(value[0]);
+      return flags != null ? TraceContextOrSamplingFlags.create(flags) : null;
+    }
+    int traceIdLength = length > 32 && value[32] == '-' ? 32 : 16;
+    int spanIdEnd = traceIdLength + 1 + 16;
+    if (length < spanIdEnd || value[traceIdLength] != '-') return null;
+    long traceIdHigh = traceIdLength == 32 ? hex(value, 0) : 0L;
+    long traceIdLow = hex(value, traceIdLength - 16);
+    long spanIdValue = hex(value, traceIdLength + 1);
+    if (traceIdLow == -1L && !validHex(value, traceIdLength - 16)) return null;
+    if (traceIdHigh == -1L && !validHex(value, 0)) return null;
+    if (spanIdValue == -1L && !validHex(value, traceIdLength + 1)) return null;
+    if ((traceIdHigh == 0L && traceIdLow == 0L) || spanIdValue == 0L) return null;
+    TraceContext.Builder builder = TraceContext.newBuilder()
+      .traceIdHigh(traceIdHigh).traceId(traceIdLow).spanId(spanIdValue);
+    if (length == spanIdEnd) return TraceContextOrSamplingFlags.create(builder.build());
+    if (value[spanIdEnd] != '-' || length < spanIdEnd + 2) return null;
+    SamplingFlags flags = sampling(value[spanIdEnd + 1]);
+    if (flags == null) return null;
+    if (flags.debug()) {
+      builder.debug(true);
+    } else {
+      builder.sampled(flags.sampled());
+    }
+    int parentIdStart = spanIdEnd + 3;
+    if (length == spanIdEnd + 2) return TraceContextOrSamplingFlags.create(builder.build());
+    if (value[spanIdEnd + 2] != '-' || length != parentIdStart + 16) return null;
+    long parentIdValue = hex(value, parentIdStart);
+    if (parentIdValue == -1L && !validHex(value, parentIdStart)) return null;
+    if (parentIdValue == 0L) return null;
+    return TraceContextOrSamplingFlags.create(builder.parentId(parentIdValue).build());
+  }
+
+  @Nullable TraceContextOrSamplingFlags parseMulti() {
+    Boolean sampledValue = null;
+    if (sampled != null) {
+      if (is(sampled, "1") || is(sampled, "true")) {
+        sampledValue = Boolean.TRUE;
+      } else if (is(sampled, "0") || is(sampled, "false")) {
+        sampledValue = Boolean.FALSE;
+      } else {
+        return null;
+      }
+    }
+    boolean debug = flags != null && is(flags, "1");
+    if (traceId == null || spanId == null) {
+      if (debug) return TraceContextOrSamplingFlags.create(SamplingFlags.DEBUG);
+      if (sampledValue == null) return TraceContextOrSamplingFlags.EMPTY;
+      return TraceContextOrSamplingFlags.create(
+        sampledValue ? SamplingFlags.SAMPLED : SamplingFlags.NOT_SAMPLED);
+    }
+    if ((traceId.length != 16 && traceId.length != 32) || spanId.length != 16) return null;
+    int lowStart = traceId.length - 16;
+    long traceIdHigh = lowStart == 16 ? hex(traceId, 0) : 0L;
+    long traceIdLow = hex(traceId, lowStart);
+    long spanIdValue = hex(spanId, 0);
+    if (traceIdHigh == -1L && !validHex(traceId, 0)) return null;
+    if (traceIdLow == -1L && !validHex(traceId, lowStart)) return null;
+    if (spanIdValue == -1L && !validHex(spanId, 0)) return null;
+    if ((traceIdHigh == 0L && traceIdLow == 0L) || spanIdValue == 0L) return null;
+    TraceContext.Builder builder = TraceContext.newBuilder()
+      .traceIdHigh(traceIdHigh).traceId(traceIdLow).spanId(spanIdValue);
+    if (parentId != null) {
+      if (parentId.length != 16) return null;
+      long parentIdValue = hex(parentId, 0);
+      if (parentIdValue == -1L && !validHex(parentId, 0)) return null;
+      builder.parentId(parentIdValue);
+    }
+    if (debug) {
+      builder.debug(true);
+    } else if (sampledValue != null) {
+      builder.sampled(sampledValue.booleanValue());
+    }
+    return TraceContextOrSamplingFlags.create(builder.build());
+  }
+
+  @Nullable static SamplingFlags sampling(byte value) {
+    switch (value) {
+      case '1':
+        return SamplingFlags.SAMPLED;
+      case '0':
+        return SamplingFlags.NOT_SAMPLED;
+      case 'd':
+        return SamplingFlags.DEBUG;
+      default:
+        return null;
+    }
+  }
+
+  /** @return 16 lower hex characters from offset, or -1 if any is not lower hex */
+  static long hex(byte[] value, int offset) {
+    long result = 0L;
+    for (int i = offset, end = offset + 16; i < end; i++) {
+      byte c = value[i];
+      result <<= 4;
+      if (c >= '0' && c <= '9') {
+        result |= c - '0';
+      } else if (c >= 'a' && c <= 'f') {
+        result |= c - 'a' + 10;
+      } else {
+        return -1L;
+      }
+    }
+    return result;
+  }
+
+  /** Tells -1 parsed from "ffffffffffffffff" from a parse failure */
+  static boolean validHex(byte[] value, int offset) {
+    for (int i = offset, end = offset + 16; i < end; i++) {
+      byte c = value[i];
+      if (c != 'f') return false;
+    }
+    return true;
+  }
+
+  static boolean is(byte[] value, String expected) {
+    if (value.length != expected.length()) return false;
+    for (int i = 0; i < value.length; i++) {
+      if (value[i] != expected.charAt(i)) return false;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2013-2019 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.kafka.clients;
+
+import brave.propagation.TraceContext;
+import org.apache.kafka.common.header.Headers;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Writes the b3 single header of producer spans straight into bytes: same value as the b3 single
+ * injector of messaging (without parent id), but no String per header. Records sent in the same
+ * trace share the trace id part, which is encoded once and copied for following spans, and the
+ * value of the last context is reused, when it is injected again.
+ *
+ * <p>Shared by all threads sending with the producer: the cache is an immutable holder swapped in
+ * a volatile field, so a race only costs encoding the trace id again.
+ */
+final class B3SingleHeaderEncoder {
+  static final byte[] HEX = "0123456789abcdef".getBytes(US_ASCII);
+
+  static final class Encoded {
+    final long traceIdHigh, traceId;
+    final byte[] traceIdPrefix; // {traceId}-
+    final TraceContext context;
+    final byte[] value;
+
+    Encoded(long traceIdHigh, long traceId, byte[] traceIdPrefix, TraceContext context,
+      byte[] value) {
+      this.traceIdHigh = traceIdHigh;
+      this.traceId = traceId;
+      this.traceIdPrefix = traceIdPrefix;
+      this.context = context;
+      this.value = value;
+    }
+  }
+
+  static final byte[] NOT_SAMPLED = {'0'};
+
+  volatile Encoded last;
+
+  /** Sampling flag only: downstream starts its own unsampled trace */
+  static void injectNotSampled(Headers headers) {
+    headers.remove(B3HeaderCodec.B3);
+    headers.add(B3HeaderCodec.B3, NOT_SAMPLED);
+  }
+
+  void inject(TraceContext context, Headers headers) {
+    headers.remove(B3HeaderCodec.B3);
+    headers.add(B3HeaderCodec.B3, encode(context));
+  }
+
+  byte[] encode(TraceContext context) {
+    Encoded encoded = last;
+    if (encoded != null && encoded.context == context) return encoded.value;
+    byte[] prefix;
+    if (encoded != null
+      && encoded.traceId == context.traceId() && encoded.traceIdHigh == context.traceIdHigh()) {
+      prefix = encoded.traceIdPrefix;
+    } else {
+      prefix = traceIdPrefix(context.traceIdHigh(), context.traceId());
+    }
+    byte sampling = context.debug() ? (byte) 'd'
+      : context.sampled() == null ? 0 : context.sampled() ? (byte) '1' : (byte) '0';
+    byte[] value = new byte[prefix.length + 16 + (sampling != 0 ? 2 : 0)];
+    System.arraycopy(prefix, 0, value, 0, prefix.length);
+    writeHex(value, prefix.length, context.spanId());
+    if (sampling != 0) {
+      value[prefix.length + 16] = '-';
+      value[prefix.length + 17] = sampling;
+    }
+    last = new Encoded(context.traceIdHigh(), context.traceId(), prefix, context, value);
+    return value;
+  }
+
+  static byte[] traceIdPrefix(long traceIdHigh, long traceId) {
+    int pos = 0;
+    byte[] prefix = new byte[(traceIdHigh != 0L ? 32 : 16) + 1];
+    if (traceIdHigh != 0L) {
+      writeHex(prefix, 0, traceIdHigh);
+      pos = 16;
+    }
+    writeHex(prefix, pos, traceId);
+    prefix[pos + 16] = '-';
+    return prefix;
+  }
+
+  static void writeHex(byte[] data, int pos, long v) {
+    for (int shift = 60; shift >= 0; shift -= 4) {
+      data[pos++] = HEX[(int) (v >>> shift) & 0xf];
+    }
+  }
+}
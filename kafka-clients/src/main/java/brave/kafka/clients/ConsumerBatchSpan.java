@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013-2019 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.kafka.clients;
+
+import brave.Span;
+import brave.internal.HexCodec;
+import brave.internal.Nullable;
+import brave.propagation.TraceContext;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * Consumer span of a partition batch or a whole poll. Upstream contexts of records are kept as
+ * compact references (ids of the first {@link #MAX_LINKS} distinct ones and a count) instead of
+ * child spans, offsets as a range per partition.
+ */
+final class ConsumerBatchSpan {
+  static final int MAX_LINKS = 16;
+
+  final Span span;
+  final Set<String> topics = new LinkedHashSet<>();
+  final StringBuilder offsets = new StringBuilder();
+  final long[] links = new long[MAX_LINKS * 3];
+  int distinctLinks, linkCount, recordCount;
+  @Nullable TopicPartition partition;
+  long firstOffset, lastOffset;
+
+  ConsumerBatchSpan(Span span) {
+    this.span = span;
+  }
+
+  void add(TopicPartition partition, long offset, @Nullable TraceContext upstream) {
+    recordCount++;
+    if (span.isNoop()) return;
+    if (!partition.equals(this.partition)) {
+      appendOffsets();
+      this.partition = partition;
+      topics.add(partition.topic());
+      firstOffset = offset;
+    }
+    lastOffset = offset;
+    if (upstream != null) link(upstream);
+  }
+
+  void finish(long timestamp) {
+    if (span.isNoop()) return;
+    appendOffsets();
+    span.tag(KafkaTags.KAFKA_TOPIC_TAG, String.join(",", topics));
+    span.tag(KafkaTags.KAFKA_RECORD_COUNT_TAG, String.valueOf(recordCount));
+    span.tag(KafkaTags.KAFKA_OFFSETS_TAG, offsets.toString());
+    if (linkCount > 0) {
+      span.tag(KafkaTags.KAFKA_LINK_COUNT_TAG, String.valueOf(linkCount));
+      StringBuilder ids = new StringBuilder(distinctLinks * 50);
+      for (int i = 0; i < distinctLinks; i++) {
+        if (i > 0) ids.append(',');
+        long traceIdHigh = links[i * 3], traceId = links[i * 3 + 1];
+        ids.append(traceIdHigh != 0L
+          ? HexCodec.toLowerHex(traceIdHigh, traceId)
+          : HexCodec.toLowerHex(traceId))
+          .append('/').append(HexCodec.toLowerHex(links[i * 3 + 2]));
+      }
+      span.tag(KafkaTags.KAFKA_LINKS_TAG, ids.toString());
+    }
+    span.finish(timestamp);
+  }
+
+  void link(TraceContext upstream) {
+    linkCount++;
+    for (int i = 0; i < distinctLinks; i++) {
+      if (links[i * 3 + 2] == upstream.spanId() && links[i * 3 + 1] == upstream.traceId()
+        && links[i * 3] == upstream.traceIdHigh()) {
+        return;
+      }
+    }
+    if (distinctLinks == MAX_LINKS) return;
+    links[distinctLinks * 3] = upstream.traceIdHigh();
+    links[distinctLinks * 3 + 1] = upstream.traceId();
+    links[distinctLinks * 3 + 2] = upstream.spanId();
+    distinctLinks++;
+  }
+
+  void appendOffsets() {
+    if (partition == null) return;
+    if (offsets.length() > 0) offsets.append(',');
+    offsets.append(partition.topic()).append('-').append(partition.partition())
+      .append(':').append(firstOffset).append('-').append(lastOffset);
+    partition = null;
+  }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2013-2019 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.kafka.clients;
+
+/** How many {@link brave.Span.Kind#CONSUMER} spans a poll creates, see KafkaTracing.Builder */
+public enum ConsumerSpanGranularity {
+  /**
+   * Span per record with upstream context (child of it), records without context share a span
+   * per topic. Default.
+   */
+  RECORD,
+  /**
+   * Span per partition batch of a poll. Upstream contexts stay in record headers, so processing
+   * continues producer traces, and are referenced from the span by tags.
+   */
+  PARTITION,
+  /** Like {@link #PARTITION}, but one span for all records of a poll */
+  POLL
+}
@@ -31,4 +31,27 @@ final class KafkaTags {
   static final String KAFKA_KEY_TAG = "kafka.key";
   static final String KAFKA_TOPIC_TAG = "kafka.topic";
   static final String KAFKA_PAYLOAD_CLASS_TAG = "kafka.payload.class";
+  /**
+   * Added on batch {@link KafkaTracing#consumer(Consumer) consumer} spans: records in the batch and
+   * their offset ranges as topic-partition:first-last, comma separated.
+   */
+  static final String KAFKA_RECORD_COUNT_TAG = "kafka.record.count";
+  static final String KAFKA_OFFSETS_TAG = "kafka.offsets";
+  /**
+   * Added on batch consumer spans, when records carried upstream contexts: their count and first
+   * distinct ones as traceId/spanId, comma separated. Records keep these contexts in headers.
+   */
+  static final String KAFKA_LINK_COUNT_TAG = "kafka.link.count";
+  static final String KAFKA_LINKS_TAG = "kafka.links";
+
+  /** Simple names are computed once per class, not per record */
+  static final ClassValue<String> PAYLOAD_CLASS_NAMES = new ClassValue<String>() {
+    @Override protected String computeValue(Class<?> type) {
+      return type.getSimpleName();
+    }
+  };
+
+  static String payloadClass(Object payload) {
+    return PAYLOAD_CLASS_NAMES.get(payload.getClass());
+  }
 }
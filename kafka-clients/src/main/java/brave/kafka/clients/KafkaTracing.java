@@ -55,6 +55,8 @@ public final class KafkaTracing {
   public static final class Builder {
     final MessagingTracing messagingTracing;
     String remoteServiceName = "kafka";
+    boolean b3HeaderFastPath = true;
+    ConsumerSpanGranularity consumerSpanGranularity = ConsumerSpanGranularity.RECORD;
 
     Builder(MessagingTracing messagingTracing) {
       if (messagingTracing == null) throw new NullPointerException("messagingTracing == null");
@@ -70,6 +72,30 @@ public final class KafkaTracing {
       return this;
     }
 
+    /**
+     * When propagation is plain B3, consumer reads B3 headers from header bytes and writes b3 header
+     * of consumer span as bytes instead of running extractor and injector per record, producer writes
+     * b3 header of producer span as bytes. Defaults to true, false keeps extractor and injector (f.e.
+     * to compare them in benchmarks).
+     */
+    public Builder b3HeaderFastPath(boolean b3HeaderFastPath) {
+      this.b3HeaderFastPath = b3HeaderFastPath;
+      return this;
+    }
+
+    /**
+     * Consumer spans per record (default), per partition batch or per poll. Batch spans reference
+     * upstream contexts by tags and leave them in record headers instead of creating child spans, so
+     * span volume drops with batch size while processing still continues producer traces.
+     */
+    public Builder consumerSpanGranularity(ConsumerSpanGranularity consumerSpanGranularity) {
+      if (consumerSpanGranularity == null) {
+        throw new NullPointerException("consumerSpanGranularity == null");
+      }
+      this.consumerSpanGranularity = consumerSpanGranularity;
+      return this;
+    }
+
     /**
      * @deprecated as of v5.9, this is ignored because single format is default for messaging. Use
      * {@link B3Propagation#newFactoryBuilder()} to change the default.
@@ -93,6 +119,8 @@ public final class KafkaTracing {
   final SamplerFunction<MessagingRequest> producerSampler, consumerSampler;
   final Set<String> propagationKeys;
   final String remoteServiceName;
+  final boolean b3HeaderFastPath;
+  final ConsumerSpanGranularity consumerSpanGranularity;
 
   KafkaTracing(Builder builder) { // intentionally hidden constructor
     this.messagingTracing = builder.messagingTracing;
@@ -107,6 +135,8 @@ public final class KafkaTracing {
     this.consumerSampler = messagingTracing.consumerSampler();
     this.propagationKeys = new LinkedHashSet<>(propagation.keys());
     this.remoteServiceName = builder.remoteServiceName;
+    this.b3HeaderFastPath = builder.b3HeaderFastPath && B3HeaderCodec.supports(propagationKeys);
+    this.consumerSpanGranularity = builder.consumerSpanGranularity;
   }
 
   /** @since 5.9 exposed for Kafka Streams tracing. */
@@ -185,7 +215,7 @@ public final class KafkaTracing {
     }
     result.tag(KafkaTags.KAFKA_TOPIC_TAG, record.topic());
     if(record.value() != null) {
-      result.tag(KafkaTags.KAFKA_PAYLOAD_CLASS_TAG, record.value().getClass().getSimpleName());
+      result.tag(KafkaTags.KAFKA_PAYLOAD_CLASS_TAG, KafkaTags.payloadClass(record.value()));
     }
   }
 }
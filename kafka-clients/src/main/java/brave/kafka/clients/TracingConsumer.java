@@ -17,6 +17,7 @@ import brave.Span;
 import brave.Tracing;
 import brave.internal.Nullable;
 import brave.messaging.MessagingRequest;
+import brave.propagation.TraceContext;
 import brave.propagation.TraceContext.Extractor;
 import brave.propagation.TraceContext.Injector;
 import brave.propagation.TraceContextOrSamplingFlags;
@@ -40,6 +41,7 @@ import org.apache.kafka.common.Metric;
 import org.apache.kafka.common.MetricName;
 import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Headers;
 
 /**
  * Kafka Consumer decorator. Read records headers to create and complete a child of the incoming
@@ -54,6 +56,8 @@ final class TracingConsumer<K, V> implements Consumer<K, V> {
   final SamplerFunction<MessagingRequest> sampler;
   final Injector<KafkaConsumerRequest> injector;
   final String remoteServiceName;
+  @Nullable final B3HeaderCodec b3Codec;
+  final ConsumerSpanGranularity granularity;
   // replicate org.apache.kafka.clients.consumer.internals.NoOpConsumerRebalanceListener behaviour
   static final ConsumerRebalanceListener NO_OP_CONSUMER_REBALANCE_LISTENER =
     new ConsumerRebalanceListener() {
@@ -72,6 +76,8 @@ final class TracingConsumer<K, V> implements Consumer<K, V> {
     this.sampler = kafkaTracing.consumerSampler;
     this.injector = kafkaTracing.consumerInjector;
     this.remoteServiceName = kafkaTracing.remoteServiceName;
+    this.b3Codec = kafkaTracing.b3HeaderFastPath ? new B3HeaderCodec() : null;
+    this.granularity = kafkaTracing.consumerSpanGranularity;
   }
 
   // Do not use @Override annotation to avoid compatibility issue version < 2.0
@@ -79,11 +85,15 @@ final class TracingConsumer<K, V> implements Consumer<K, V> {
     return poll(timeout.toMillis());
   }
 
-  /** This uses a single timestamp for all records polled, to reduce overhead. */
+  /**
+   * This uses a single timestamp for all records polled, to reduce overhead. With plain B3
+   * propagation headers are parsed from bytes and the request is only created for sampling.
+   */
   // Do not use @Override annotation to avoid compatibility on deprecated methods
   public ConsumerRecords<K, V> poll(long timeout) {
     ConsumerRecords<K, V> records = delegate.poll(timeout);
     if (records.isEmpty() || tracing.isNoop()) return records;
+    if (granularity != ConsumerSpanGranularity.RECORD) return pollBatches(records);
     long timestamp = 0L;
     Map<String, Span> consumerSpansForTopic = new LinkedHashMap<>();
     for (TopicPartition partition : records.partitions()) {
@@ -91,15 +101,22 @@ final class TracingConsumer<K, V> implements Consumer<K, V> {
       List<ConsumerRecord<K, V>> recordsInPartition = records.records(partition);
       for (int i = 0, length = recordsInPartition.size(); i < length; i++) {
         ConsumerRecord<K, V> record = recordsInPartition.get(i);
-        KafkaConsumerRequest request = new KafkaConsumerRequest(record);
-        TraceContextOrSamplingFlags extracted =
-          kafkaTracing.extractAndClearHeaders(extractor, request, record.headers());
+        Headers headers = record.headers();
+        KafkaConsumerRequest request = null;
+        TraceContextOrSamplingFlags extracted = b3Codec != null ? b3Codec.extract(headers) : null;
+        if (extracted == null) {
+          request = new KafkaConsumerRequest(record);
+          extracted = kafkaTracing.extractAndClearHeaders(extractor, request, headers);
+        } else if (!extracted.equals(TraceContextOrSamplingFlags.EMPTY)) {
+          kafkaTracing.clearHeaders(headers);
+        }
 
         // If we extracted neither a trace context, nor request-scoped data (extra),
         // make or reuse a span for this topic
         if (extracted.equals(TraceContextOrSamplingFlags.EMPTY)) {
           Span span = consumerSpansForTopic.get(topic);
           if (span == null) {
+            if (request == null) request = new KafkaConsumerRequest(record);
             span = kafkaTracing.nextMessagingSpan(sampler, request, extracted);
             if (!span.isNoop()) {
               setConsumerSpan(span, topic, record.value());
@@ -111,8 +128,9 @@ final class TracingConsumer<K, V> implements Consumer<K, V> {
             }
             consumerSpansForTopic.put(topic, span);
           }
-          injector.inject(span.context(), request);
+          inject(span, record, request);
         } else { // we extracted request-scoped data, so cannot share a consumer span.
+          if (request == null) request = new KafkaConsumerRequest(record);
           Span span = kafkaTracing.nextMessagingSpan(sampler, request, extracted);
           if (!span.isNoop()) {
             setConsumerSpan(span, topic, record.value());
@@ -121,8 +139,10 @@ final class TracingConsumer<K, V> implements Consumer<K, V> {
               timestamp = tracing.clock(span.context()).currentTimeMicroseconds();
             }
             span.start(timestamp).finish(timestamp); // span won't be shared by other records
-          }
-          injector.inject(span.context(), request);
+            inject(span, record, request);
+          } else if (!Boolean.FALSE.equals(extracted.sampled())) {
+            inject(span, record, request);
+          } // else upstream headers already propagate the decision not to sample
         }
       }
     }
@@ -130,6 +150,62 @@ final class TracingConsumer<K, V> implements Consumer<K, V> {
     return records;
   }
 
+  /**
+   * Span per partition batch or per poll. Records with upstream context keep it, the others get
+   * context of the batch span, like records sharing the topic span in per record mode.
+   */
+  ConsumerRecords<K, V> pollBatches(ConsumerRecords<K, V> records) {
+    long timestamp = 0L;
+    ConsumerBatchSpan pollBatch = null;
+    for (TopicPartition partition : records.partitions()) {
+      List<ConsumerRecord<K, V>> recordsInPartition = records.records(partition);
+      ConsumerBatchSpan batch = pollBatch;
+      if (batch == null) {
+        ConsumerRecord<K, V> first = recordsInPartition.get(0);
+        Span span = kafkaTracing.nextMessagingSpan(sampler, new KafkaConsumerRequest(first),
+          TraceContextOrSamplingFlags.EMPTY);
+        if (!span.isNoop()) {
+          setConsumerSpan(span, partition.topic(), first.value());
+          if (timestamp == 0L) {
+            timestamp = tracing.clock(span.context()).currentTimeMicroseconds();
+          }
+          span.start(timestamp);
+        }
+        batch = new ConsumerBatchSpan(span);
+        if (granularity == ConsumerSpanGranularity.POLL) pollBatch = batch;
+      }
+      for (int i = 0, length = recordsInPartition.size(); i < length; i++) {
+        ConsumerRecord<K, V> record = recordsInPartition.get(i);
+        Headers headers = record.headers();
+        KafkaConsumerRequest request = null;
+        TraceContextOrSamplingFlags extracted = b3Codec != null ? b3Codec.extract(headers) : null;
+        if (extracted == null) {
+          request = new KafkaConsumerRequest(record);
+          extracted = extractor.extract(request);
+        }
+        TraceContext upstream = extracted.context();
+        batch.add(partition, record.offset(), upstream);
+        if (upstream == null) inject(batch.span, record, request);
+      }
+      if (batch != pollBatch) batch.finish(timestamp);
+    }
+    if (pollBatch != null) pollBatch.finish(timestamp);
+    return records;
+  }
+
+  /** With plain B3 an unsampled span propagates only its sampling flag: "b3: 0" */
+  void inject(Span span, ConsumerRecord<K, V> record, @Nullable KafkaConsumerRequest request) {
+    if (b3Codec != null) {
+      if (span.isNoop()) {
+        B3SingleHeaderEncoder.injectNotSampled(record.headers());
+      } else {
+        b3Codec.inject(span.context(), record.headers());
+      }
+    } else {
+      injector.inject(span.context(), request != null ? request : new KafkaConsumerRequest(record));
+    }
+  }
+
   @Override public Set<TopicPartition> assignment() {
     return delegate.assignment();
   }
@@ -314,7 +390,7 @@ final class TracingConsumer<K, V> implements Consumer<K, V> {
   void setConsumerSpan(Span span, String topic, @Nullable Object eventPayload) {
     span.name("poll").kind(Span.Kind.CONSUMER).tag(KafkaTags.KAFKA_TOPIC_TAG, topic);
     if(eventPayload != null){
-      span.tag(KafkaTags.KAFKA_PAYLOAD_CLASS_TAG, eventPayload.getClass().getSimpleName());
+      span.tag(KafkaTags.KAFKA_PAYLOAD_CLASS_TAG, KafkaTags.payloadClass(eventPayload));
     }
     if (remoteServiceName != null) span.remoteServiceName(remoteServiceName);
   }
@@ -15,6 +15,7 @@ package brave.kafka.clients;
 
 import brave.Span;
 import brave.Tracer;
+import brave.Tracing;
 import brave.internal.Nullable;
 import brave.messaging.MessagingRequest;
 import brave.propagation.CurrentTraceContext;
@@ -42,22 +43,26 @@ final class TracingProducer<K, V> implements Producer<K, V> {
 
   final Producer<K, V> delegate;
   final KafkaTracing kafkaTracing;
+  final Tracing tracing;
   final CurrentTraceContext currentTraceContext;
   final Tracer tracer;
   final Extractor<KafkaProducerRequest> extractor;
   final SamplerFunction<MessagingRequest> sampler;
   final Injector<KafkaProducerRequest> injector;
   @Nullable final String remoteServiceName;
+  @Nullable final B3SingleHeaderEncoder b3Encoder;
 
   TracingProducer(Producer<K, V> delegate, KafkaTracing kafkaTracing) {
     this.delegate = delegate;
     this.kafkaTracing = kafkaTracing;
+    this.tracing = kafkaTracing.messagingTracing.tracing();
     this.currentTraceContext = kafkaTracing.messagingTracing.tracing().currentTraceContext();
     this.tracer = kafkaTracing.messagingTracing.tracing().tracer();
     this.extractor = kafkaTracing.producerExtractor;
     this.sampler = kafkaTracing.producerSampler;
     this.injector = kafkaTracing.producerInjector;
     this.remoteServiceName = kafkaTracing.remoteServiceName;
+    this.b3Encoder = kafkaTracing.b3HeaderFastPath ? new B3SingleHeaderEncoder() : null;
   }
 
   @Override public void initTransactions() {
@@ -93,7 +98,8 @@ final class TracingProducer<K, V> implements Producer<K, V> {
    */
   @Override
   public Future<RecordMetadata> send(ProducerRecord<K, V> record, @Nullable Callback callback) {
-    KafkaProducerRequest request = new KafkaProducerRequest(record);
+    if (tracing.isNoop()) return delegate.send(record, callback);
+    KafkaProducerRequest request = null;
 
     TraceContext maybeParent = currentTraceContext.get();
     // Unlike message consumers, we try current span before trying extraction. This is the proper
@@ -103,27 +109,34 @@ final class TracingProducer<K, V> implements Producer<K, V> {
     // always clear message headers after reading.
     Span span;
     if (maybeParent == null) {
+      request = new KafkaProducerRequest(record);
       TraceContextOrSamplingFlags extracted =
               kafkaTracing.extractAndClearHeaders(extractor, request, record.headers());
       span = kafkaTracing.nextMessagingSpan(sampler, request, extracted);
+    } else if (isUnsampled(maybeParent)) { // no child would be recorded
+      return sendUnsampled(record, callback, maybeParent, null);
     } else { // If we have a span in scope assume headers were cleared before
       span = tracer.newChild(maybeParent);
     }
 
-    if (!span.isNoop()) {
-      span.kind(Span.Kind.PRODUCER).name("send");
-      if (remoteServiceName != null) span.remoteServiceName(remoteServiceName);
-      if (record.key() instanceof String && !"".equals(record.key())) {
-        span.tag(KafkaTags.KAFKA_KEY_TAG, record.key().toString());
-      }
-      span.tag(KafkaTags.KAFKA_TOPIC_TAG, record.topic());
-      if(record.value() != null) {
-        span.tag(KafkaTags.KAFKA_PAYLOAD_CLASS_TAG, record.value().getClass().getSimpleName());
-      }
-      span.start();
+    if (span.isNoop()) return sendUnsampled(record, callback, span.context(), request);
+
+    span.kind(Span.Kind.PRODUCER).name("send");
+    if (remoteServiceName != null) span.remoteServiceName(remoteServiceName);
+    if (record.key() instanceof String && !"".equals(record.key())) {
+      span.tag(KafkaTags.KAFKA_KEY_TAG, record.key().toString());
+    }
+    span.tag(KafkaTags.KAFKA_TOPIC_TAG, record.topic());
+    if(record.value() != null) {
+      span.tag(KafkaTags.KAFKA_PAYLOAD_CLASS_TAG, KafkaTags.payloadClass(record.value()));
     }
+    span.start();
 
-    injector.inject(span.context(), request);
+    if (b3Encoder != null) {
+      b3Encoder.inject(span.context(), record.headers());
+    } else {
+      injector.inject(span.context(), request != null ? request : new KafkaProducerRequest(record));
+    }
 
     Tracer.SpanInScope ws = tracer.withSpanInScope(span);
     Throwable error = null;
@@ -139,6 +152,24 @@ final class TracingProducer<K, V> implements Producer<K, V> {
     }
   }
 
+  /**
+   * Nothing to finish, so the callback is not wrapped and no scope is opened. Only the decision is
+   * propagated: with plain B3 it is the "b3: 0" header, otherwise the injector writes the context.
+   */
+  Future<RecordMetadata> sendUnsampled(ProducerRecord<K, V> record, @Nullable Callback callback,
+    TraceContext context, @Nullable KafkaProducerRequest request) {
+    if (b3Encoder != null) {
+      B3SingleHeaderEncoder.injectNotSampled(record.headers());
+    } else {
+      injector.inject(context, request != null ? request : new KafkaProducerRequest(record));
+    }
+    return delegate.send(record, callback);
+  }
+
+  static boolean isUnsampled(TraceContext context) {
+    return Boolean.FALSE.equals(context.sampled()) && !context.sampledLocal();
+  }
+
   @Override public void flush() {
     delegate.flush();
   }
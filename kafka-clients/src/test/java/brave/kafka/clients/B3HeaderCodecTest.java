@@ -0,0 +1,146 @@
+/*
+ * Copyright 2013-2019 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.kafka.clients;
+
+import brave.propagation.B3Propagation;
+import brave.propagation.Propagation;
+import brave.propagation.TraceContext;
+import brave.propagation.TraceContextOrSamplingFlags;
+import java.nio.charset.StandardCharsets;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/** Byte parser of {@link B3HeaderCodec} against extractor of {@link B3Propagation} */
+public class B3HeaderCodecTest {
+  static final String TRACE_ID = "463ac35c9f6413ad";
+  static final String TRACE_ID_128 = "48485a3953bb6124" + TRACE_ID;
+  static final String SPAN_ID = "a2fb4a1d1a96d312";
+  static final String PARENT_ID = "0020000000000001";
+  static final String ALL_F = "ffffffffffffffff";
+
+  final TraceContext.Extractor<Headers> extractor =
+    B3Propagation.FACTORY.create(Propagation.KeyFactory.STRING).extractor((headers, key) -> {
+      Header header = headers.lastHeader(key);
+      return header != null ? new String(header.value(), StandardCharsets.UTF_8) : null;
+    });
+  final B3HeaderCodec codec = new B3HeaderCodec();
+
+  @Test public void noHeaders() {
+    assertSame(TraceContextOrSamplingFlags.EMPTY, codec.extract(new RecordHeaders()));
+  }
+
+  @Test public void single() {
+    assertSameAsExtractor(headers("b3", TRACE_ID + "-" + SPAN_ID));
+    assertSameAsExtractor(headers("b3", TRACE_ID_128 + "-" + SPAN_ID));
+    assertSameAsExtractor(headers("b3", TRACE_ID + "-" + SPAN_ID + "-1"));
+    assertSameAsExtractor(headers("b3", TRACE_ID + "-" + SPAN_ID + "-0"));
+    assertSameAsExtractor(headers("b3", TRACE_ID + "-" + SPAN_ID + "-d"));
+    assertSameAsExtractor(headers("b3", TRACE_ID + "-" + SPAN_ID + "-1-" + PARENT_ID));
+    assertSameAsExtractor(headers("b3", TRACE_ID_128 + "-" + SPAN_ID + "-d-" + PARENT_ID));
+    assertSameAsExtractor(headers("b3", ALL_F + ALL_F + "-" + ALL_F + "-1-" + ALL_F));
+  }
+
+  @Test public void singleSamplingOnly() {
+    assertSameAsExtractor(headers("b3", "1"));
+    assertSameAsExtractor(headers("b3", "0"));
+    assertSameAsExtractor(headers("b3", "d"));
+  }
+
+  @Test public void multi() {
+    assertSameAsExtractor(headers("X-B3-TraceId", TRACE_ID, "X-B3-SpanId", SPAN_ID));
+    assertSameAsExtractor(headers("X-B3-TraceId", TRACE_ID_128, "X-B3-SpanId", SPAN_ID));
+    assertSameAsExtractor(headers("X-B3-TraceId", TRACE_ID, "X-B3-SpanId", SPAN_ID,
+      "X-B3-Sampled", "1"));
+    assertSameAsExtractor(headers("X-B3-TraceId", TRACE_ID, "X-B3-SpanId", SPAN_ID,
+      "X-B3-Sampled", "true"));
+    assertSameAsExtractor(headers("X-B3-TraceId", TRACE_ID, "X-B3-SpanId", SPAN_ID,
+      "X-B3-Sampled", "0"));
+    assertSameAsExtractor(headers("X-B3-TraceId", TRACE_ID, "X-B3-SpanId", SPAN_ID,
+      "X-B3-Flags", "1"));
+    assertSameAsExtractor(headers("X-B3-TraceId", TRACE_ID_128, "X-B3-SpanId", SPAN_ID,
+      "X-B3-ParentSpanId", PARENT_ID, "X-B3-Sampled", "1"));
+    assertSameAsExtractor(headers("X-B3-TraceId", ALL_F + ALL_F, "X-B3-SpanId", ALL_F,
+      "X-B3-ParentSpanId", ALL_F));
+  }
+
+  @Test public void multiSamplingOnly() {
+    assertSameAsExtractor(headers("X-B3-Sampled", "1"));
+    assertSameAsExtractor(headers("X-B3-Sampled", "0"));
+    assertSameAsExtractor(headers("X-B3-Flags", "1"));
+  }
+
+  @Test public void singleHeaderWinsOverMulti() {
+    assertSameAsExtractor(headers("b3", TRACE_ID + "-" + SPAN_ID + "-1",
+      "X-B3-TraceId", TRACE_ID_128, "X-B3-SpanId", PARENT_ID, "X-B3-Sampled", "0"));
+  }
+
+  /** Values the extractor accepts leniently or rejects: codec defers to it */
+  @Test public void fallsBackToExtractor() {
+    assertNull(codec.extract(headers("b3", TRACE_ID.toUpperCase() + "-" + SPAN_ID)));
+    assertNull(codec.extract(headers("b3", TRACE_ID + "-" + SPAN_ID.toUpperCase() + "-1")));
+    assertNull(codec.extract(headers("b3", "463ac35c-" + SPAN_ID)));
+    assertNull(codec.extract(headers("b3", TRACE_ID + "-" + SPAN_ID + "-x")));
+    assertNull(codec.extract(headers("b3", TRACE_ID + "-" + SPAN_ID + "-1-" + PARENT_ID + "0")));
+    assertNull(codec.extract(headers("b3", "0000000000000000-" + SPAN_ID)));
+    assertNull(codec.extract(headers("X-B3-TraceId", TRACE_ID.toUpperCase(), "X-B3-SpanId", SPAN_ID)));
+    assertNull(codec.extract(headers("X-B3-TraceId", "463ac35c", "X-B3-SpanId", SPAN_ID)));
+    assertNull(codec.extract(headers("X-B3-TraceId", TRACE_ID, "X-B3-SpanId", "a2fb4a1d")));
+    assertNull(codec.extract(headers("X-B3-TraceId", TRACE_ID, "X-B3-SpanId", SPAN_ID,
+      "X-B3-Sampled", "yes")));
+  }
+
+  /** Fields reused across records are reset */
+  @Test public void reusedAcrossRecords() {
+    codec.extract(headers("X-B3-TraceId", TRACE_ID, "X-B3-SpanId", SPAN_ID,
+      "X-B3-ParentSpanId", PARENT_ID));
+    assertSameAsExtractor(headers("X-B3-TraceId", TRACE_ID, "X-B3-SpanId", SPAN_ID));
+  }
+
+  void assertSameAsExtractor(Headers headers) {
+    TraceContextOrSamplingFlags expected = extractor.extract(headers);
+    TraceContextOrSamplingFlags actual = codec.extract(headers);
+    assertNotNull("codec should parse " + headers, actual);
+    TraceContext expectedContext = expected.context();
+    TraceContext actualContext = actual.context();
+    if (expectedContext == null) {
+      assertNull(actualContext);
+      assertEquals(expected.sampled(), actual.sampled());
+      assertEquals(expected.sampledLocal(), actual.sampledLocal());
+      assertEquals(expected.samplingFlags().debug(), actual.samplingFlags().debug());
+      return;
+    }
+    assertNotNull(actualContext);
+    assertEquals(expectedContext.traceIdHigh(), actualContext.traceIdHigh());
+    assertEquals(expectedContext.traceId(), actualContext.traceId());
+    assertEquals(expectedContext.spanId(), actualContext.spanId());
+    assertEquals(expectedContext.parentIdAsLong(), actualContext.parentIdAsLong());
+    assertEquals(expectedContext.sampled(), actualContext.sampled());
+    assertEquals(expectedContext.debug(), actualContext.debug());
+  }
+
+  static Headers headers(String... keyValues) {
+    RecordHeaders headers = new RecordHeaders();
+    for (int i = 0; i < keyValues.length; i += 2) {
+      headers.add(keyValues[i], keyValues[i + 1].getBytes(StandardCharsets.UTF_8));
+    }
+    return headers;
+  }
+}